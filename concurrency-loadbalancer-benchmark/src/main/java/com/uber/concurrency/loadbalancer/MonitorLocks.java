@@ -0,0 +1,120 @@
+package com.uber.concurrency.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Monitor based lock of heap and bucket loadBalancers, the locking before they moved to ReentrantLock,
+ * so that benchmark compares both in the same run.
+ * A virtual thread waiting in {@link Object#wait()} or blocked entering the monitor pins its carrier on JDK 21.
+ */
+public final class MonitorLocks {
+
+    private MonitorLocks() {
+    }
+
+    /**
+     * Use monitor based heap lock
+     *
+     * @param <T>     the type of task
+     * @param builder the builder
+     * @return the builder
+     */
+    public static <T> HeapConcurrencyLoadBalancer.Builder<T> withMonitorLock(
+            HeapConcurrencyLoadBalancer.Builder<T> builder) {
+        return builder.withLockFactory(MonitorLock::new);
+    }
+
+    /**
+     * Use monitor based bucket lock
+     *
+     * @param <T>     the type of task
+     * @param builder the builder
+     * @return the builder
+     */
+    public static <T> BucketConcurrencyLoadBalancer.Builder<T> withMonitorLock(
+            BucketConcurrencyLoadBalancer.Builder<T> builder) {
+        return builder.withLockFactory(MonitorLock::new);
+    }
+
+    /**
+     * Reentrant lock on top of intrinsic monitor, waiting threads block in {@link Object#wait()}
+     */
+    static final class MonitorLock implements Lock {
+        private Thread owner;
+        private int holds;
+
+        @Override
+        public synchronized void lock() {
+            boolean interrupted = false;
+            while (!isAvailable()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            acquire();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public synchronized void lockInterruptibly() throws InterruptedException {
+            while (!isAvailable()) {
+                wait();
+            }
+            acquire();
+        }
+
+        @Override
+        public synchronized boolean tryLock() {
+            if (!isAvailable()) {
+                return false;
+            }
+            acquire();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(time);
+            while (!isAvailable()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            acquire();
+            return true;
+        }
+
+        @Override
+        public synchronized void unlock() {
+            if (owner != Thread.currentThread()) {
+                throw new IllegalMonitorStateException("lock is not held by current thread");
+            }
+            if (--holds == 0) {
+                owner = null;
+                notify();
+            }
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("condition is not supported");
+        }
+
+        private boolean isAvailable() {
+            return owner == null || owner == Thread.currentThread();
+        }
+
+        private void acquire() {
+            owner = Thread.currentThread();
+            ++holds;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.uber.concurrency.loadbalancer.benchmark;
+
+import com.uber.concurrency.loadbalancer.ArrayConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.BucketConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.CompletableTask;
+import com.uber.concurrency.loadbalancer.ConsistentHashConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.HeapConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.LeastConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.P2CConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.TournamentConcurrencyLoadBalancer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of selecting and completing one request, the steady state path of a loadBalancer.
+ * Run with GC profiler to check allocation per operation
+ * <pre>
+ * {@code
+ * mvn -P benchmark package
+ * java -jar concurrency-loadbalancer-benchmark/target/benchmarks.jar LoadBalancerBenchmark -prof gc
+ * }
+ * </pre>
+ * The returned CompletableTask is the only allocation expected per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBalancerBenchmark {
+    @Param({"Array", "ArrayJoinIdleQueue", "Heap", "Tournament", "Bucket", "P2C", "ConsistentHash"})
+    private String implementation;
+
+    @Param({"16"})
+    private int tasks;
+
+    private LeastConcurrencyLoadBalancer<String> loadBalancer;
+
+    @Setup
+    public void setup() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < tasks; ++i) {
+            entries.add("task" + i);
+        }
+        switch (implementation) {
+            case "Array":
+                loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class).withTasks(entries).build();
+                break;
+            case "ArrayJoinIdleQueue":
+                loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                        .withTasks(entries)
+                        .withJoinIdleQueue(1)
+                        .build();
+                break;
+            case "Heap":
+                loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class).withTasks(entries).build();
+                break;
+            case "Tournament":
+                loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class).withTasks(entries).build();
+                break;
+            case "Bucket":
+                loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class).withTasks(entries).build();
+                break;
+            case "P2C":
+                loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class).withTasks(entries).build();
+                break;
+            case "ConsistentHash":
+                loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class).withTasks(entries).build();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown implementation " + implementation);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean nextAndComplete() {
+        CompletableTask<String> task = loadBalancer.next();
+        return task.complete(true);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean nextAndCompleteContended() {
+        CompletableTask<String> task = loadBalancer.next();
+        return task.complete(true);
+    }
+}
@@ -0,0 +1,205 @@
+package com.uber.concurrency.loadbalancer.benchmark;
+
+import com.uber.concurrency.loadbalancer.BucketConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.CompletableTask;
+import com.uber.concurrency.loadbalancer.HeapConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.LeastConcurrencyLoadBalancer;
+import com.uber.concurrency.loadbalancer.MonitorLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Benchmark of many blocking callers sharing a saturated loadBalancer, each caller acquires an entity with
+ * {@link LeastConcurrencyLoadBalancer#acquire(Duration)}, holds it for a simulated downstream call and completes it.
+ * A batch of callers runs on either one virtual thread per caller or a fixed pool of platform threads,
+ * the time per batch reflects how well carrier threads are kept busy, since a virtual thread blocked on a monitor
+ * pins its carrier while a virtual thread parked on a lock gives the carrier back to other callers.
+ * Locking "monitor" runs the heap or bucket lock on {@link MonitorLocks}, the synchronized locking before
+ * ReentrantLock, locking "park" runs the default ReentrantLock, so both are compared side by side in the same run.
+ * After each iteration the process CPU time over wall time per available carrier is printed as utilization,
+ * a pinned carrier shows up as lower utilization with higher time per batch.
+ * Virtual threads require JDK 21, run with a limited number of carriers to make pinning visible,
+ * and with JFR profiler to record jdk.VirtualThreadPinned events of monitor locking
+ * <pre>
+ * {@code
+ * mvn -P benchmark package
+ * java -jar concurrency-loadbalancer-benchmark/target/benchmarks.jar VirtualThreadBenchmark \
+ *     -jvmArgsAppend -Djdk.virtualThreadScheduler.parallelism=4 -prof jfr
+ * }
+ * </pre>
+ * Pinned callers can be listed by adding {@code -Djdk.tracePinnedThreads=short} to the forked JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Param({"Heap", "Bucket"})
+    private String implementation;
+
+    @Param({"virtual", "platform"})
+    private String threads;
+
+    @Param({"park", "monitor"})
+    private String locking;
+
+    @Param({"10000"})
+    private int callers;
+
+    @Param({"16"})
+    private int tasks;
+
+    @Param({"8"})
+    private int maxConcurrency;
+
+    @Param({"100"})
+    private long callMicros;
+
+    private LeastConcurrencyLoadBalancer<String> loadBalancer;
+    private ExecutorService executor;
+    private int carriers;
+    private long startCpuNanos;
+    private long startWallNanos;
+
+    @Setup
+    public void setup() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < tasks; ++i) {
+            entries.add("task" + i);
+        }
+        boolean monitor;
+        switch (locking) {
+            case "park":
+                monitor = false;
+                break;
+            case "monitor":
+                monitor = true;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown locking " + locking);
+        }
+        switch (implementation) {
+            case "Heap":
+                HeapConcurrencyLoadBalancer.Builder<String> heapBuilder = HeapConcurrencyLoadBalancer
+                        .newBuilder(String.class)
+                        .withTasks(entries)
+                        .withMaxConcurrency(maxConcurrency)
+                        .withWaitQueue(callers);
+                loadBalancer = (monitor ? MonitorLocks.withMonitorLock(heapBuilder) : heapBuilder).build();
+                break;
+            case "Bucket":
+                BucketConcurrencyLoadBalancer.Builder<String> bucketBuilder = BucketConcurrencyLoadBalancer
+                        .newBuilder(String.class)
+                        .withTasks(entries)
+                        .withMaxConcurrency(maxConcurrency)
+                        .withWaitQueue(callers);
+                loadBalancer = (monitor ? MonitorLocks.withMonitorLock(bucketBuilder) : bucketBuilder).build();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown implementation " + implementation);
+        }
+        switch (threads) {
+            case "virtual":
+                executor = newVirtualThreadPerTaskExecutor();
+                carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                        Runtime.getRuntime().availableProcessors());
+                break;
+            case "platform":
+                executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4);
+                carriers = Runtime.getRuntime().availableProcessors();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown threads " + threads);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        startCpuNanos = processCpuNanos();
+        startWallNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long cpuNanos = processCpuNanos() - startCpuNanos;
+        long wallNanos = System.nanoTime() - startWallNanos;
+        if (startCpuNanos >= 0 && wallNanos > 0) {
+            System.out.printf("%n%s/%s/%s utilization of %d carriers: %.1f%%%n", implementation, threads, locking,
+                    carriers, 100.0 * cpuNanos / wallNanos / carriers);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int acquireAndComplete() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(callers);
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < callers; ++i) {
+            executor.execute(() -> {
+                try {
+                    CompletableTask<String> task = loadBalancer.acquire(TIMEOUT);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(callMicros));
+                    task.complete(true);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return failed.get();
+    }
+
+    /**
+     * CPU time of all threads of the process, -1 if not supported by the JVM
+     */
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime, so the benchmark still builds on JDK 8
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual threads require JDK 21", e);
+        }
+    }
+}
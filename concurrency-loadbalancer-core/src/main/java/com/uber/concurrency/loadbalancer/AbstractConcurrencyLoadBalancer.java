@@ -2,9 +2,12 @@ package com.uber.concurrency.loadbalancer;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ticker;
-import com.google.common.collect.ImmutableMap;
+import com.uber.concurrency.loadbalancer.internal.AdaptiveLimitTaskConcurrency;
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyDelegator;
+import com.uber.concurrency.loadbalancer.limit.AimdLimit;
+import com.uber.concurrency.loadbalancer.limit.GradientLimit;
+import com.uber.concurrency.loadbalancer.limit.LimitAlgorithm;
 import com.uber.concurrency.loadbalancer.timedcounter.ScheduledCounter;
 import com.uber.concurrency.loadbalancer.timedcounter.WindowScheduledCounter;
 import com.uber.concurrency.loadbalancer.utils.IntervalLimiter;
@@ -16,11 +19,23 @@ import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.UnaryOperator;
 
 
 /**
@@ -31,9 +46,16 @@ import java.util.function.Consumer;
  * @param <T> the entity type
  */
 public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurrencyLoadBalancer<T> {
+    private static final AtomicIntegerFieldUpdater<AbstractConcurrencyLoadBalancer.AbstractCompletableTask> COMPLETED =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractConcurrencyLoadBalancer.AbstractCompletableTask.class, "completed");
     final List<CompletableTask.Listener<T>> listeners;
     final Ticker ticker;
     final MetricsImpl metrics;
+    private final ConcurrentHashMap<TaskConcurrency<T>, CompletableFuture<Void>> drainingTasks = new ConcurrentHashMap<>();
+    //requests not completed after lease timeout were completed by lease reclamation, see AbstractBuilder.withLeaseTimeout
+    long leaseTimeoutNanos = Long.MAX_VALUE;
+    //requests waiting for concurrency when every entity is saturated, see AbstractBuilder.withWaitQueue
+    WaitQueue<T> waitQueue;
 
     /**
      * Instantiates a new LeastConcurrencyLoadBalancer
@@ -53,6 +75,156 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
         return metrics;
     }
 
+    /**
+     * Distribute n requests across entities in one pass by water-filling,
+     * requests go to the least concurrent entity until its concurrency / weight rises above the next one.
+     * Concurrency of each entity is acquired once for all its requests, instead of n times of selection and acquisition.
+     * Requests are planned again for the rest when other threads won the race to entities with max concurrency.
+     *
+     * @param n the number of requests, must be positive
+     * @return the batch of requests, which may hold less than n requests when entities reached max concurrency,
+     * null if there is no entity
+     * @throws SaturationException if the load balancer enforces concurrency limits and every entity reached its limit
+     */
+    @Override
+    public BatchCompletableTask<T> nextBatch(int n) {
+        List<TaskConcurrency<T>> candidates = getTaskConcurrencies();
+        if (candidates == null) {
+            return LeastConcurrencyLoadBalancer.super.nextBatch(n);
+        }
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        for (TaskConcurrency<T> taskConcurrency : candidates) {
+            taskConcurrency.syncState();
+        }
+
+        Map<TaskConcurrency<T>, Integer> acquired = new LinkedHashMap<>();
+        int remaining = n;
+        while (remaining > 0) {
+            int[] plan = waterFill(candidates, remaining);
+            boolean planned = false;
+            for (int i = 0; i < plan.length; ++i) {
+                if (plan[i] == 0) {
+                    continue;
+                }
+                planned = true;
+                TaskConcurrency<T> taskConcurrency = candidates.get(i);
+                //lost race to other thread when the entity reached max concurrency, plan again for the rest
+                if (taskConcurrency.tryAcquire(plan[i])) {
+                    if (!isSelectable(taskConcurrency)) {
+                        //entity removed after candidates were read, plan again without it
+                        taskConcurrency.release(plan[i]);
+                        checkDrained();
+                        candidates = new ArrayList<>(candidates);
+                        candidates.remove(i);
+                        break;
+                    }
+                    acquired.merge(taskConcurrency, plan[i], Integer::sum);
+                    remaining -= plan[i];
+                }
+            }
+            if (!planned) {
+                break;
+            }
+        }
+        if (acquired.isEmpty()) {
+            for (TaskConcurrency<T> taskConcurrency : candidates) {
+                if (taskConcurrency.isSaturated()) {
+                    throw new SaturationException("all tasks reached max concurrency");
+                }
+            }
+            return null; // all tasks reached concurrency limits
+        }
+        return new BatchTaskImpl(ticker.read(), acquired);
+    }
+
+    /**
+     * Gets concurrency state of entities for batch selection
+     *
+     * @return the entities, null if the loadBalancer doesn't order entities by concurrency / weight,
+     * in which case batch selection falls back to n times of selection
+     */
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        return null;
+    }
+
+    /**
+     * Plan distribution of n requests by water-filling on snapshot of concurrency, no lock is taken.
+     * Entity with less concurrency / weight takes requests first, capped by its max concurrency,
+     * ties are broken from a random offset.
+     *
+     * @param taskConcurrencies the entities
+     * @param n                 the number of requests
+     * @return number of requests planned for each entity, total is less than n if there is not enough capacity
+     */
+    @VisibleForTesting
+    static int[] waterFill(List<? extends TaskConcurrency<?>> taskConcurrencies, int n) {
+        int size = taskConcurrencies.size();
+        int[] plan = new int[size];
+        if (size == 0) {
+            return plan;
+        }
+        PriorityQueue<Level> levels = new PriorityQueue<>(size);
+        int offset = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; ++i) {
+            int index = (i + offset) % size;
+            TaskConcurrency<?> taskConcurrency = taskConcurrencies.get(index);
+            long concurrency = Integer.toUnsignedLong(taskConcurrency.getConcurrency());
+            long limit = Math.min(Integer.toUnsignedLong(taskConcurrency.getMaxConcurrency()), Integer.MAX_VALUE);
+            if (concurrency < limit) {
+                levels.offer(new Level(index, i, concurrency, taskConcurrency.getWeight(), limit - concurrency));
+            }
+        }
+        int remaining = n;
+        while (remaining > 0 && !levels.isEmpty()) {
+            Level least = levels.poll();
+            Level next = levels.peek();
+            long units = remaining;
+            if (next != null) {
+                //units to lift the least entity just above the next one
+                units = next.concurrency * least.weight / next.weight - least.concurrency + 1;
+            }
+            units = Math.max(1, Math.min(Math.min(units, remaining), least.capacity));
+            plan[least.index] += (int) units;
+            remaining -= (int) units;
+            least.concurrency += units;
+            least.capacity -= units;
+            if (least.capacity > 0) {
+                levels.offer(least);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Concurrency level of entity being planned by {@link #waterFill(List, int)}
+     */
+    private static final class Level implements Comparable<Level> {
+        private final int index;
+        private final int order;
+        private final int weight;
+        private long concurrency;
+        private long capacity;
+
+        private Level(int index, int order, long concurrency, int weight, long capacity) {
+            this.index = index;
+            this.order = order;
+            this.concurrency = concurrency;
+            this.weight = weight;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int compareTo(Level o) {
+            int result = Long.compare(concurrency * o.weight, o.concurrency * weight);
+            return result != 0 ? result : Integer.compare(order, o.order);
+        }
+    }
+
     /**
      * Function called after loadBalancer selected one entity
      * but before caller interact with the entity
@@ -60,12 +232,161 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
      * @param t the selected entity
      */
     void onTaskSelected(T t) {
-        metrics.markSelection(t);
+        onTaskSelected(t, 1);
+    }
+
+    /**
+     * Function called after loadBalancer selected one entity for n requests
+     * but before caller interact with the entity
+     *
+     * @param t the selected entity
+     * @param n the number of requests
+     */
+    void onTaskSelected(T t, int n) {
+        metrics.markSelection(t, n);
         for (CompletableTask.Listener<T> listener : listeners) {
-            listener.onCreate(t);
+            listener.onCreate(t, n);
+        }
+        //concurrency sustained by failed requests of removed entity matures over time, check it along with traffic
+        checkDrained();
+    }
+
+    /**
+     * Track removed entity until its outstanding requests complete
+     *
+     * @param taskConcurrency concurrency state of the removed entity
+     * @return the future completed when concurrency of the entity drops to 0
+     */
+    CompletableFuture<Void> drain(TaskConcurrency<T> taskConcurrency) {
+        CompletableFuture<Void> future = drainingTasks.computeIfAbsent(taskConcurrency, tc -> new CompletableFuture<>());
+        checkDrained();
+        return future;
+    }
+
+    /**
+     * Stop tracking removed entity because it's added back, drain future of the entity is cancelled
+     *
+     * @param t the entity
+     * @return concurrency state of the entity, null if the entity is not draining
+     */
+    TaskConcurrency<T> undrain(T t) {
+        for (Map.Entry<TaskConcurrency<T>, CompletableFuture<Void>> entry : drainingTasks.entrySet()) {
+            if (entry.getKey().getTask().equals(t) && drainingTasks.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().cancel(false);
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Function called after concurrency of the entity is released by completed requests
+     *
+     * @param taskConcurrency the entity
+     */
+    void onTaskConcurrencyReleased(TaskConcurrency<T> taskConcurrency) {
+    }
+
+    /**
+     * Function called after concurrency of completed requests is released,
+     * hands released concurrency to requests waiting in queue
+     */
+    void onTaskReleased() {
+        checkDrained();
+        WaitQueue<T> queue = waitQueue;
+        if (queue != null) {
+            queue.dispatch();
+        }
+    }
+
+    /**
+     * Acquire an entity asynchronously, wait in FIFO queue if every entity reached its max concurrency.
+     * Waiting request is handed an entity by the thread completing a request, so there is no polling.
+     * Wait queue is enabled by {@link AbstractBuilder#withWaitQueue(int)}, otherwise it doesn't wait.
+     *
+     * @param timeout max duration to wait, don't wait if not positive
+     * @return the future of request, which fails with SaturationException if the wait queue is full,
+     * TimeoutException if no entity available before timeout, or NoSuchElementException if there is no entity
+     */
+    @Override
+    public CompletableFuture<CompletableTask<T>> acquireAsync(Duration timeout) {
+        WaitQueue<T> queue = waitQueue;
+        if (queue == null) {
+            return LeastConcurrencyLoadBalancer.super.acquireAsync(timeout);
         }
+        return queue.acquire(timeout);
     }
 
+    /**
+     * Complete drain future of removed entities without outstanding requests
+     */
+    void checkDrained() {
+        if (drainingTasks.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<TaskConcurrency<T>, CompletableFuture<Void>> entry : drainingTasks.entrySet()) {
+            TaskConcurrency<T> taskConcurrency = entry.getKey();
+            if (isDrained(taskConcurrency) && drainingTasks.remove(taskConcurrency, entry.getValue())) {
+                entry.getValue().complete(null);
+            }
+        }
+    }
+
+    /**
+     * Whether removed entity has no outstanding request, including concurrency sustained by failed requests
+     *
+     * @param taskConcurrency concurrency state of the removed entity
+     * @return true if the entity is drained
+     */
+    boolean isDrained(TaskConcurrency<T> taskConcurrency) {
+        taskConcurrency.syncState();
+        return taskConcurrency.getConcurrency() == 0;
+    }
+
+    /**
+     * Whether the acquired entity is still in the loadBalancer.
+     * Entity removed after it was selected but before it was acquired is released instead of handed out,
+     * otherwise its drain future might complete before the late request
+     *
+     * @param taskConcurrency the acquired entity
+     * @return true if the entity can be handed out
+     */
+    boolean isSelectable(TaskConcurrency<T> taskConcurrency) {
+        return true;
+    }
+
+
+    /**
+     * Acquire concurrency of the selected entity and create the CompletableTask
+     *
+     * @param taskConcurrency the selected entity
+     * @return the completable task, null if the entity reached its max concurrency or was removed
+     */
+    CompletableTask<T> tryAcquire(TaskConcurrency<T> taskConcurrency) {
+        if (!taskConcurrency.tryAcquire()) {
+            return null;
+        }
+        if (!isSelectable(taskConcurrency)) {
+            taskConcurrency.release(1);
+            checkDrained();
+            return null;
+        }
+        return newCompletableTask(taskConcurrency);
+    }
+
+    /**
+     * Create the CompletableTask of the selected entity, whose concurrency is acquired already
+     *
+     * @param taskConcurrency the selected entity, acquired already
+     * @return the completable task
+     */
+    CompletableTask<T> newCompletableTask(TaskConcurrency<T> taskConcurrency) {
+        long startNano = ticker.read();
+        if (leaseTimeoutNanos != Long.MAX_VALUE) {
+            taskConcurrency.lease(1, startNano);
+        }
+        return new ConcurrentTaskImpl(startNano, taskConcurrency);
+    }
 
     /**
      * Function called after caller finished interact with the entity
@@ -75,17 +396,139 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
      * @param succeed the result indicator
      */
     void onTaskCompleted(T t, boolean succeed) {
-        metrics.markCompletion(t, succeed);
+        onTaskCompleted(t, succeed, 1);
+    }
+
+    /**
+     * Function called after caller finished interact with the entity for n requests
+     * but before loadBalancer mark the entity as complete
+     *
+     * @param t       the completed task
+     * @param succeed the result indicator
+     * @param n       the number of requests
+     */
+    void onTaskCompleted(T t, boolean succeed, int n) {
+        metrics.markCompletion(t, succeed, n);
+        for (CompletableTask.Listener<T> listener : listeners) {
+            listener.onComplete(t, succeed, n);
+        }
+    }
+
+    /**
+     * Function called after caller gave the entity back without outcome
+     * but before loadBalancer releases concurrency of the entity
+     *
+     * @param t the released task
+     */
+    void onTaskReturned(T t) {
         for (CompletableTask.Listener<T> listener : listeners) {
-            listener.onComplete(t, succeed);
+            listener.onRelease(t);
         }
     }
 
+    /**
+     * Whether the concurrency state is used by this loadBalancer, for an entity in it or removed but still draining
+     *
+     * @param state the concurrency state
+     * @return true if the loadBalancer is backed by the state
+     */
+    boolean isBackedBy(TaskConcurrency<T> state) {
+        List<TaskConcurrency<T>> taskConcurrencies = getTaskConcurrencies();
+        if (taskConcurrencies == null) {
+            //entities are not exposed, assume the state is used
+            return true;
+        }
+        return isBackedBy(taskConcurrencies, state) || isBackedBy(drainingTasks.keySet(), state);
+    }
+
+    static <T> boolean isBackedBy(Collection<? extends TaskConcurrency<T>> taskConcurrencies,
+                                  TaskConcurrency<T> state) {
+        for (TaskConcurrency<T> taskConcurrency : taskConcurrencies) {
+            if (taskConcurrency.isBackedBy(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Function called when leases of an entity expired, the requests are completed as failure
+     *
+     * @param t the entity
+     * @param n the number of expired leases
+     */
+    void onLeaseReclaimed(T t, long n) {
+        metrics.markLeaked(n);
+        onTaskCompleted(t, false, (int) n);
+        onTaskConcurrencyMatured();
+    }
+
+    /**
+     * Function called when concurrency is released outside completion of requests,
+     * i.e. failure sustain matured or leases reclaimed, hands released concurrency to requests waiting in queue
+     */
+    void onTaskConcurrencyMatured() {
+        WaitQueue<T> queue = waitQueue;
+        if (queue != null) {
+            queue.signal();
+        }
+    }
+
+    /**
+     * Complete requests in bulk, requests selected by this loadBalancer are aggregated per entity,
+     * so that concurrency, metrics and listeners of each entity are updated once with total latency of its requests,
+     * cost of completion scales with entities touched rather than requests.
+     * Other requests, e.g. wrapped by another loadBalancer, are completed one by one.
+     *
+     * @param completableTasks the requests returned by next()
+     * @param succeed          indicates if the requests are succeed or failed
+     * @return number of requests completed, requests completed already are not counted
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int completeAll(Collection<? extends CompletableTask<T>> completableTasks, boolean succeed) {
+        long now = ticker.read();
+        //entity -> {number of requests, total latency}
+        Map<TaskConcurrency<T>, long[]> partitions = new HashMap<>();
+        int completed = 0;
+        for (CompletableTask<T> completableTask : completableTasks) {
+            if (completableTask instanceof AbstractConcurrencyLoadBalancer.ConcurrentTaskImpl
+                    && ((ConcurrentTaskImpl) completableTask).getLoadBalancer() == this) {
+                ConcurrentTaskImpl task = (ConcurrentTaskImpl) completableTask;
+                if (COMPLETED.compareAndSet(task, 0, 1) && now - task.startNano < leaseTimeoutNanos) {
+                    if (leaseTimeoutNanos != Long.MAX_VALUE) {
+                        //requests of an entity may start in different windows, cancel each lease by its start time
+                        task.taskConcurrency.cancelLease(1, task.startNano);
+                    }
+                    long[] partition = partitions.computeIfAbsent(task.taskConcurrency, tc -> new long[2]);
+                    partition[0]++;
+                    partition[1] += now - task.startNano;
+                    completed++;
+                }
+            } else if (completableTask.complete(succeed)) {
+                completed++;
+            }
+        }
+        if (partitions.isEmpty()) {
+            return completed;
+        }
+        for (Map.Entry<TaskConcurrency<T>, long[]> entry : partitions.entrySet()) {
+            TaskConcurrency<T> taskConcurrency = entry.getKey();
+            int n = (int) entry.getValue()[0];
+            onTaskCompleted(taskConcurrency.getTask(), succeed, n);
+            taskConcurrency.complete(n, succeed, entry.getValue()[1]);
+            onTaskConcurrencyReleased(taskConcurrency);
+        }
+        onTaskReleased();
+        return completed;
+    }
+
     /**
      * AbstractCompletableTask
      */
     abstract class AbstractCompletableTask implements CompletableTask {
-        final AtomicBoolean completed = new AtomicBoolean(false);
+        //updated by COMPLETED, field updater saves allocation of an AtomicBoolean per task
+        volatile int completed = 0;
         final long startNano;
         final T task;
 
@@ -95,16 +538,42 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
             onTaskSelected(t);
         }
 
-        //if there are multiple completion, only the first call should succeed
         @Override
         public boolean complete(boolean succeed) {
-            if (completed.compareAndSet(false, true)) {
+            return complete(succeed, leaseTimeoutNanos == Long.MAX_VALUE ? 0 : ticker.read() - startNano);
+        }
+
+        //if there are multiple completion, only the first call should succeed
+        boolean complete(boolean succeed, long latencyNanos) {
+            if (COMPLETED.compareAndSet(this, 0, 1)) {
+                if (latencyNanos >= leaseTimeoutNanos) {
+                    //request was completed as failure when its lease expired
+                    return false;
+                }
                 onTaskCompleted(task, succeed);
                 return true;
             }
             return false;
         }
 
+        @Override
+        public boolean release() {
+            return release(leaseTimeoutNanos == Long.MAX_VALUE ? 0 : ticker.read() - startNano);
+        }
+
+        //release competes with completion, only the first call of either should succeed
+        boolean release(long latencyNanos) {
+            if (COMPLETED.compareAndSet(this, 0, 1)) {
+                if (latencyNanos >= leaseTimeoutNanos) {
+                    //request was completed as failure when its lease expired
+                    return false;
+                }
+                onTaskReturned(task);
+                return true;
+            }
+            return false;
+        }
+
         @Override
         public T getTask() {
             return task;
@@ -114,7 +583,7 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
     /**
      * The type Concurrent task.
      * concurrency counter of entity
-     *  - increased by 1 when constructed
+     *  - increased by 1 before constructed, see {@link #tryAcquire(TaskConcurrency)}
      *  - decrease by 1 when completed
      *
      */
@@ -125,47 +594,171 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
          * Instantiates a new Concurrent task.
          *
          * @param startNano           the start nano
-         * @param taskConcurrency                the selected entity
+         * @param taskConcurrency                the selected entity, acquired already
          */
         ConcurrentTaskImpl(long startNano, TaskConcurrency<T> taskConcurrency) {
             super(taskConcurrency.getTask(), startNano);
             this.taskConcurrency = taskConcurrency;
-            taskConcurrency.acquire();
+        }
+
+        AbstractConcurrencyLoadBalancer<T> getLoadBalancer() {
+            return AbstractConcurrencyLoadBalancer.this;
         }
 
         @Override
         public boolean complete(boolean succeed) {
-            if (super.complete(succeed)) {
-                this.taskConcurrency.complete(succeed, Duration.ofNanos(ticker.read() - startNano));
+            long latencyNanos = ticker.read() - startNano;
+            if (complete(succeed, latencyNanos)) {
+                if (leaseTimeoutNanos != Long.MAX_VALUE) {
+                    this.taskConcurrency.cancelLease(1, startNano);
+                }
+                this.taskConcurrency.complete(succeed, latencyNanos);
+                onTaskConcurrencyReleased(taskConcurrency);
+                onTaskReleased();
                 return true;
             }
 
             return false;
         }
+
+        @Override
+        public boolean release() {
+            if (release(ticker.read() - startNano)) {
+                if (leaseTimeoutNanos != Long.MAX_VALUE) {
+                    this.taskConcurrency.cancelLease(1, startNano);
+                }
+                this.taskConcurrency.release(1);
+                onTaskConcurrencyReleased(taskConcurrency);
+                onTaskReleased();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Batch of requests distributed by {@link #nextBatch(int)}
+     * concurrency counter of each entity
+     *  - increased by number of its requests before constructed
+     *  - decreased by number of requests completed
+     */
+    class BatchTaskImpl implements BatchCompletableTask<T> {
+        private final long startNano;
+        private final List<TaskConcurrency<T>> taskConcurrencies;
+        private final int[] counts;
+        private final AtomicIntegerArray remaining;
+
+        /**
+         * Instantiates a new batch
+         *
+         * @param startNano the start nano
+         * @param acquired  number of requests of selected entities, acquired already
+         */
+        BatchTaskImpl(long startNano, Map<TaskConcurrency<T>, Integer> acquired) {
+            this.startNano = startNano;
+            this.taskConcurrencies = new ArrayList<>(acquired.keySet());
+            this.counts = new int[acquired.size()];
+            int i = 0;
+            for (int count : acquired.values()) {
+                counts[i++] = count;
+            }
+            this.remaining = new AtomicIntegerArray(counts);
+            for (i = 0; i < counts.length; ++i) {
+                if (leaseTimeoutNanos != Long.MAX_VALUE) {
+                    taskConcurrencies.get(i).lease(counts[i], startNano);
+                }
+                onTaskSelected(taskConcurrencies.get(i).getTask(), counts[i]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return counts.length;
+        }
+
+        @Override
+        public T getTask(int index) {
+            return taskConcurrencies.get(index).getTask();
+        }
+
+        @Override
+        public int getCount(int index) {
+            return counts[index];
+        }
+
+        @Override
+        public int complete(int index, int n, boolean succeed) {
+            long latencyNanos = ticker.read() - startNano;
+            if (latencyNanos >= leaseTimeoutNanos) {
+                //requests were completed as failure when their leases expired
+                remaining.set(index, 0);
+                return 0;
+            }
+            int completed;
+            while (true) {
+                int current = remaining.get(index);
+                completed = Math.min(current, n);
+                if (completed <= 0) {
+                    return 0;
+                }
+                if (remaining.compareAndSet(index, current, current - completed)) {
+                    break;
+                }
+            }
+            TaskConcurrency<T> taskConcurrency = taskConcurrencies.get(index);
+            if (leaseTimeoutNanos != Long.MAX_VALUE) {
+                taskConcurrency.cancelLease(completed, startNano);
+            }
+            onTaskCompleted(taskConcurrency.getTask(), succeed, completed);
+            taskConcurrency.complete(completed, succeed, latencyNanos * completed);
+            onTaskConcurrencyReleased(taskConcurrency);
+            onTaskReleased();
+            return completed;
+        }
     }
 
     static class ScheduledTaskConcurrency<T> extends TaskConcurrencyDelegator<T> {
         private final ScheduledCounter scheduledCounter;
-        private final Duration timeout;
+        private final long timeoutNanos;
 
         public ScheduledTaskConcurrency(TaskConcurrency<T> delegate, ScheduledCounter.Builder builder) {
+            this(delegate, builder, null);
+        }
+
+        public ScheduledTaskConcurrency(TaskConcurrency<T> delegate, ScheduledCounter.Builder builder,
+                                        ReleaseNotifier<T> releaseNotifier) {
             super(delegate);
-            this.timeout = builder.getMaxDelay();
-            this.scheduledCounter = builder.of(new Consumer<Long>() {
+            this.timeoutNanos = builder.getMaxDelay().toNanos();
+            this.scheduledCounter = builder.ofLong(new LongConsumer() {
                 @Override
-                public void accept(Long n) {
-                    delegate.complete(n.intValue(), timeout.multipliedBy(n.intValue()));
+                public void accept(long n) {
+                    delegate.complete((int) n, timeoutNanos * n);
+                    if (releaseNotifier != null) {
+                        releaseNotifier.onSustainMatured(ScheduledTaskConcurrency.this);
+                    }
                 }
             });
         }
 
         @Override
-        public void complete(boolean succeed, Duration latency) {
+        public void complete(boolean succeed, long latencyNanos) {
             if (!succeed) {
                 //if task failed, postpone counter for (timeout - latency)
-                scheduledCounter.schedule(1, timeout.minus(latency));
+                scheduledCounter.schedule(1, timeoutNanos - latencyNanos);
             } else {
-                super.complete(true, latency);
+                super.complete(true, latencyNanos);
+            }
+        }
+
+        @Override
+        public void complete(int n, boolean succeed, long latencyNanos) {
+            if (!succeed) {
+                //failed requests of a batch are postponed together by (timeout - average latency)
+                if (n > 0) {
+                    scheduledCounter.schedule(n, timeoutNanos - latencyNanos / n);
+                }
+            } else {
+                super.complete(n, true, latencyNanos);
             }
         }
 
@@ -177,48 +770,167 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
         }
     }
 
+    /**
+     * Lease of requests, concurrency of requests not completed before lease timeout is released as failure,
+     * so that a request never completed by caller doesn't hold concurrency of entity forever.
+     * Instead of per request timer, leases are counted in time windows of {@link ScheduledCounter},
+     * a lease is scheduled to expire at start time + lease timeout when acquired, and cancelled by the same start time
+     * when completed in time, so that cancellation lands in the window the lease was recorded.
+     * Matured count is then the number of leaked requests.
+     */
+    static class LeaseTaskConcurrency<T> extends TaskConcurrencyDelegator<T> {
+        private final WindowScheduledCounter leases;
+        private final long leaseTimeoutNanos;
+
+        public LeaseTaskConcurrency(TaskConcurrency<T> delegate, Duration leaseTimeout, Ticker ticker,
+                                    ReleaseNotifier<T> releaseNotifier) {
+            super(delegate);
+            this.leaseTimeoutNanos = leaseTimeout.toNanos();
+            //counter covers twice of lease timeout, so that lease scheduled at max delay doesn't recycle current window
+            this.leases = WindowScheduledCounter.newBuilder()
+                    .withMaxDelay(leaseTimeout.multipliedBy(2))
+                    .withNumWindow(200)
+                    .withTicker(ticker)
+                    .ofLong(new LongConsumer() {
+                        @Override
+                        public void accept(long n) {
+                            if (n > 0) {
+                                delegate.complete((int) n, false, leaseTimeoutNanos * n);
+                                releaseNotifier.onLeaseReclaimed(LeaseTaskConcurrency.this, n);
+                            } else {
+                                //cancelled right after its window matured, take back the concurrency reclaimed
+                                delegate.acquire((int) -n);
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public void lease(int n, long startNanos) {
+            leases.scheduleAt(n, startNanos + leaseTimeoutNanos);
+        }
+
+        @Override
+        public void cancelLease(int n, long startNanos) {
+            //completion after lease timeout is ignored by loadBalancer, lease is reclaimed already
+            leases.scheduleAt(-n, startNanos + leaseTimeoutNanos);
+        }
+
+        @Override
+        public void syncState() {
+            //reclaim expired leases, then recover count sustained by failures
+            leases.check();
+            super.syncState();
+        }
+    }
+
+    /**
+     * Reports concurrency released by entities outside completion of requests, i.e. reclaimed leases
+     * and matured failure sustain, to loadBalancers using the concurrency state of the entity.
+     * One builder may build multiple loadBalancers, with their own states or sharing the same states,
+     * and states are created before the loadBalancer, or added at runtime,
+     * so every loadBalancer built is bound, and the ones backed by the state are notified.
+     *
+     * @param <T> the entity type
+     */
+    static class ReleaseNotifier<T> {
+        //loadBalancers built, weakly referenced so that loadBalancers discarded by the caller are collected
+        private final Set<AbstractConcurrencyLoadBalancer<T>> loadBalancers =
+                Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+        void bind(AbstractConcurrencyLoadBalancer<T> loadBalancer) {
+            loadBalancers.add(loadBalancer);
+        }
+
+        void onLeaseReclaimed(TaskConcurrency<T> state, long n) {
+            for (AbstractConcurrencyLoadBalancer<T> loadBalancer : backedBy(state)) {
+                loadBalancer.onLeaseReclaimed(state.getTask(), n);
+            }
+        }
+
+        void onSustainMatured(TaskConcurrency<T> state) {
+            for (AbstractConcurrencyLoadBalancer<T> loadBalancer : backedBy(state)) {
+                loadBalancer.onTaskConcurrencyMatured();
+            }
+        }
+
+        private List<AbstractConcurrencyLoadBalancer<T>> backedBy(TaskConcurrency<T> state) {
+            List<AbstractConcurrencyLoadBalancer<T>> bound;
+            synchronized (loadBalancers) {
+                bound = new ArrayList<>(loadBalancers);
+            }
+            List<AbstractConcurrencyLoadBalancer<T>> result = new ArrayList<>(1);
+            for (AbstractConcurrencyLoadBalancer<T> loadBalancer : bound) {
+                if (loadBalancer.isBackedBy(state)) {
+                    result.add(loadBalancer);
+                }
+            }
+            return result;
+        }
+    }
+
     static class MetricsImpl<T> implements Metrics {
         private static final StandardDeviation STANDARD_DEVIATION = new StandardDeviation();
         private static final Mean MEAN = new Mean();
         private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5L);
         private final IntervalLimiter limiter;
+        private final Ticker ticker;
         private final Meter requestRate;
         private final Meter successRate;
         private final Meter failureRate;
-        private final Map<T, Meter> taskRequestRate;
+        private final ConcurrentHashMap<T, Meter> taskRequestRate;
+        private final AtomicLong leakedLeases = new AtomicLong();
         private volatile double cov;
 
         MetricsImpl(Collection<T> tasks, Ticker ticker) {
             limiter = new IntervalLimiter(TICK_INTERVAL, ticker);
+            this.ticker = ticker;
             this.requestRate = new Meter(ticker);
             this.successRate = new Meter(ticker);
             this.failureRate = new Meter(ticker);
-            ImmutableMap.Builder builder = new ImmutableMap.Builder();
+            this.taskRequestRate = new ConcurrentHashMap<>();
             for (T task : tasks) {
-                builder.put(task, new Meter(ticker));
+                taskRequestRate.put(task, new Meter(ticker));
             }
-            this.taskRequestRate = builder.build();
         }
 
-        void markSelection(T task) {
+        /**
+         * Start tracking metrics of entity added at runtime
+         *
+         * @param task the task
+         */
+        void addTask(T task) {
+            taskRequestRate.computeIfAbsent(task, t -> new Meter(ticker));
+        }
+
+        /**
+         * Stop tracking metrics of removed entity, completion of its outstanding requests is ignored
+         *
+         * @param task the task
+         */
+        void removeTask(T task) {
+            taskRequestRate.remove(task);
+        }
+
+        void markSelection(T task, int n) {
             Meter taskMeter = taskRequestRate.get(task);
             if (taskMeter == null) {
                 return;
             }
-            requestRate.mark();
-            taskMeter.mark();
+            requestRate.mark(n);
+            taskMeter.mark(n);
         }
 
-        void markCompletion(T task, boolean succeed) {
+        void markCompletion(T task, boolean succeed, int n) {
             Meter taskMeter = taskRequestRate.get(task);
             if (taskMeter == null) {
                 return;
             }
 
             if (succeed) {
-                successRate.mark();
+                successRate.mark(n);
             } else {
-                failureRate.mark();
+                failureRate.mark(n);
             }
         }
 
@@ -237,6 +949,15 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
             return failureRate.getRate();
         }
 
+        void markLeaked(long n) {
+            leakedLeases.addAndGet(n);
+        }
+
+        @Override
+        public long leakedLeaseCount() {
+            return leakedLeases.get();
+        }
+
         @Override
         public double requestCOV() {
             tickIfNecessary();
@@ -292,6 +1013,13 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
                 .withMaxDelay(Duration.ZERO)
                 .withNumWindow(100);
         Collection<T> tasks;
+        Map<T, Integer> taskWeights = Collections.emptyMap();
+        Map<T, Integer> taskMaxConcurrencies = Collections.emptyMap();
+        int maxConcurrency = TaskConcurrency.UNLIMITED;
+        LimitAlgorithm.Builder limitAlgorithmBuilder = null;
+        Duration leaseTimeout = null;
+        int maxWaitQueueLength = 0;
+        final ReleaseNotifier<T> releaseNotifier = new ReleaseNotifier<>();
         List<CompletableTask.Listener<T>> listeners = new ArrayList<>();
 
         @Override
@@ -300,6 +1028,191 @@ public abstract class AbstractConcurrencyLoadBalancer<T> implements LeastConcurr
             return (B)this;
         }
 
+        /**
+         * set tasks with capacity weight of each task.
+         * Instead of raw concurrency, load balancer picks the task with least concurrency / weight,
+         * e.g. a task with weight 4 is considered as loaded as a task with weight 1 when its concurrency is 4 times higher.
+         * Use weight to balance among partitions with heterogeneous capacity.
+         *
+         * @param taskWeights map of task to its capacity weight, weight must be positive
+         * @return the builder
+         */
+        public B withTasks(Map<T, Integer> taskWeights) {
+            for (Map.Entry<T, Integer> entry : taskWeights.entrySet()) {
+                if (entry.getValue() == null || entry.getValue() <= 0) {
+                    throw new IllegalArgumentException("weight of task " + entry.getKey() + " must be positive");
+                }
+            }
+            this.tasks = taskWeights.keySet();
+            this.taskWeights = taskWeights;
+            return (B)this;
+        }
+
+        /**
+         * Gets capacity weight of task, default 1
+         *
+         * @param task the task
+         * @return the weight
+         */
+        int getWeight(T task) {
+            return taskWeights.getOrDefault(task, 1);
+        }
+
+        /**
+         * Hard limit of concurrency per task.
+         * A task reached its max concurrency is skipped, when all tasks reached max concurrency
+         * load balancer throws {@link SaturationException} instead of assigning more requests.
+         * Concurrency sustained by failed requests, see {@link #withFailureEffectiveLatency(Duration)}, counts toward the limit.
+         *
+         * @param maxConcurrency the max concurrency of each task, must be positive
+         * @return the builder
+         */
+        public B withMaxConcurrency(int maxConcurrency) {
+            if (maxConcurrency <= 0) {
+                throw new IllegalArgumentException("max concurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return (B)this;
+        }
+
+        /**
+         * Hard limit of concurrency for specific tasks, tasks absent from the map use {@link #withMaxConcurrency(int)}
+         *
+         * @param taskMaxConcurrencies map of task to its max concurrency, max concurrency must be positive
+         * @return the builder
+         */
+        public B withMaxConcurrency(Map<T, Integer> taskMaxConcurrencies) {
+            for (Map.Entry<T, Integer> entry : taskMaxConcurrencies.entrySet()) {
+                if (entry.getValue() == null || entry.getValue() <= 0) {
+                    throw new IllegalArgumentException("max concurrency of task " + entry.getKey() + " must be positive");
+                }
+            }
+            this.taskMaxConcurrencies = taskMaxConcurrencies;
+            return (B)this;
+        }
+
+        /**
+         * Gets max concurrency of task, default {@link TaskConcurrency#UNLIMITED}
+         *
+         * @param task the task
+         * @return the max concurrency
+         */
+        int getMaxConcurrency(T task) {
+            return taskMaxConcurrencies.getOrDefault(task, maxConcurrency);
+        }
+
+        /**
+         * Adaptive limit of concurrency per task, each task learns its own limit from latency and failures
+         * of completed requests with a limit algorithm built by the builder.
+         * Task reached its learned limit is skipped the same way as {@link #withMaxConcurrency(int)},
+         * max concurrency, if specified, caps the learned limit.
+         * <pre>
+         * {@code
+         * HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+         *                 .withTasks(entries)
+         *                 .withAdaptiveLimit(AimdLimit.newBuilder().withTimeout(Duration.ofSeconds(1)))
+         *                 .build();
+         * }
+         * </pre>
+         *
+         * @param limitAlgorithmBuilder builder of limit algorithm, see {@link AimdLimit} and {@link GradientLimit}
+         * @return the builder
+         */
+        public B withAdaptiveLimit(LimitAlgorithm.Builder limitAlgorithmBuilder) {
+            this.limitAlgorithmBuilder = limitAlgorithmBuilder;
+            return (B)this;
+        }
+
+        /**
+         * Build concurrency state of task with its weight, max concurrency and adaptive limit
+         *
+         * @param taskConcurrencyBuilder the task concurrency factory
+         * @param task                   the task
+         * @return the task concurrency
+         */
+        TaskConcurrency<T> newTaskConcurrency(TaskConcurrency.Builder taskConcurrencyBuilder, T task) {
+            return newTaskConcurrency(taskConcurrencyBuilder, task, UnaryOperator.identity());
+        }
+
+        /**
+         * Build concurrency state of task with its weight, max concurrency and adaptive limit
+         * decorator is applied before failure is sustained, so it observes every concurrency change
+         * including delayed release of failed requests
+         *
+         * @param taskConcurrencyBuilder the task concurrency factory
+         * @param task                   the task
+         * @param decorator              the decorator of concurrency state
+         * @return the task concurrency
+         */
+        TaskConcurrency<T> newTaskConcurrency(TaskConcurrency.Builder taskConcurrencyBuilder, T task, UnaryOperator<TaskConcurrency<T>> decorator) {
+            TaskConcurrency<T> taskConcurrency = taskConcurrencyBuilder.build(task, getWeight(task));
+            taskConcurrency.setMaxConcurrency(getMaxConcurrency(task));
+            taskConcurrency = new ScheduledTaskConcurrency<>(decorator.apply(taskConcurrency), scheduledCounterBuilder,
+                    releaseNotifier);
+            if (limitAlgorithmBuilder != null) {
+                //observe completion before failure is sustained by ScheduledTaskConcurrency
+                taskConcurrency = new AdaptiveLimitTaskConcurrency<>(taskConcurrency, limitAlgorithmBuilder.build());
+            }
+            if (leaseTimeout != null) {
+                //expired leases are completed through limit algorithm and failure sustain
+                taskConcurrency = new LeaseTaskConcurrency<>(taskConcurrency, leaseTimeout,
+                        scheduledCounterBuilder.getTicker(), releaseNotifier);
+            }
+            return taskConcurrency;
+        }
+
+        /**
+         * Lease timeout of requests, request not completed by caller within the timeout is completed as failure,
+         * its concurrency is released and counted by {@link Metrics#leakedLeaseCount()}.
+         * Completion after lease timeout is ignored.
+         * Leases are tracked in 1/100 of lease timeout time windows, expire at the upper edge of the window.
+         *
+         * @param leaseTimeout the lease timeout, must be positive
+         * @return the builder
+         */
+        public B withLeaseTimeout(Duration leaseTimeout) {
+            if (leaseTimeout.isNegative() || leaseTimeout.isZero()) {
+                throw new IllegalArgumentException("lease timeout must be positive");
+            }
+            this.leaseTimeout = leaseTimeout;
+            return (B)this;
+        }
+
+        /**
+         * Bounded FIFO queue of requests waiting for concurrency, see {@link AbstractConcurrencyLoadBalancer#acquireAsync(Duration)}.
+         * When every entity reached its max concurrency, request waits in queue until a completed request hands it
+         * the released concurrency, or its timeout. Request is rejected right away when the queue is full,
+         * so that overload turns into fast rejection instead of unbounded queueing on downstream.
+         *
+         * @param maxLength max number of waiting requests, must be positive
+         * @return the builder
+         */
+        public B withWaitQueue(int maxLength) {
+            if (maxLength <= 0) {
+                throw new IllegalArgumentException("max length of wait queue must be positive");
+            }
+            this.maxWaitQueueLength = maxLength;
+            return (B)this;
+        }
+
+        /**
+         * Bind loadBalancer being built to states shared by its entities, and enable options of the loadBalancer
+         *
+         * @param loadBalancer the load balancer
+         * @param <L>          the type of load balancer
+         * @return the load balancer
+         */
+        <L extends AbstractConcurrencyLoadBalancer<T>> L bind(L loadBalancer) {
+            if (leaseTimeout != null) {
+                loadBalancer.leaseTimeoutNanos = leaseTimeout.toNanos();
+            }
+            if (maxWaitQueueLength > 0) {
+                loadBalancer.waitQueue = new WaitQueue<>(maxWaitQueueLength, loadBalancer::next, loadBalancer.ticker);
+            }
+            releaseNotifier.bind(loadBalancer);
+            return loadBalancer;
+        }
+
         @VisibleForTesting
         protected B withTicker(Ticker ticker) {
             this.scheduledCounterBuilder.withTicker(ticker);
@@ -0,0 +1,338 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.uber.concurrency.loadbalancer.internal.CountingTaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.utils.IntervalLimiter;
+
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ApertureConcurrencyLoadBalancer distribute interaction to the less concurrent entity of two random choices
+ * within a deterministic subset of entities, the aperture.
+ *
+ * <P>
+ * Entities are laid out on a ring in the given order, each client takes a window of consecutive entities starting
+ * from clientIndex / clientCount of the ring, so that apertures of all clients cover the ring evenly.
+ * All clients must provide entities in the same order.
+ * Concurrency state and metrics are built only for entities inside the aperture, and are released when an entity
+ * leaves the aperture without outstanding request, so memory and connections per client scale with
+ * aperture size instead of number of entities.
+ * </p>
+ *
+ * <P>
+ * Aperture size adapts to load. Load is total concurrency divided by aperture size,
+ * when load is above high watermark, aperture grows, when load is below low watermark, aperture shrinks,
+ * to the size that brings load back to the middle of watermarks. Aperture size is updated at most once per second,
+ * and never below max(minAperture, ceil(entities / clientCount)) unless capped by maxAperture,
+ * so that every entity is covered by some client.
+ * </P>
+ * Example:
+ * <pre>
+ * {@code
+ * ApertureConcurrencyLoadBalancer<String> loadBalancer = ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(sortedUrls)
+ *                 .withClientIndex(instanceId, numberOfInstances)
+ *                 .withApertureRange(10, 100)
+ *                 .build();
+ * CompletableTask<String> url = loadBalancer.next();
+ * }
+ * </pre>
+ */
+public final class ApertureConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private static final long UPDATE_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+    private final ImmutableList<T> tasks;
+    private final ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<T> taskConcurrencyMap;
+    private final AtomicLong totalConcurrency;
+    private final IntervalLimiter limiter;
+    private final int offset;
+    private final int minAperture;
+    private final int maxAperture;
+    private final double lowLoad;
+    private final double highLoad;
+    //entities left aperture with outstanding requests, their state and metrics are released once they are idle
+    private final Set<T> leavers = ConcurrentHashMap.newKeySet();
+    private volatile Aperture aperture;
+
+    /**
+     * Instantiates an ApertureConcurrencyLoadBalancer
+     *
+     * @param tasks              the entity list
+     * @param taskConcurrencyMap the concurrency state storage
+     * @param totalConcurrency   the total concurrency of entities in storage
+     * @param builder            the builder
+     * @param ticker             the ticker
+     */
+    ApertureConcurrencyLoadBalancer(Collection<T> tasks,
+                                    ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<T> taskConcurrencyMap,
+                                    AtomicLong totalConcurrency,
+                                    Builder<T> builder,
+                                    Ticker ticker) {
+        this(ImmutableList.copyOf(tasks), taskConcurrencyMap, totalConcurrency, builder, ticker,
+                offset(tasks.size(), builder), minAperture(tasks.size(), builder));
+    }
+
+    private ApertureConcurrencyLoadBalancer(ImmutableList<T> tasks,
+                                            ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<T> taskConcurrencyMap,
+                                            AtomicLong totalConcurrency,
+                                            Builder<T> builder,
+                                            Ticker ticker,
+                                            int offset,
+                                            int minAperture) {
+        //metrics track entities in aperture only, see resize()
+        super(window(tasks, offset, minAperture), builder.listeners, ticker);
+        this.tasks = tasks;
+        this.taskConcurrencyMap = taskConcurrencyMap;
+        this.totalConcurrency = totalConcurrency;
+        this.limiter = new IntervalLimiter(UPDATE_INTERVAL_NANOS, ticker);
+        this.offset = offset;
+        this.maxAperture = Math.min(builder.maxAperture, tasks.size());
+        this.minAperture = minAperture;
+        this.lowLoad = builder.lowLoad;
+        this.highLoad = builder.highLoad;
+        this.aperture = new Aperture(minAperture);
+    }
+
+    private static int offset(int size, Builder<?> builder) {
+        return size == 0 ? 0 : (int) ((long) builder.clientIndex * size / builder.clientCount);
+    }
+
+    private static int minAperture(int size, Builder<?> builder) {
+        int coverage = (size + builder.clientCount - 1) / builder.clientCount;
+        return Math.min(Math.max(builder.minAperture, coverage), Math.min(builder.maxAperture, size));
+    }
+
+    /**
+     * Entities of aperture of the size starting from offset on the ring
+     */
+    private static <T> List<T> window(List<T> tasks, int offset, int size) {
+        List<T> result = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            result.add(tasks.get((offset + i) % tasks.size()));
+        }
+        return result;
+    }
+
+    @Override
+    boolean isBackedBy(TaskConcurrency<T> state) {
+        //state of entity out of aperture stays in the map while it has outstanding requests
+        TaskConcurrency<T> taskConcurrency = taskConcurrencyMap.get(state.getTask());
+        return taskConcurrency != null && taskConcurrency.isBackedBy(state);
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        if (limiter.acquire() > 0) {
+            resize();
+        }
+        Aperture current = aperture;
+        while (true) {
+            TaskConcurrency<T> result = P2CConcurrencyLoadBalancer.select(current);
+            if (result != null && result.isSaturated()) {
+                //both choices reached max concurrency, fallback to the least concurrent unsaturated entity in aperture
+                result = P2CConcurrencyLoadBalancer.selectUnsaturated(current);
+                if (result == null) {
+                    throw new SaturationException("all tasks in aperture reached max concurrency");
+                }
+            }
+            if (result == null || Integer.compareUnsigned(Integer.MAX_VALUE, result.getConcurrency()) < 0) {
+                return null; // no tasks or all tasks reached concurrency limits
+            }
+            //lost race to other thread when result reached max concurrency, select again
+            if (result.tryAcquire()) {
+                if (taskConcurrencyMap.contains(result.getTask(), result)) {
+                    return newCompletableTask(result);
+                }
+                //state was released by resize() after it was selected from previous aperture, select again
+                result.release(1);
+                current = aperture;
+            }
+        }
+    }
+
+    /**
+     * Gets number of entities in aperture
+     *
+     * @return the aperture size
+     */
+    @VisibleForTesting
+    int getApertureSize() {
+        return aperture.size;
+    }
+
+    @Override
+    void onTaskConcurrencyReleased(TaskConcurrency<T> taskConcurrency) {
+        if (!leavers.isEmpty() && leavers.contains(taskConcurrency.getTask())) {
+            releaseIfIdle(taskConcurrency.getTask());
+        }
+    }
+
+    /**
+     * resize aperture when load is out of watermarks
+     */
+    private synchronized void resize() {
+        //retry leavers whose concurrency was released outside completion, i.e. failure sustain matured
+        for (T t : leavers) {
+            releaseIfIdle(t);
+        }
+        int size = aperture.size;
+        if (size == 0) {
+            return;
+        }
+        long total = Math.max(totalConcurrency.get(), 0);
+        double load = total / (double) size;
+        if (load >= lowLoad && load <= highLoad) {
+            return;
+        }
+        int target = (int) Math.min(Math.ceil(total / ((lowLoad + highLoad) / 2)), Integer.MAX_VALUE);
+        target = Math.max(minAperture, Math.min(maxAperture, target));
+        if (target == size) {
+            return;
+        }
+        aperture = new Aperture(target);
+        //track entities joined aperture, release state and metrics of entities left aperture
+        for (int i = size; i < target; ++i) {
+            T t = taskAt(i);
+            leavers.remove(t);
+            metrics.addTask(t);
+        }
+        for (int i = target; i < size; ++i) {
+            //tracked before checking idle, so that completion after the check releases it
+            T t = taskAt(i);
+            leavers.add(t);
+            releaseIfIdle(t);
+        }
+    }
+
+    /**
+     * release state and metrics of entity left aperture if it has no outstanding request
+     */
+    private synchronized void releaseIfIdle(T t) {
+        if (leavers.contains(t) && taskConcurrencyMap.removeIfIdle(t)) {
+            leavers.remove(t);
+            metrics.removeTask(t);
+        }
+    }
+
+    private T taskAt(int index) {
+        return tasks.get((offset + index) % tasks.size());
+    }
+
+    /**
+     * Window of consecutive entities on the ring starting from offset of the client
+     */
+    private class Aperture extends AbstractList<TaskConcurrency<T>> {
+        private final int size;
+
+        Aperture(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public TaskConcurrency<T> get(int index) {
+            return taskConcurrencyMap.apply(taskAt(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * New builder of ApertureConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     * @return the aperture concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of ApertureConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public final static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private int clientIndex = 0;
+        private int clientCount = 1;
+        private int minAperture = 10;
+        private int maxAperture = Integer.MAX_VALUE;
+        private double lowLoad = 1.0;
+        private double highLoad = 2.0;
+
+        /**
+         * Position of this client among all clients, decides offset of the aperture on the ring
+         *
+         * @param clientIndex the client index, in range [0, clientCount)
+         * @param clientCount the number of clients
+         * @return the builder
+         */
+        public Builder<T> withClientIndex(int clientIndex, int clientCount) {
+            if (clientCount <= 0 || clientIndex < 0 || clientIndex >= clientCount) {
+                throw new IllegalArgumentException("client index must be in range [0, clientCount)");
+            }
+            this.clientIndex = clientIndex;
+            this.clientCount = clientCount;
+            return this;
+        }
+
+        /**
+         * Lower and upper bound of aperture size
+         *
+         * @param minAperture the min aperture, must be positive
+         * @param maxAperture the max aperture, must not be less than min aperture
+         * @return the builder
+         */
+        public Builder<T> withApertureRange(int minAperture, int maxAperture) {
+            if (minAperture <= 0 || maxAperture < minAperture) {
+                throw new IllegalArgumentException("aperture range must be positive and min aperture must not exceed max aperture");
+            }
+            this.minAperture = minAperture;
+            this.maxAperture = maxAperture;
+            return this;
+        }
+
+        /**
+         * Watermarks of concurrency per entity in aperture,
+         * aperture shrinks when load is below low watermark and grows when load is above high watermark
+         *
+         * @param lowLoad  the low watermark, must not be negative
+         * @param highLoad the high watermark, must be greater than low watermark
+         * @return the builder
+         */
+        public Builder<T> withTargetLoad(double lowLoad, double highLoad) {
+            if (!(lowLoad >= 0) || !(highLoad > lowLoad)) {
+                throw new IllegalArgumentException("low load can't be negative and high load must be greater than low load");
+            }
+            this.lowLoad = lowLoad;
+            this.highLoad = highLoad;
+            return this;
+        }
+
+        /**
+         * Build an ApertureConcurrencyLoadBalancer
+         *
+         * @return the aperture concurrency load balancer
+         */
+        public ApertureConcurrencyLoadBalancer<T> build() {
+            TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+            AtomicLong totalConcurrency = new AtomicLong();
+            ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<T> taskConcurrencyMap = new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(
+                    t -> newTaskConcurrency(taskConcurrencyBuilder, t, tc -> new CountingTaskConcurrency<>(tc, totalConcurrency)));
+            return bind(new ApertureConcurrencyLoadBalancer<>(
+                    tasks, taskConcurrencyMap, totalConcurrency, this, scheduledCounterBuilder.getTicker()));
+        }
+    }
+}
@@ -2,17 +2,25 @@ package com.uber.concurrency.loadbalancer;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.uber.concurrency.loadbalancer.internal.CountingTaskConcurrency;
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
 import com.uber.concurrency.loadbalancer.timedcounter.ScheduledCounter;
-import com.uber.concurrency.loadbalancer.utils.ReservoirSampler;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Random;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Function;
 
 /**
@@ -32,6 +40,24 @@ import java.util.function.Function;
  * An advantage of ArrayConcurrencyLoadBalancer is multiple loadbalancers can share concurrency state to improve over-all efficiency
  * so that, even low-throughput loadBalancer can get benefit by sharing state with high-throughput loadBalancers
  * </p>
+ *
+ * <p>
+ * Entities can be added or removed at runtime with {@link #addTask(Object)} and {@link #removeTask(Object)},
+ * entity groups are rebuilt while concurrency state stays in the concurrency state storage,
+ * so state of existing entities, and of entity removed then added back, is kept.
+ * </p>
+ *
+ * <p>
+ * Entity group is selected with probability proportional to the sum of weights of its entities,
+ * capacity weight of entity by default. Weight can be updated at runtime with {@link #setWeight(Object, int)},
+ * e.g. to follow health of entities, without rebuilding entity groups.
+ * </p>
+ *
+ * <p>
+ * With join-idle-queue enabled, see {@link Builder#withJoinIdleQueue(int)}, entity joins a lock-free idle queue
+ * when its concurrency drops below idle concurrency on completion, next() takes an idle entity from the queue
+ * with time complexity O(1), and falls back to traverse through entity group only when the queue is empty.
+ * </p>
  * Example:
  * <pre>
  * {@code
@@ -47,7 +73,17 @@ import java.util.function.Function;
 public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
     private static final TaskConcurrency LEAST_TASK_CONCURRENCY = new TaskConcurrency.Noop(Integer.MAX_VALUE);
 
-    private final WeightedSelector<TaskGroup<T>> weightedSelector;
+    private final Function<T, TaskConcurrency<T>> taskConcurrencyMap;
+    //concurrency state of entities in this loadBalancer, counting requests of this loadBalancer
+    private final Map<T, LocalTaskConcurrency<T>> localTaskConcurrencies = new ConcurrentHashMap<>();
+    private final int groupSize;
+    private final int idleConcurrency;
+    private final ConcurrentLinkedQueue<TaskConcurrency<T>> idleQueue = new ConcurrentLinkedQueue<>();
+    //entities in idle queue, so that an entity is queued at most once
+    private final Set<TaskConcurrency<T>> idleMembers = ConcurrentHashMap.newKeySet();
+    private volatile ImmutableList<T> tasks;
+    private volatile ImmutableSet<T> taskSet;
+    private volatile WeightedSelector<TaskGroup<T>> weightedSelector;
 
     /**
      * Instantiates a ArrayConcurrencyLoadBalancer
@@ -62,15 +98,159 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
                                  int groupSize,
                                  List<CompletableTask.Listener<T>> listeners,
                                  Ticker ticker) {
+        this(tasks, taskConcurrencyMap, groupSize, 0, listeners, ticker);
+    }
+
+    /**
+     * Instantiates a ArrayConcurrencyLoadBalancer with join-idle-queue
+     *
+     * @param tasks              the entity list
+     * @param taskConcurrencyMap the concurrency state storage
+     * @param groupSize          to balance between accuracy and computation complexity
+     * @param idleConcurrency    entity below idle concurrency joins idle queue, 0 to disable join-idle-queue
+     * @param listeners          the listeners
+     */
+    ArrayConcurrencyLoadBalancer(Collection<T> tasks,
+                                 Function<T, TaskConcurrency<T>> taskConcurrencyMap,
+                                 int groupSize,
+                                 int idleConcurrency,
+                                 List<CompletableTask.Listener<T>> listeners,
+                                 Ticker ticker) {
         super(tasks, listeners, ticker);
+        this.taskConcurrencyMap = taskConcurrencyMap;
+        this.groupSize = groupSize;
+        this.idleConcurrency = idleConcurrency;
+        this.tasks = ImmutableList.copyOf(tasks);
+        this.taskSet = ImmutableSet.copyOf(tasks);
+        for (T task : this.tasks) {
+            localTaskConcurrencies.put(task, new LocalTaskConcurrency<>(taskConcurrencyMap.apply(task)));
+        }
         //build WeightedSelector
-        this.weightedSelector = buildWeightedSelector(tasks, taskConcurrencyMap, groupSize);
+        this.weightedSelector = buildWeightedSelector(this.tasks);
+        for (T task : this.tasks) {
+            joinIdleQueue(localTaskConcurrencies.get(task));
+        }
+    }
+
+    /**
+     * Add entity at runtime, entity groups are rebuilt with concurrency state kept.
+     * Entity removed but still draining is added back with its concurrency state, and its drain future is cancelled.
+     *
+     * @param task the task
+     * @return true if the entity is added, false if it exists already
+     */
+    public synchronized boolean addTask(T task) {
+        Objects.requireNonNull(task);
+        if (tasks.contains(task)) {
+            return false;
+        }
+        TaskConcurrency<T> draining = undrain(task);
+        LocalTaskConcurrency<T> taskConcurrency = draining != null
+                ? (LocalTaskConcurrency<T>) draining
+                : new LocalTaskConcurrency<>(taskConcurrencyMap.apply(task));
+        localTaskConcurrencies.put(task, taskConcurrency);
+        tasks = ImmutableList.<T>builder().addAll(tasks).add(task).build();
+        taskSet = ImmutableSet.copyOf(tasks);
+        weightedSelector = buildWeightedSelector(tasks);
+        metrics.addTask(task);
+        joinIdleQueue(taskConcurrency);
+        return true;
     }
 
-    private static <T> WeightedSelector<TaskGroup<T>> buildWeightedSelector(Collection<T> tasks, Function<T, TaskConcurrency<T>> taskConcurrencyMap, int groupSize) {
-        if (groupSize <= 0) {
-            groupSize = Integer.MAX_VALUE;
+    /**
+     * Remove entity at runtime, the entity stops receiving requests immediately,
+     * and is tracked until outstanding requests of this loadBalancer complete, or their leases expire.
+     * Concurrency state of the entity stays in the concurrency state storage,
+     * which may be shared with other loadBalancers, so requests of other loadBalancers, and concurrency sustained by failed requests, are not waited for.
+     *
+     * @param task the task
+     * @return the future completed when outstanding requests of the entity from this loadBalancer drained,
+     * completed already if the entity doesn't exist
+     */
+    public synchronized CompletableFuture<Void> removeTask(T task) {
+        if (!tasks.contains(task)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ImmutableList.Builder<T> builder = ImmutableList.builder();
+        for (T t : tasks) {
+            if (!t.equals(task)) {
+                builder.add(t);
+            }
         }
+        tasks = builder.build();
+        taskSet = ImmutableSet.copyOf(tasks);
+        weightedSelector = buildWeightedSelector(tasks);
+        metrics.removeTask(task);
+        LocalTaskConcurrency<T> taskConcurrency = localTaskConcurrencies.remove(task);
+        taskConcurrency.resetWeight();
+        if (idleMembers.remove(taskConcurrency)) {
+            idleQueue.remove(taskConcurrency);
+        }
+        return drain(taskConcurrency);
+    }
+
+    /**
+     * Update weight of entity at runtime, its group is selected with probability proportional to
+     * the sum of weights of entities in the group, and entities of the group are compared by concurrency / weight.
+     * Entity groups are not rebuilt, the update takes O(log G), G indicate number of groups.
+     * Weight is kept while entity stays in the loadBalancer, and reset to capacity weight once entity is removed.
+     *
+     * @param task   the task
+     * @param weight the weight, must be positive
+     * @throws IllegalArgumentException if weight is not positive or the entity doesn't exist
+     */
+    public synchronized void setWeight(T task, int weight) {
+        Objects.requireNonNull(task);
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        int index = tasks.indexOf(task);
+        if (index < 0) {
+            throw new IllegalArgumentException("task doesn't exist: " + task);
+        }
+        localTaskConcurrencies.get(task).setWeight(weight);
+        //entities are assigned to groups in round-robin order, see buildWeightedSelector
+        WeightedSelector<TaskGroup<T>> selector = weightedSelector;
+        int groupIndex = index % selector.entities.size();
+        selector.setWeight(groupIndex, getWeight(selector.entities.get(groupIndex)));
+    }
+
+    /**
+     * Gets weight of entity
+     *
+     * @param task the task
+     * @return the weight set at runtime, or capacity weight of the entity if it's not set
+     * @throws IllegalArgumentException if the entity doesn't exist
+     */
+    public int getWeight(T task) {
+        Objects.requireNonNull(task);
+        TaskConcurrency<T> taskConcurrency = localTaskConcurrencies.get(task);
+        if (taskConcurrency == null) {
+            throw new IllegalArgumentException("task doesn't exist: " + task);
+        }
+        return taskConcurrency.getWeight();
+    }
+
+    @Override
+    boolean isSelectable(TaskConcurrency<T> taskConcurrency) {
+        return localTaskConcurrencies.get(taskConcurrency.getTask()) == taskConcurrency;
+    }
+
+    @Override
+    boolean isDrained(TaskConcurrency<T> taskConcurrency) {
+        return ((LocalTaskConcurrency<T>) taskConcurrency).isDrained(ticker.read(), leaseTimeoutNanos);
+    }
+
+    private int getWeight(TaskGroup<T> taskGroup) {
+        int weight = 0;
+        for (TaskConcurrency<T> taskConcurrency : taskGroup) {
+            weight += taskConcurrency.getWeight();
+        }
+        return weight;
+    }
+
+    private WeightedSelector<TaskGroup<T>> buildWeightedSelector(Collection<T> tasks) {
+        int groupSize = this.groupSize <= 0 ? Integer.MAX_VALUE : this.groupSize;
         WeightedSelector.WeightedSelectorBuilder<TaskGroup<T>> builder = WeightedSelector.newBuilder();
         int numTaskGroups = tasks.size() / groupSize + ( tasks.size() % groupSize == 0 ? 0 : 1 );
         TaskGroup<T>[] taskGroups = new TaskGroup[numTaskGroups];
@@ -79,39 +259,240 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
         }
         int i = 0;
         for (T task : tasks) {
-            TaskConcurrency<T> taskConcurrency = taskConcurrencyMap.apply(task);
-            taskGroups[i++ % numTaskGroups].add(taskConcurrency);
+            taskGroups[i++ % numTaskGroups].add(localTaskConcurrencies.get(task));
         }
         for (i = 0 ; i < numTaskGroups ; ++i) {
-            builder.add(taskGroups[i], taskGroups[i].size());
+            builder.add(taskGroups[i], getWeight(taskGroups[i]));
         }
         return builder.build();
     }
 
+    @Override
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        List<T> current = tasks;
+        List<TaskConcurrency<T>> taskConcurrencies = new ArrayList<>(current.size());
+        for (T task : current) {
+            TaskConcurrency<T> taskConcurrency = localTaskConcurrencies.get(task);
+            //entity removed after tasks were read
+            if (taskConcurrency != null) {
+                taskConcurrencies.add(taskConcurrency);
+            }
+        }
+        return taskConcurrencies;
+    }
+
     @Override
     public CompletableTask<T> next() {
-        TaskGroup<T> taskGroup = weightedSelector.select();
+        if (idleConcurrency > 0) {
+            CompletableTask<T> completableTask = nextIdle();
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+        WeightedSelector<TaskGroup<T>> selector = weightedSelector;
+        TaskGroup<T> taskGroup = selector.select();
         if (taskGroup == null) {
             return null;
         }
-        TaskConcurrency<T> leastTaskConcurrency = LEAST_TASK_CONCURRENCY;
-        ReservoirSampler<TaskConcurrency<T>> sampler = new ReservoirSampler<>();
-        for(TaskConcurrency<T> taskConcurrency : taskGroup) {
-            taskConcurrency.syncState();
-            int diff = taskConcurrency.compareTo(leastTaskConcurrency);
-            if (diff < 0) {
-                sampler.reset();
-                leastTaskConcurrency = taskConcurrency;
-            } else if (diff > 0){
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        while (true) {
+            TaskConcurrency<T> leastTaskConcurrency = LEAST_TASK_CONCURRENCY;
+            TaskConcurrency<T> result = null;
+            //number of least concurrent entities seen, each of them replaces result with probability 1 / ties
+            //so that ties are selected with equal probability without allocating a sampler
+            int ties = 0;
+            boolean saturated = false;
+            for (int i = 0; i < taskGroup.size(); ++i) {
+                TaskConcurrency<T> taskConcurrency = taskGroup.get(i);
+                taskConcurrency.syncState();
+                if (taskConcurrency.isSaturated()) {
+                    saturated = true;
+                    continue;
+                }
+                int diff = taskConcurrency.compareTo(leastTaskConcurrency);
+                if (diff < 0) {
+                    ties = 0;
+                    leastTaskConcurrency = taskConcurrency;
+                } else if (diff > 0) {
+                    continue;
+                }
+                if (rand.nextInt(++ties) == 0) {
+                    result = taskConcurrency;
+                }
+            }
+            if (result == null) {
+                if (!saturated) {
+                    return null; // no tasks or all tasks reached concurrency limits
+                }
+                //every entity of the selected group reached max concurrency, fall back to other groups
+                taskGroup = nextUnsaturated(selector, taskGroup);
+                if (taskGroup == null) {
+                    throw new SaturationException("all tasks reached max concurrency");
+                }
+                continue;
+            }
+            //lost race to other thread when result reached max concurrency, scan again
+            CompletableTask<T> completableTask = tryAcquire(result);
+            if (completableTask != null) {
+                return completableTask;
+            }
+            if (!isSelectable(result)) {
+                //entity removed after the group was selected, select again out of rebuilt groups
+                selector = weightedSelector;
+                taskGroup = selector.select();
+                if (taskGroup == null) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the next group after the saturated group with an entity below max concurrency, in the order of groups
+     *
+     * @param selector  the selector of groups
+     * @param saturated the group whose entities all reached max concurrency
+     * @return the group, null if every entity reached max concurrency
+     */
+    private TaskGroup<T> nextUnsaturated(WeightedSelector<TaskGroup<T>> selector, TaskGroup<T> saturated) {
+        List<TaskGroup<T>> taskGroups = selector.entities;
+        int start = 0;
+        while (start < taskGroups.size() && taskGroups.get(start) != saturated) {
+            ++start;
+        }
+        for (int i = 1; i < taskGroups.size(); ++i) {
+            int index = (start + i) % taskGroups.size();
+            if (selector.getWeight(index) == 0) {
+                continue;
+            }
+            for (TaskConcurrency<T> taskConcurrency : taskGroups.get(index)) {
+                taskConcurrency.syncState();
+                if (!taskConcurrency.isSaturated()) {
+                    return taskGroups.get(index);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take entity from idle queue, entity stays in the queue while its concurrency is still below idle concurrency
+     *
+     * @return the completable task, null if there is no idle entity
+     */
+    private CompletableTask<T> nextIdle() {
+        TaskConcurrency<T> taskConcurrency;
+        while ((taskConcurrency = idleQueue.poll()) != null) {
+            idleMembers.remove(taskConcurrency);
+            //skip entity removed, or busy with requests from other loadBalancers sharing concurrency state
+            if (!taskSet.contains(taskConcurrency.getTask()) || !isIdle(taskConcurrency)) {
                 continue;
             }
-            sampler.sample(taskConcurrency);
+            CompletableTask<T> completableTask = tryAcquire(taskConcurrency);
+            if (completableTask != null) {
+                joinIdleQueue(taskConcurrency);
+                return completableTask;
+            }
+        }
+        return null;
+    }
+
+    private boolean isIdle(TaskConcurrency<T> taskConcurrency) {
+        taskConcurrency.syncState();
+        return taskConcurrency.getConcurrency() < (long) idleConcurrency * taskConcurrency.getWeight();
+    }
+
+    private void joinIdleQueue(TaskConcurrency<T> taskConcurrency) {
+        if (idleConcurrency > 0 && isIdle(taskConcurrency) && idleMembers.add(taskConcurrency)) {
+            idleQueue.offer(taskConcurrency);
         }
-        TaskConcurrency<T> result = sampler.getSample();
-        if (result == null) {
-            return null; // no tasks or all tasks reached concurrency limits
+    }
+
+    @Override
+    void onTaskConcurrencyReleased(TaskConcurrency<T> taskConcurrency) {
+        if (idleConcurrency > 0 && taskSet.contains(taskConcurrency.getTask())) {
+            joinIdleQueue(taskConcurrency);
+        }
+    }
+
+    /**
+     * Concurrency state of entity in this loadBalancer, counts outstanding requests of this loadBalancer
+     * on top of the state which may be shared with other loadBalancers, so that removed entity is drained
+     * of requests of this loadBalancer only. Weight set at runtime is local to this loadBalancer as well.
+     *
+     * @param <T> the type parameter
+     */
+    @SuppressFBWarnings(
+            value="EQ_COMPARETO_USE_OBJECT_EQUALS",
+            justification="Note: this class has a natural ordering that is inconsistent with equals.")
+    private static final class LocalTaskConcurrency<T> extends CountingTaskConcurrency<T> {
+        private final AtomicLong concurrency;
+        //start time of the latest lease, outstanding requests are reclaimed once it expired
+        private final AtomicLong leaseNanos = new AtomicLong(Long.MIN_VALUE);
+        //weight set at runtime, 0 if entity is weighted by capacity weight
+        private volatile int weight;
+
+        LocalTaskConcurrency(TaskConcurrency<T> delegate) {
+            this(delegate, new AtomicLong());
+        }
+
+        private LocalTaskConcurrency(TaskConcurrency<T> delegate, AtomicLong concurrency) {
+            super(delegate, concurrency);
+            this.concurrency = concurrency;
+        }
+
+        @Override
+        public void lease(int n, long startNanos) {
+            super.lease(n, startNanos);
+            leaseNanos.accumulateAndGet(startNanos, Math::max);
+        }
+
+        @Override
+        public int getWeight() {
+            int current = weight;
+            return current > 0 ? current : super.getWeight();
+        }
+
+        void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        void resetWeight() {
+            this.weight = 0;
+        }
+
+        /**
+         * compare concurrency / weight with weight set at runtime,
+         * entities weighted by capacity weight are compared by their state, including sub strategy
+         */
+        @Override
+        public int compareTo(TaskConcurrency o) {
+            if (weight == 0 && (!(o instanceof LocalTaskConcurrency) || ((LocalTaskConcurrency<?>) o).weight == 0)) {
+                return super.compareTo(o);
+            }
+            boolean saturated = isSaturated();
+            if (saturated != o.isSaturated()) {
+                return saturated ? 1 : -1;
+            }
+            return Long.compare(Integer.toUnsignedLong(getConcurrency()) * o.getWeight(),
+                    Integer.toUnsignedLong(o.getConcurrency()) * getWeight());
+        }
+
+        /**
+         * Whether requests of this loadBalancer completed, or their leases expired
+         *
+         * @param nowNanos          current ticker time in nanoseconds
+         * @param leaseTimeoutNanos the lease timeout, Long.MAX_VALUE if requests are not leased
+         * @return true if the entity is drained
+         */
+        boolean isDrained(long nowNanos, long leaseTimeoutNanos) {
+            if (concurrency.get() <= 0) {
+                return true;
+            }
+            long latest = leaseNanos.get();
+            return leaseTimeoutNanos != Long.MAX_VALUE && latest != Long.MIN_VALUE
+                    && nowNanos - latest >= leaseTimeoutNanos;
         }
-        return new ConcurrentTaskImpl(ticker.read(), result);
     }
 
     /**
@@ -141,8 +522,7 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
      */
     static class TaskConcurrencyMap<T> implements Function<T, TaskConcurrency<T>> {
         private final ConcurrentHashMap<T, TaskConcurrency<T>> taskToTaskConcurrency;
-        private final ScheduledCounter.Builder scheduledCounterBuilder;
-        private final TaskConcurrency.Builder taskConcurrencyBuilder;
+        private final Function<T, TaskConcurrency<T>> taskConcurrencyFactory;
 
         /**
          * Instantiates a TaskConcurrencyMap
@@ -151,15 +531,63 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
          * @param scheduledCounterBuilder builder of scheduledCounter for efficient error handling
          */
         TaskConcurrencyMap(TaskConcurrency.Builder taskConcurrencyBuilder, ScheduledCounter.Builder scheduledCounterBuilder) {
+            this(t -> new ScheduledTaskConcurrency<>(taskConcurrencyBuilder.build(t), scheduledCounterBuilder));
+        }
+
+        /**
+         * Instantiates a TaskConcurrencyMap with factory of task concurrency
+         * factory is called when the task is added to the map for the first time
+         *
+         * @param taskConcurrencyFactory the task concurrency factory
+         */
+        TaskConcurrencyMap(Function<T, TaskConcurrency<T>> taskConcurrencyFactory) {
             this.taskToTaskConcurrency = new ConcurrentHashMap<>();
-            this.taskConcurrencyBuilder = taskConcurrencyBuilder;
-            this.scheduledCounterBuilder = scheduledCounterBuilder;
+            this.taskConcurrencyFactory = taskConcurrencyFactory;
         }
 
         @Override
         public TaskConcurrency<T> apply(T t) {
             Objects.requireNonNull(t);
-            return taskToTaskConcurrency.computeIfAbsent(t, o -> new ScheduledTaskConcurrency<>(taskConcurrencyBuilder.build(t), scheduledCounterBuilder));
+            return taskToTaskConcurrency.computeIfAbsent(t, taskConcurrencyFactory);
+        }
+
+        /**
+         * Gets concurrency state of task without building it
+         *
+         * @param t the task
+         * @return the concurrency state, null if the map doesn't have it
+         */
+        TaskConcurrency<T> get(T t) {
+            return taskToTaskConcurrency.get(t);
+        }
+
+        /**
+         * Remove concurrency state of task if there is no outstanding request,
+         * the state is built again when the task is accessed next time
+         *
+         * @param t the task
+         * @return true if the state is removed
+         */
+        boolean removeIfIdle(T t) {
+            boolean[] removed = new boolean[1];
+            taskToTaskConcurrency.computeIfPresent(t, (k, v) -> {
+                v.syncState();
+                removed[0] = v.getConcurrency() == 0;
+                return removed[0] ? null : v;
+            });
+            return removed[0];
+        }
+
+        /**
+         * Check if concurrency state of task is kept by the map,
+         * state acquired after it was removed by {@link #removeIfIdle(Object)} is orphaned and must be released
+         *
+         * @param t               the task
+         * @param taskConcurrency the concurrency state of the task
+         * @return true if the map still maps the task to the state
+         */
+        boolean contains(T t, TaskConcurrency<T> taskConcurrency) {
+            return taskToTaskConcurrency.get(t) == taskConcurrency;
         }
     }
 
@@ -174,25 +602,48 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
      * WeightedSelector<String> selector = builder.build();
      * selector.select() // 50% probability get "a", 30% probability get "b" ,20% probability get "c"
      *
+     * Weights are kept in a Fenwick tree, select and update of weight take time complexity O(logn),
+     * so weights can follow capacity or health of entities at runtime,
+     * see {@link ArrayConcurrencyLoadBalancer#setWeight(Object, int)}.
+     * Random number is drawn from thread local generator, select doesn't contend across threads.
+     *
      * @param <T> the type parameter
      */
     @VisibleForTesting
     static class WeightedSelector<T> {
-        private final TreeMap<Integer, T> weightMap ;
-        private final int totalWeight;
-        private final Random rand;
+        private final List<T> entities;
+        private final int[] weights;
+        /**
+         * Fenwick tree with 1-based index, node i holds sum of weights in range (i - lowbit(i), i]
+         */
+        private final AtomicLongArray tree;
+        private final int highestBit;
+        private volatile long totalWeight;
 
         /**
          * Instantiates a new Weighted selector.
          *
-         * @param weightMap   the weight map
-         * @param totalWeight the total weight
-         * @param rand        the rand
+         * @param entities the entities
+         * @param weights  the weights of entities
          */
-        WeightedSelector(TreeMap<Integer, T> weightMap, int totalWeight, Random rand) {
-            this.weightMap = weightMap;
-            this.totalWeight = totalWeight;
-            this.rand = rand;
+        WeightedSelector(List<T> entities, int[] weights) {
+            int size = entities.size();
+            this.entities = entities;
+            this.weights = weights;
+            this.highestBit = Integer.highestOneBit(size);
+            //build Fenwick tree in O(n) by pushing each node to its parent
+            long[] nodes = new long[size + 1];
+            long total = 0;
+            for (int i = 1; i <= size; ++i) {
+                nodes[i] += weights[i - 1];
+                total += weights[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= size) {
+                    nodes[parent] += nodes[i];
+                }
+            }
+            this.tree = new AtomicLongArray(nodes);
+            this.totalWeight = total;
         }
 
         /**
@@ -202,11 +653,54 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
          */
         @VisibleForTesting
         protected T select() {
-            if (totalWeight == 0) {
+            long total = totalWeight;
+            if (total <= 0) {
                 return null;
             }
-            int selected = rand.nextInt(totalWeight);
-            return weightMap.floorEntry(selected).getValue();
+            long selected = ThreadLocalRandom.current().nextLong(total);
+            //descend Fenwick tree to the first entity whose prefix sum of weight exceeds selected
+            int index = 0;
+            for (int step = highestBit; step > 0; step >>= 1) {
+                int next = index + step;
+                if (next <= weights.length) {
+                    long weight = tree.get(next);
+                    if (weight <= selected) {
+                        index = next;
+                        selected -= weight;
+                    }
+                }
+            }
+            //weights may be updated concurrently, keep index in range
+            return entities.get(Math.min(index, entities.size() - 1));
+        }
+
+        /**
+         * Update weight of entity at runtime
+         *
+         * @param index  the index of entity, in the order of being added
+         * @param weight the weight
+         */
+        synchronized void setWeight(int index, int weight) {
+            weight = Math.abs(weight);
+            long delta = weight - weights[index];
+            if (delta == 0) {
+                return;
+            }
+            weights[index] = weight;
+            for (int i = index + 1; i <= weights.length; i += i & -i) {
+                tree.addAndGet(i, delta);
+            }
+            totalWeight += delta;
+        }
+
+        /**
+         * Gets weight of entity
+         *
+         * @param index the index of entity, in the order of being added
+         * @return the weight
+         */
+        synchronized int getWeight(int index) {
+            return weights[index];
         }
 
         /**
@@ -226,8 +720,8 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
          */
         @VisibleForTesting
         protected static class WeightedSelectorBuilder<T> {
-            private TreeMap<Integer, T> weightMap = new TreeMap<>();
-            private int totalWeight = 0;
+            private final List<T> entities = new ArrayList<>();
+            private final List<Integer> weights = new ArrayList<>();
 
             /**
              * Add entity with specific weight
@@ -238,9 +732,8 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
              */
             @VisibleForTesting
             WeightedSelectorBuilder<T> add(T t, int weight) {
-                weight = Math.abs(weight);
-                weightMap.put(totalWeight, t);
-                totalWeight += weight;
+                entities.add(t);
+                weights.add(Math.abs(weight));
                 return this;
             }
 
@@ -250,7 +743,11 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
              * @return the weighted selector
              */
             WeightedSelector<T> build() {
-                return new WeightedSelector<>(weightMap, totalWeight, new Random());
+                int[] weightArray = new int[weights.size()];
+                for (int i = 0; i < weightArray.length; ++i) {
+                    weightArray[i] = weights.get(i);
+                }
+                return new WeightedSelector<>(ImmutableList.copyOf(entities), weightArray);
             }
         }
     }
@@ -274,6 +771,7 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
             extends AbstractBuilder<T, Builder<T>> {
         private volatile Function<T, TaskConcurrency<T>> taskConcurrencyMap = null;
         private int groupSize = Integer.MAX_VALUE;
+        private int idleConcurrency = 0;
 
         Function<T, TaskConcurrency<T>> getTaskConcurrencyMap() {
             return taskConcurrencyMap;
@@ -283,6 +781,8 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
          * set group size to balance between accuracy and computation complexity
          * 1 result in random selection
          * Integer.MAX_VALUE result in absolute accurate selection
+         * with max concurrency specified, next() falls back to other groups when every entity of the selected group
+         * reached max concurrency, and throws {@link SaturationException} only when every entity reached it
          *
          * @param groupSize the group size
          * @return the final array concurrency load balancer builder
@@ -292,6 +792,24 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
             return this;
         }
 
+        /**
+         * Enable join-idle-queue, entity joins idle queue when its concurrency drops below idle concurrency,
+         * scaled by its capacity weight, on completion of request. next() takes idle entity in FIFO order
+         * with time complexity O(1), and traverses through entity group only when there is no idle entity.
+         * It moves cost of selection from request path to completion,
+         * and spreads requests evenly when most entities are idle.
+         *
+         * @param idleConcurrency entity with concurrency below it is idle, 1 for entity without outstanding request
+         * @return the builder
+         */
+        public Builder<T> withJoinIdleQueue(int idleConcurrency) {
+            if (idleConcurrency <= 0) {
+                throw new IllegalArgumentException("idle concurrency must be positive");
+            }
+            this.idleConcurrency = idleConcurrency;
+            return this;
+        }
+
         /**
          * Build array concurrency load balancer.
          *
@@ -302,11 +820,12 @@ public final class ArrayConcurrencyLoadBalancer<T> extends AbstractConcurrencyLo
                 synchronized (this) {
                     if (taskConcurrencyMap == null) {
                         TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
-                        taskConcurrencyMap = new TaskConcurrencyMap<>(taskConcurrencyBuilder, scheduledCounterBuilder);
+                        taskConcurrencyMap = new TaskConcurrencyMap<>(t -> newTaskConcurrency(taskConcurrencyBuilder, t));
                     }
                 }
             }
-            return new ArrayConcurrencyLoadBalancer(tasks, taskConcurrencyMap, groupSize, listeners, scheduledCounterBuilder.getTicker());
+            return bind(new ArrayConcurrencyLoadBalancer(
+                    tasks, taskConcurrencyMap, groupSize, idleConcurrency, listeners, scheduledCounterBuilder.getTicker()));
         }
     }
 }
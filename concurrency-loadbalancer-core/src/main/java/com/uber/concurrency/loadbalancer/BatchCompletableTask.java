@@ -0,0 +1,167 @@
+package com.uber.concurrency.loadbalancer;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result type of LeastConcurrencyLoadBalancer.nextBatch(n)
+ * it holds requests distributed across multiple entities, requests of the same entity are grouped by index.
+ * Requests are completed per entity, or in bulk, ConcurrencyLoadBalancer use the callback functions to update its
+ * internal concurrency counters.
+ * Example:
+ * <pre>
+ * {@code
+ * BatchCompletableTask<String> batch = loadBalancer.nextBatch(1000);
+ * for (int i = 0; i < batch.size(); ++i) {
+ *     boolean succeed = doPost(batch.getTask(i), batch.getCount(i)); //send getCount(i) sub-requests to getTask(i)
+ *     batch.complete(i, succeed);                                   //finish sub-requests of the entity
+ * }
+ * }
+ * </pre>
+ *
+ * @param <T> the entity type returned by ConcurrencyLoadBalancer
+ */
+public interface BatchCompletableTask<T> {
+    /**
+     * Gets number of distinct entities
+     *
+     * @return the size
+     */
+    int size();
+
+    /**
+     * Gets the entity of index
+     *
+     * @param index the index, from 0 to size() - 1
+     * @return the entity
+     */
+    @Nonnull
+    T getTask(int index);
+
+    /**
+     * Gets number of requests assigned to entity of index
+     *
+     * @param index the index, from 0 to size() - 1
+     * @return the number of requests
+     */
+    int getCount(int index);
+
+    /**
+     * Gets total number of requests, which may be less than requested when entities reached max concurrency
+     *
+     * @return the number of requests
+     */
+    default int getCount() {
+        int count = 0;
+        for (int i = 0; i < size(); ++i) {
+            count += getCount(i);
+        }
+        return count;
+    }
+
+    /**
+     * invoked by caller to indicate completion of n requests of entity of index
+     *
+     * @param index   the index, from 0 to size() - 1
+     * @param n       number of requests
+     * @param succeed indicates if the requests are succeed or failed
+     * @return number of requests completed, requests completed already are not counted
+     */
+    int complete(int index, int n, boolean succeed);
+
+    /**
+     * invoked by caller to indicate completion of all remaining requests of entity of index
+     *
+     * @param index   the index, from 0 to size() - 1
+     * @param succeed indicates if the requests are succeed or failed
+     * @return number of requests completed, requests completed already are not counted
+     */
+    default int complete(int index, boolean succeed) {
+        return complete(index, getCount(index), succeed);
+    }
+
+    /**
+     * invoked by caller to indicate completion of all remaining requests
+     *
+     * @param succeed indicates if the requests are succeed or failed
+     * @return number of requests completed, requests completed already are not counted
+     */
+    default int complete(boolean succeed) {
+        int completed = 0;
+        for (int i = 0; i < size(); ++i) {
+            completed += complete(i, succeed);
+        }
+        return completed;
+    }
+
+    /**
+     * equivalent to complete(true)
+     *
+     * @return number of requests completed, requests completed already are not counted
+     */
+    default int complete() {
+        return complete(true);
+    }
+
+    /**
+     * create BatchCompletableTask of single requests, requests of the same entity are grouped together
+     *
+     * @param <T>   the type parameter
+     * @param tasks the single requests
+     * @return the batch completable task
+     */
+    static <T> BatchCompletableTask<T> of(List<CompletableTask<T>> tasks) {
+        return new CompletableTaskList<>(tasks);
+    }
+
+    /**
+     * BatchCompletableTask backed by single requests
+     *
+     * @param <T> the type parameter
+     */
+    class CompletableTaskList<T> implements BatchCompletableTask<T> {
+        private final List<T> tasks;
+        private final List<List<CompletableTask<T>>> groups;
+
+        private CompletableTaskList(List<CompletableTask<T>> completableTasks) {
+            Map<T, List<CompletableTask<T>>> grouped = new LinkedHashMap<>();
+            for (CompletableTask<T> completableTask : completableTasks) {
+                grouped.computeIfAbsent(completableTask.getTask(), t -> new ArrayList<>()).add(completableTask);
+            }
+            this.tasks = new ArrayList<>(grouped.keySet());
+            this.groups = new ArrayList<>(grouped.values());
+        }
+
+        @Override
+        public int size() {
+            return tasks.size();
+        }
+
+        @Override
+        public @Nonnull T getTask(int index) {
+            return tasks.get(index);
+        }
+
+        @Override
+        public int getCount(int index) {
+            return groups.get(index).size();
+        }
+
+        @Override
+        public int complete(int index, int n, boolean succeed) {
+            int completed = 0;
+            for (CompletableTask<T> completableTask : groups.get(index)) {
+                if (completed >= n) {
+                    break;
+                }
+                if (completableTask.complete(succeed)) {
+                    completed++;
+                }
+            }
+            return completed;
+        }
+    }
+}
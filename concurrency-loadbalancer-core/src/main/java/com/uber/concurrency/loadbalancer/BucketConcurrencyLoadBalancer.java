@@ -0,0 +1,375 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyDelegator;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * BucketConcurrencyLoadBalancer distribute interaction to the least concurrent entity.
+ *
+ * <P>
+ * BucketConcurrencyLoadBalancer keeps entities in buckets indexed by concurrency level, concurrency / weight,
+ * with a pointer to the least non-empty level. Since acquire and complete move an entity by one level,
+ * both locating the least concurrent entity and updating concurrency take time complexity O(1),
+ * comparing with O(logn) of {@link HeapConcurrencyLoadBalancer}.
+ * Entity is appended to the tail of bucket when it moves, so entities with the same concurrency take turns.
+ * </p>
+ *
+ * <P>
+ * When sub strategy is specified or entities have different weights, ties inside the least bucket are resolved
+ * by comparing entities of the bucket, time complexity O(b), b indicate bucket size.
+ * Levels above {@value #OVERFLOW_LEVEL} share one bucket, which is searched linearly when it is the least one.
+ * </P>
+ * Example:
+ * <pre>
+ * {@code
+ * ArrayList<String> urls = new ArrayList<String>() {{add("http://192.168.0.1:80"); add("http://192.168.0.2:80");}};
+ *
+ * BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(urls)
+ *                 .build();
+ * CompletableTask<String> url = loadBalancer.next();
+ * boolean succeed = doPost(url.getTask()); //make rest call with url.getTask()
+ * url.complete(succeed);                   //finish the task
+ * }
+ * </pre>
+ */
+public final class BucketConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private static final int OVERFLOW_LEVEL = 1024;
+    private static final int SATURATED_LEVEL = OVERFLOW_LEVEL + 1;
+    private final BucketTaskConcurrency[] taskConcurrencies;
+    private final boolean compareTies;
+    //park based lock by default instead of monitor, so that waiting virtual threads don't pin their carriers
+    private final Lock lock;
+    private BucketTaskConcurrency[] heads;
+    private BucketTaskConcurrency[] tails;
+    private int minLevel;
+
+    /**
+     * Instantiates a new BucketConcurrencyLoadBalancer
+     *
+     * @param tasks                  the tasks
+     * @param taskConcurrencyFactory the task concurrency factory
+     * @param compareTies            true if entities of the same level are compared
+     * @param listeners              the listeners
+     * @param ticker                 the ticker
+     */
+    BucketConcurrencyLoadBalancer(Collection<T> tasks,
+                                  Function<T, TaskConcurrency<T>> taskConcurrencyFactory,
+                                  boolean compareTies,
+                                  List<CompletableTask.Listener<T>> listeners,
+                                  Ticker ticker) {
+        this(tasks, taskConcurrencyFactory, compareTies, new ReentrantLock(), listeners, ticker);
+    }
+
+    /**
+     * Instantiates a new BucketConcurrencyLoadBalancer with the bucket lock
+     *
+     * @param tasks                  the tasks
+     * @param taskConcurrencyFactory the task concurrency factory
+     * @param compareTies            true if entities of the same level are compared
+     * @param lock                   the bucket lock
+     * @param listeners              the listeners
+     * @param ticker                 the ticker
+     */
+    @SuppressWarnings("unchecked")
+    BucketConcurrencyLoadBalancer(Collection<T> tasks,
+                                  Function<T, TaskConcurrency<T>> taskConcurrencyFactory,
+                                  boolean compareTies,
+                                  Lock lock,
+                                  List<CompletableTask.Listener<T>> listeners,
+                                  Ticker ticker) {
+        super(tasks, listeners, ticker);
+        this.lock = lock;
+        this.heads = new BucketConcurrencyLoadBalancer.BucketTaskConcurrency[16];
+        this.tails = new BucketConcurrencyLoadBalancer.BucketTaskConcurrency[16];
+        this.taskConcurrencies = new BucketConcurrencyLoadBalancer.BucketTaskConcurrency[tasks.size()];
+        boolean weighted = false;
+        int i = 0;
+        for (T task : tasks) {
+            BucketTaskConcurrency taskConcurrency = new BucketTaskConcurrency(taskConcurrencyFactory.apply(task));
+            weighted |= taskConcurrency.getWeight() != 1;
+            taskConcurrencies[i++] = taskConcurrency;
+            link(taskConcurrency, levelOf(taskConcurrency));
+        }
+        this.compareTies = compareTies || weighted;
+        this.minLevel = 0;
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        if (taskConcurrencies.length == 0) {
+            return null;
+        }
+
+        /**
+         * on completion of failed requests, instead of reducing task concurrency right away
+         * we reduce concurrency with delay to avoid more number of requests assigned to failed task
+         * syncState() will check scheduledCounter to see if there is matured count can be reduced
+         */
+        taskConcurrencies[ThreadLocalRandom.current().nextInt(taskConcurrencies.length)].syncState();
+
+        while (true) {
+            BucketTaskConcurrency taskConcurrency = peek();
+            if (Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
+                return null; // all tasks reached concurrency limits
+            }
+            //saturated task is kept apart from buckets, so the least one saturated means all saturated,
+            //unless the task was saturated by other thread which hasn't relocated it yet
+            if (taskConcurrency.isSaturated()) {
+                relocate(taskConcurrency, false);
+                if (peek().isSaturated()) {
+                    throw new SaturationException("all tasks reached max concurrency");
+                }
+                continue;
+            }
+            //lost race to other thread when the task reached max concurrency, peek again
+            CompletableTask<T> completableTask = tryAcquire(taskConcurrency);
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+    }
+
+    @Override
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        return Arrays.asList(taskConcurrencies);
+    }
+
+    @VisibleForTesting
+    TaskConcurrency<T> get(T t) {
+        for (TaskConcurrency<T> tc : taskConcurrencies) {
+            if (tc.getTask() == t) {
+                return tc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the least concurrent entity
+     *
+     * @return the entity, saturated entity if all entities are saturated
+     */
+    private BucketTaskConcurrency peek() {
+        lock.lock();
+        try {
+            while (heads[minLevel] == null) {
+                minLevel++;
+            }
+            BucketTaskConcurrency least = heads[minLevel];
+            if (compareTies || minLevel == OVERFLOW_LEVEL) {
+                for (BucketTaskConcurrency tc = least.next; tc != null; tc = tc.next) {
+                    if (tc.compareTo(least) < 0) {
+                        least = tc;
+                    }
+                }
+            }
+            return least;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * move entity to the tail of bucket of its current level
+     *
+     * @param taskConcurrency the entity
+     * @param rotate          true to move entity to the tail even if its level is unchanged
+     */
+    private void relocate(BucketTaskConcurrency taskConcurrency, boolean rotate) {
+        lock.lock();
+        try {
+            int level = levelOf(taskConcurrency);
+            if (level == taskConcurrency.level && (!rotate || taskConcurrency.next == null)) {
+                return;
+            }
+            unlink(taskConcurrency);
+            link(taskConcurrency, level);
+            if (level < minLevel) {
+                minLevel = level;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int levelOf(TaskConcurrency<?> taskConcurrency) {
+        if (taskConcurrency.isSaturated()) {
+            return SATURATED_LEVEL;
+        }
+        long level = Integer.toUnsignedLong(taskConcurrency.getConcurrency()) / taskConcurrency.getWeight();
+        return (int) Math.min(level, OVERFLOW_LEVEL);
+    }
+
+    private void link(BucketTaskConcurrency taskConcurrency, int level) {
+        if (level >= heads.length) {
+            int length = Math.min(Math.max(heads.length * 2, level + 1), SATURATED_LEVEL + 1);
+            heads = Arrays.copyOf(heads, length);
+            tails = Arrays.copyOf(tails, length);
+        }
+        taskConcurrency.level = level;
+        taskConcurrency.prev = tails[level];
+        taskConcurrency.next = null;
+        if (tails[level] == null) {
+            heads[level] = taskConcurrency;
+        } else {
+            tails[level].next = taskConcurrency;
+        }
+        tails[level] = taskConcurrency;
+    }
+
+    private void unlink(BucketTaskConcurrency taskConcurrency) {
+        int level = taskConcurrency.level;
+        if (taskConcurrency.prev == null) {
+            heads[level] = taskConcurrency.next;
+        } else {
+            taskConcurrency.prev.next = taskConcurrency.next;
+        }
+        if (taskConcurrency.next == null) {
+            tails[level] = taskConcurrency.prev;
+        } else {
+            taskConcurrency.next.prev = taskConcurrency.prev;
+        }
+        taskConcurrency.prev = null;
+        taskConcurrency.next = null;
+    }
+
+    /**
+     * Bucket node of entity, relocated whenever state of task changes
+     */
+    @SuppressFBWarnings(
+            value="EQ_COMPARETO_USE_OBJECT_EQUALS",
+            justification="Note: this class has a natural ordering that is inconsistent with equals.")
+    private class BucketTaskConcurrency extends TaskConcurrencyDelegator<T> {
+        private BucketTaskConcurrency prev;
+        private BucketTaskConcurrency next;
+        private int level;
+
+        BucketTaskConcurrency(TaskConcurrency<T> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void acquire() {
+            super.acquire();
+            relocate(this, true);
+        }
+
+        @Override
+        public void acquire(int n) {
+            super.acquire(n);
+            relocate(this, true);
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            if (super.tryAcquire()) {
+                relocate(this, true);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryAcquire(int n) {
+            if (super.tryAcquire(n)) {
+                relocate(this, true);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void complete(boolean succeed, long latencyNanos) {
+            super.complete(succeed, latencyNanos);
+            relocate(this, true);
+        }
+
+        @Override
+        public void complete(int n, long latencyNanos) {
+            super.complete(n, latencyNanos);
+            relocate(this, true);
+        }
+
+        @Override
+        public void complete(int n, boolean succeed, long latencyNanos) {
+            super.complete(n, succeed, latencyNanos);
+            relocate(this, true);
+        }
+
+        @Override
+        public void release(int n) {
+            super.release(n);
+            relocate(this, true);
+        }
+
+        @Override
+        public void setMaxConcurrency(int maxConcurrency) {
+            super.setMaxConcurrency(maxConcurrency);
+            relocate(this, true);
+        }
+
+        @Override
+        public void syncState() {
+            //sync of random entity on selection keeps its turn in bucket
+            super.syncState();
+            relocate(this, false);
+        }
+    }
+
+    /**
+     * New builder of BucketConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     * @return the bucket concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of BucketConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public final static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private Supplier<Lock> lockFactory = ReentrantLock::new;
+
+        /**
+         * Factory of bucket lock, ReentrantLock by default, e.g. to compare with monitor based lock in benchmark
+         *
+         * @param lockFactory the factory of lock
+         * @return the builder
+         */
+        Builder<T> withLockFactory(Supplier<Lock> lockFactory) {
+            this.lockFactory = Objects.requireNonNull(lockFactory);
+            return this;
+        }
+
+        /**
+         * Build a BucketConcurrencyLoadBalancer
+         *
+         * @return the bucket concurrency load balancer
+         */
+        public BucketConcurrencyLoadBalancer<T> build() {
+            TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+            return bind(new BucketConcurrencyLoadBalancer<>(tasks, t -> newTaskConcurrency(taskConcurrencyBuilder, t),
+                    subStrategy != SubStrategy.Absent, lockFactory.get(), listeners,
+                    scheduledCounterBuilder.getTicker()));
+        }
+    }
+}
@@ -37,6 +37,18 @@ public interface CompletableTask<T> {
         return complete(true);
     }
 
+    /**
+     * invoked by caller to give the entity back without outcome, e.g. request cancelled or never sent to the entity
+     * concurrency is released, but the request is neither counted as succeed nor failed,
+     * and its latency is not observed by loadBalancer
+     * implementations without outcome-free release fall back to complete(true)
+     *
+     * @return the boolean indicates if release succeed, false if the task was completed or released already
+     */
+    default boolean release() {
+        return complete(true);
+    }
+
     /**
      * Listener can be attached to {@link LeastConcurrencyLoadBalancer}
      * and get notified when {@link CompletableTask} create/complete events happened
@@ -60,6 +72,42 @@ public interface CompletableTask<T> {
          * @param succeed the succeed
          */
         void onComplete(T t, boolean succeed);
+
+        /**
+         * create event of n requests selected to the same entity at once,
+         * listeners aggregating events override it to save n times of notification
+         *
+         * @param t the entity being selected
+         * @param n the number of requests
+         */
+        default void onCreate(T t, int n) {
+            for (int i = 0; i < n; ++i) {
+                onCreate(t);
+            }
+        }
+
+        /**
+         * complete event of n requests of the same entity and result completed at once,
+         * listeners aggregating events override it to save n times of notification
+         *
+         * @param t       the t
+         * @param succeed the succeed
+         * @param n       the number of requests
+         */
+        default void onComplete(T t, boolean succeed, int n) {
+            for (int i = 0; i < n; ++i) {
+                onComplete(t, succeed);
+            }
+        }
+
+        /**
+         * release event happens when caller gave the entity back without outcome, see {@link CompletableTask#release()},
+         * it takes place of complete event of the request
+         *
+         * @param t the entity being released
+         */
+        default void onRelease(T t) {
+        }
     }
 
     /**
@@ -0,0 +1,293 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.uber.concurrency.loadbalancer.internal.CountingTaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.utils.Murmur3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * ConsistentHashConcurrencyLoadBalancer distribute interaction by key to entities on a hash ring with bounded loads.
+ *
+ * <P>
+ * Each entity is placed on the hash ring as multiple virtual nodes, number of virtual nodes scales with capacity weight.
+ * A key is mapped to the first entity clockwise from hash of the key, so the same key sticks to the same entity
+ * as long as the entity is not overloaded. When concurrency of the entity reached (1 + balanceFactor) times of
+ * average concurrency, the key spills to the next entity on the ring.
+ * As a result max concurrency of any entity is bounded by (1 + balanceFactor) * average,
+ * smaller balanceFactor gives better balance, bigger balanceFactor gives better key affinity.
+ * </p>
+ *
+ * <p>
+ * Virtual nodes are placed by murmur3 hash of task.toString(), and keys are hashed by murmur3 of key.toString() as well,
+ * so loadbalancers in different processes build the same ring, and map the same key to the same position on the ring,
+ * when toString() of entities and keys are the same.
+ * Same as {@link ArrayConcurrencyLoadBalancer}, multiple loadbalancers built by the same builder share concurrency state.
+ * </p>
+ * Example:
+ * <pre>
+ * {@code
+ * ArrayList<String> entries = new ArrayList<String>() {{add("cache1"); add("cache2"); add("cache3");}};
+ *
+ * ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(entries)
+ *                 .withBalanceFactor(0.25)
+ *                 .build();
+ * CompletableTask<String> cache = loadBalancer.next(userId);
+ * }
+ * </pre>
+ */
+public final class ConsistentHashConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private final ImmutableList<TaskConcurrency<T>> taskConcurrencies;
+    private final AtomicLong totalConcurrency;
+    private final long totalWeight;
+    private final double balanceFactor;
+    private final long[] ring;
+    private final int[] ringTasks;
+
+    /**
+     * Instantiates a ConsistentHashConcurrencyLoadBalancer
+     *
+     * @param tasks              the entity list
+     * @param taskConcurrencyMap the concurrency state storage
+     * @param totalConcurrency   the total concurrency of entities in storage
+     * @param virtualNodes       number of virtual nodes per unit of weight
+     * @param balanceFactor      the tolerance of concurrency above average
+     * @param listeners          the listeners
+     * @param ticker             the ticker
+     */
+    ConsistentHashConcurrencyLoadBalancer(Collection<T> tasks,
+                                          Function<T, TaskConcurrency<T>> taskConcurrencyMap,
+                                          AtomicLong totalConcurrency,
+                                          int virtualNodes,
+                                          double balanceFactor,
+                                          List<CompletableTask.Listener<T>> listeners,
+                                          Ticker ticker) {
+        super(tasks, listeners, ticker);
+        this.totalConcurrency = totalConcurrency;
+        this.balanceFactor = balanceFactor;
+        ImmutableList.Builder<TaskConcurrency<T>> builder = ImmutableList.builder();
+        List<VirtualNode> virtualNodeList = new ArrayList<>();
+        long weight = 0;
+        int index = 0;
+        for (T task : tasks) {
+            TaskConcurrency<T> taskConcurrency = taskConcurrencyMap.apply(task);
+            builder.add(taskConcurrency);
+            weight += taskConcurrency.getWeight();
+            for (int i = 0; i < virtualNodes * taskConcurrency.getWeight(); ++i) {
+                long hash = Murmur3.hash64(task + "-" + i);
+                virtualNodeList.add(new VirtualNode(hash, index));
+            }
+            index++;
+        }
+        virtualNodeList.sort((a, b) -> Long.compare(a.hash, b.hash));
+        this.taskConcurrencies = builder.build();
+        this.totalWeight = weight;
+        this.ring = new long[virtualNodeList.size()];
+        this.ringTasks = new int[virtualNodeList.size()];
+        for (int i = 0; i < ring.length; ++i) {
+            ring[i] = virtualNodeList.get(i).hash;
+            ringTasks[i] = virtualNodeList.get(i).index;
+        }
+    }
+
+    /**
+     * get an entity to interact with by random key
+     *
+     * @return the completable task
+     */
+    @Override
+    boolean isBackedBy(TaskConcurrency<T> state) {
+        return isBackedBy(taskConcurrencies, state);
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        return select(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * get an entity to interact with by key, the same key is mapped to the same entity unless it's overloaded.
+     * Key is hashed by key.toString() with the same hash function as virtual nodes.
+     *
+     * @param key the key
+     * @return the completable task, null if there is no tasks
+     * @throws SaturationException if every entity reached its max concurrency
+     */
+    public CompletableTask<T> next(Object key) {
+        return select(Murmur3.hash64(key.toString()));
+    }
+
+    /**
+     * walk the ring clockwise from the position
+     */
+    private CompletableTask<T> select(long position) {
+        if (ring.length == 0) {
+            return null;
+        }
+        int start = Arrays.binarySearch(ring, position);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        //entities visited by the walk, bits of the first 64 entities are kept in a long without allocation
+        long visited = 0;
+        int size = taskConcurrencies.size();
+        long[] visitedOverflow = size > Long.SIZE ? new long[(size - 1) >>> 6] : null;
+        int remaining = size;
+        boolean saturated = false;
+        TaskConcurrency<T> fallback = null;
+        for (int i = 0; i < ring.length && remaining > 0; ++i) {
+            int index = ringTasks[(start + i) % ring.length];
+            //shift distance of long is taken modulo 64
+            long bit = 1L << index;
+            if (index < Long.SIZE) {
+                if ((visited & bit) != 0) {
+                    continue;
+                }
+                visited |= bit;
+            } else {
+                int word = (index >>> 6) - 1;
+                if ((visitedOverflow[word] & bit) != 0) {
+                    continue;
+                }
+                visitedOverflow[word] |= bit;
+            }
+            remaining--;
+            TaskConcurrency<T> taskConcurrency = taskConcurrencies.get(index);
+            taskConcurrency.syncState();
+            if (taskConcurrency.isSaturated()) {
+                saturated = true;
+                continue;
+            }
+            if (Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
+                continue;
+            }
+            if (fallback == null) {
+                fallback = taskConcurrency;
+            }
+            if (isUnderBound(taskConcurrency)) {
+                CompletableTask<T> completableTask = tryAcquire(taskConcurrency);
+                if (completableTask != null) {
+                    return completableTask;
+                }
+                //lost race to other thread when the task reached max concurrency
+                saturated = true;
+            }
+        }
+        //concurrency changed concurrently, fallback to the first available entity clockwise
+        if (fallback != null) {
+            CompletableTask<T> completableTask = tryAcquire(fallback);
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+        if (saturated) {
+            throw new SaturationException("all tasks reached max concurrency");
+        }
+        return null; // all tasks reached concurrency limits
+    }
+
+    /**
+     * check if concurrency of the task is below ceil((1 + balanceFactor) * (totalConcurrency + 1) * weight / totalWeight)
+     */
+    private boolean isUnderBound(TaskConcurrency<T> taskConcurrency) {
+        long total = Math.max(totalConcurrency.get(), 0);
+        double bound = Math.ceil((1 + balanceFactor) * (total + 1) * taskConcurrency.getWeight() / totalWeight);
+        return Integer.toUnsignedLong(taskConcurrency.getConcurrency()) < bound;
+    }
+
+    private static class VirtualNode {
+        private final long hash;
+        private final int index;
+
+        VirtualNode(long hash, int index) {
+            this.hash = hash;
+            this.index = index;
+        }
+    }
+
+    /**
+     * New builder of ConsistentHashConcurrencyLoadBalancer.
+     *
+     * @param <T> the type parameter
+     * @return the consistent hash concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of ConsistentHashConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private final AtomicLong totalConcurrency = new AtomicLong();
+        private volatile Function<T, TaskConcurrency<T>> taskConcurrencyMap = null;
+        private int virtualNodes = 100;
+        private double balanceFactor = 0.25;
+
+        Function<T, TaskConcurrency<T>> getTaskConcurrencyMap() {
+            return taskConcurrencyMap;
+        }
+
+        /**
+         * Number of virtual nodes on the hash ring per unit of weight,
+         * more virtual nodes distributes keys more evenly with higher memory cost
+         *
+         * @param virtualNodes the number of virtual nodes, must be positive
+         * @return the builder
+         */
+        public Builder<T> withVirtualNodes(int virtualNodes) {
+            if (virtualNodes <= 0) {
+                throw new IllegalArgumentException("virtual nodes must be positive");
+            }
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * Tolerance of concurrency above average before a key spills to the next entity,
+         * an entity is considered overloaded when its concurrency reached (1 + balanceFactor) * average concurrency
+         *
+         * @param balanceFactor the balance factor, must be positive
+         * @return the builder
+         */
+        public Builder<T> withBalanceFactor(double balanceFactor) {
+            if (!(balanceFactor > 0)) {
+                throw new IllegalArgumentException("balance factor must be positive");
+            }
+            this.balanceFactor = balanceFactor;
+            return this;
+        }
+
+        /**
+         * Build consistent hash concurrency load balancer.
+         *
+         * @return the consistent hash concurrency load balancer
+         */
+        public ConsistentHashConcurrencyLoadBalancer<T> build() {
+            if (taskConcurrencyMap == null) {
+                synchronized (this) {
+                    if (taskConcurrencyMap == null) {
+                        TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+                        taskConcurrencyMap = new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(
+                                t -> newTaskConcurrency(taskConcurrencyBuilder, t, tc -> new CountingTaskConcurrency<>(tc, totalConcurrency)));
+                    }
+                }
+            }
+            return bind(new ConsistentHashConcurrencyLoadBalancer<>(
+                    tasks, taskConcurrencyMap, totalConcurrency, virtualNodes, balanceFactor, listeners,
+                    scheduledCounterBuilder.getTicker()));
+        }
+    }
+}
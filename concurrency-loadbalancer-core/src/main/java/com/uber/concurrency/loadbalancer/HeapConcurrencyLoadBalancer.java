@@ -5,13 +5,20 @@ import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyDelegator;
-import com.uber.concurrency.loadbalancer.timedcounter.ScheduledCounter;
 import com.uber.concurrency.loadbalancer.utils.HashIndexedPriorityQueue;
 
-import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * HeapConcurrencyLoadBalancer distribute interaction to the least concurrent entity.
@@ -27,6 +34,18 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Advantage of HeapConcurrencyLoadBalancer is to achieve high accuracy with optimal time complexity
  * but multiple instances of HeapConcurrencyLoadBalancer can't share concurrency state.
  * </P>
+ *
+ * <P>
+ * By default every update takes the heap lock and sifts the entity. With flat combining enabled,
+ * updates publish the entity to a pending queue, whichever thread wins the combiner role re-sifts all
+ * pending entities in one pass, each entity once, so burst of completions doesn't hand off lock per update.
+ * </P>
+ *
+ * <P>
+ * Entities can be added or removed at runtime with {@link #addTask(Object)} and {@link #removeTask(Object)},
+ * other entities keep their state, removed entity stops receiving requests and is tracked until
+ * its outstanding requests complete.
+ * </P>
  * Example:
  * <pre>
  * {@code
@@ -56,13 +75,70 @@ public final class HeapConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoa
 
     @Override
     public CompletableTask<T> next() {
-        TaskConcurrency<T> taskConcurrency = taskConcurrencyQueue.peek();
-        if (taskConcurrency == null || Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
-            return null; // no tasks or all tasks reached concurrency limits
+        while (true) {
+            TaskConcurrency<T> taskConcurrency = taskConcurrencyQueue.peek();
+            if (taskConcurrency == null || Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
+                return null; // no tasks or all tasks reached concurrency limits
+            }
+            //saturated task is ordered after unsaturated task, so the least one saturated means all saturated,
+            //unless the head was saturated by other thread and not re-sifted yet in flat-combining
+            if (taskConcurrency.isSaturated()) {
+                if (taskConcurrencyQueue.resift(taskConcurrency) != taskConcurrency) {
+                    continue;
+                }
+                throw new SaturationException("all tasks reached max concurrency");
+            }
+            //lost race to other thread when the task reached max concurrency, peek again
+            CompletableTask<T> completableTask = tryAcquire(taskConcurrency);
+            if (completableTask != null) {
+                return completableTask;
+            }
         }
-        return new ConcurrentTaskImpl(ticker.read(), taskConcurrency);
     };
 
+    /**
+     * Add entity at runtime, concurrency state of other entities is kept.
+     * Entity removed but still draining is added back with its concurrency state, and its drain future is cancelled.
+     *
+     * @param task the task
+     * @return true if the entity is added, false if it exists already
+     */
+    public boolean addTask(T task) {
+        Objects.requireNonNull(task);
+        if (taskConcurrencyQueue.add(task, undrain(task))) {
+            metrics.addTask(task);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove entity at runtime, the entity stops receiving requests immediately,
+     * and is tracked until its outstanding requests, including concurrency sustained by failed requests, complete.
+     *
+     * @param task the task
+     * @return the future completed when outstanding requests of the entity drained,
+     * completed already if the entity doesn't exist
+     */
+    public CompletableFuture<Void> removeTask(T task) {
+        TaskConcurrency<T> taskConcurrency = taskConcurrencyQueue.remove(task);
+        if (taskConcurrency == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        metrics.removeTask(task);
+        return drain(taskConcurrency);
+    }
+
+    @Override
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        return taskConcurrencyQueue.getTaskConcurrencies();
+    }
+
+    @Override
+    boolean isSelectable(TaskConcurrency<T> taskConcurrency) {
+        return !taskConcurrencyQueue.isRemoved(taskConcurrency);
+    }
+
     @VisibleForTesting
     TaskConcurrencyQueue<T> getTaskConcurrencyQueue() {
       return taskConcurrencyQueue;
@@ -85,29 +161,68 @@ public final class HeapConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoa
      * @param <T> the type parameter
      */
     protected static class TaskConcurrencyQueue<T> {
-        private final int size;
         private final ImmutableList<T> tasks;
-        private final ImmutableList<TaskConcurrency<T>> taskConcurrences;
+        private final Function<T, TaskConcurrency<T>> taskConcurrencyFactory;
+        private volatile ImmutableList<TaskConcurrency<T>> taskConcurrences;
         private final AtomicInteger iter = new AtomicInteger();
         private final HashIndexedPriorityQueue<TaskConcurrency<T>> queue;
+        private final boolean flatCombining;
+        private final ConcurrentLinkedQueue<HeapTaskConcurrency> pending = new ConcurrentLinkedQueue<>();
+        //combiner role, taken by tryLock on update path, and by lock on add/remove, see lockExclusively()
+        private final ReentrantLock combiner = new ReentrantLock();
+        //park based lock by default instead of monitor, so that waiting virtual threads don't pin their carriers
+        private final Lock lock;
 
         /**
          * Instantiates a TaskConcurrencyQueue with sustain period of failed task
          *
-         * @param scheduledCounterBuilder the timeout
+         * @param tasks                  the tasks
+         * @param taskConcurrencyFactory the task concurrency factory
          */
-        private TaskConcurrencyQueue(Collection<T> tasks, TaskConcurrency.Builder taskConcurrencyBuilder , ScheduledCounter.Builder scheduledCounterBuilder) {
+        TaskConcurrencyQueue(Collection<T> tasks, Function<T, TaskConcurrency<T>> taskConcurrencyFactory) {
+            this(tasks, taskConcurrencyFactory, false);
+        }
+
+        /**
+         * Instantiates a TaskConcurrencyQueue
+         *
+         * @param tasks                  the tasks
+         * @param taskConcurrencyFactory the task concurrency factory
+         * @param flatCombining          true to re-sift updated entities in batch by a combiner thread
+         */
+        TaskConcurrencyQueue(Collection<T> tasks,
+                             Function<T, TaskConcurrency<T>> taskConcurrencyFactory,
+                             boolean flatCombining) {
+            this(tasks, taskConcurrencyFactory, flatCombining, new ReentrantLock());
+        }
+
+        /**
+         * Instantiates a TaskConcurrencyQueue with the heap lock
+         *
+         * @param tasks                  the tasks
+         * @param taskConcurrencyFactory the task concurrency factory
+         * @param flatCombining          true to re-sift updated entities in batch by a combiner thread
+         * @param lock                   the heap lock, must be reentrant
+         */
+        TaskConcurrencyQueue(Collection<T> tasks,
+                             Function<T, TaskConcurrency<T>> taskConcurrencyFactory,
+                             boolean flatCombining,
+                             Lock lock) {
+            this.lock = lock;
             this.queue = new HashIndexedPriorityQueue<>();
+            this.flatCombining = flatCombining;
+            this.taskConcurrencyFactory = taskConcurrencyFactory;
             this.tasks = ImmutableList.copyOf(tasks);
             for (T t : tasks) {
-                TaskConcurrency<T> task = new HeapTaskConcurrency(new ScheduledTaskConcurrency(taskConcurrencyBuilder.build(t), scheduledCounterBuilder));
+                TaskConcurrency<T> task = new HeapTaskConcurrency(taskConcurrencyFactory.apply(t));
                 queue.offer(task);
             }
             this.taskConcurrences = ImmutableList.copyOf(queue);
-            this.size = taskConcurrences.size();
         }
 
         public TaskConcurrency<T> peek() {
+            List<TaskConcurrency<T>> current = taskConcurrences;
+            int size = current.size();
             if (size == 0) {
                 return null;
             }
@@ -119,12 +234,21 @@ public final class HeapConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoa
              */
             int index = iter.get();
             if (iter.compareAndSet(index, (index+1) % size)) {
-                taskConcurrences.get(index).syncState();
+                current.get(index % size).syncState();
             }
 
             return queue.peek();
         }
 
+        /**
+         * Gets concurrency state of entities in the queue
+         *
+         * @return the entities
+         */
+        List<TaskConcurrency<T>> getTaskConcurrencies() {
+            return taskConcurrences;
+        }
+
         @VisibleForTesting
         TaskConcurrency<T> get(T t) {
             for (TaskConcurrency<T> tc : queue) {
@@ -135,34 +259,270 @@ public final class HeapConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoa
             return null;
         }
 
-        private synchronized void syncUpdate(TaskConcurrency<T> tc, Runnable update) {
+        /**
+         * Add entity to the queue
+         *
+         * @param t               the task
+         * @param taskConcurrency concurrency state removed from this queue before, null to build a new one
+         * @return true if the entity is added, false if it exists already
+         */
+        boolean add(T t, TaskConcurrency<T> taskConcurrency) {
+            lockExclusively();
+            try {
+                for (TaskConcurrency<T> tc : taskConcurrences) {
+                    if (tc.getTask().equals(t)) {
+                        return false;
+                    }
+                }
+                HeapTaskConcurrency task = taskConcurrency != null
+                        ? (HeapTaskConcurrency) taskConcurrency
+                        : new HeapTaskConcurrency(taskConcurrencyFactory.apply(t));
+                task.removed = false;
+                queue.offer(task);
+                taskConcurrences = ImmutableList.<TaskConcurrency<T>>builder()
+                        .addAll(taskConcurrences).add(task).build();
+                return true;
+            } finally {
+                unlockExclusively();
+            }
+        }
+
+        /**
+         * Whether the entity was removed from the queue
+         *
+         * @param taskConcurrency concurrency state of the entity
+         * @return true if the entity was removed
+         */
+        boolean isRemoved(TaskConcurrency<T> taskConcurrency) {
+            return ((HeapTaskConcurrency) taskConcurrency).removed;
+        }
+
+        /**
+         * Remove entity from the queue, later updates of the entity don't touch the queue
+         *
+         * @param t the task
+         * @return concurrency state of the entity, null if the entity doesn't exist
+         */
+        TaskConcurrency<T> remove(T t) {
+            lockExclusively();
+            try {
+                for (TaskConcurrency<T> tc : taskConcurrences) {
+                    if (tc.getTask().equals(t)) {
+                        HeapTaskConcurrency task = (HeapTaskConcurrency) tc;
+                        task.removed = true;
+                        queue.remove(task);
+                        ImmutableList.Builder<TaskConcurrency<T>> builder = ImmutableList.builder();
+                        for (TaskConcurrency<T> other : taskConcurrences) {
+                            if (other != tc) {
+                                builder.add(other);
+                            }
+                        }
+                        taskConcurrences = builder.build();
+                        return task;
+                    }
+                }
+                return null;
+            } finally {
+                unlockExclusively();
+            }
+        }
+
+        @VisibleForTesting
+        ReentrantLock getCombiner() {
+            return combiner;
+        }
+
+        /**
+         * lock queue exclusively of both update path.
+         * Combiner role is taken first, parking until the running combiner pass finishes,
+         * so that no thread waits for the role while holding the heap lock
+         */
+        private void lockExclusively() {
+            if (flatCombining) {
+                combiner.lock();
+            }
+            lock.lock();
+        }
+
+        /**
+         * unlock queue, then re-sift entities published while combiner role was held
+         */
+        private void unlockExclusively() {
+            lock.unlock();
+            if (flatCombining) {
+                combiner.unlock();
+                combine();
+            }
+        }
+
+        private void update(HeapTaskConcurrency tc, Runnable update) {
+            if (!flatCombining) {
+                syncUpdate(tc, update);
+                return;
+            }
             update.run();
-            queue.offer(tc);
+            publish(tc);
+        }
+
+        private boolean tryUpdate(HeapTaskConcurrency tc, BooleanSupplier update) {
+            if (!flatCombining) {
+                return syncTryUpdate(tc, update);
+            }
+            boolean updated = update.getAsBoolean();
+            if (updated) {
+                publish(tc);
+            }
+            return updated;
+        }
+
+        /**
+         * publish updated entity to pending queue, an entity is queued at most once until it's re-sifted
+         */
+        private void publish(HeapTaskConcurrency tc) {
+            if (tc.pending.compareAndSet(false, true)) {
+                pending.offer(tc);
+            }
+            combine();
+        }
+
+        /**
+         * re-sift all pending entities by whichever thread wins the combiner role.
+         * entity published while other thread is combining is either picked up by the combiner,
+         * or found by its publisher after the combiner released the role
+         */
+        private void combine() {
+            while (!pending.isEmpty() && combiner.tryLock()) {
+                try {
+                    combinePending();
+                } finally {
+                    combiner.unlock();
+                }
+            }
+        }
+
+        private void combinePending() {
+            HeapTaskConcurrency tc;
+            while ((tc = pending.poll()) != null) {
+                //clear flag before sift, so that update after reading state is published again
+                tc.pending.set(false);
+                if (!tc.removed) {
+                    queue.offer(tc);
+                }
+            }
+        }
+
+        /**
+         * Re-sift saturated head along with pending entities, in flat-combining the head may be saturated by
+         * other thread whose update is not combined yet, while other entities are still below max concurrency.
+         * Combiner role is taken, parking until the running combiner pass finishes.
+         *
+         * @param head the saturated head
+         * @return the head after re-sift, the same head if it's still the least concurrent entity
+         */
+        TaskConcurrency<T> resift(TaskConcurrency<T> head) {
+            if (!flatCombining) {
+                return head;
+            }
+            combiner.lock();
+            try {
+                HeapTaskConcurrency tc = (HeapTaskConcurrency) head;
+                if (!tc.removed) {
+                    queue.offer(tc);
+                }
+                combinePending();
+                return queue.peek();
+            } finally {
+                combiner.unlock();
+                combine();
+            }
+        }
+
+        private void syncUpdate(HeapTaskConcurrency tc, Runnable update) {
+            lock.lock();
+            try {
+                update.run();
+                if (!tc.removed) {
+                    queue.offer(tc);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean syncTryUpdate(HeapTaskConcurrency tc, BooleanSupplier update) {
+            lock.lock();
+            try {
+                boolean updated = update.getAsBoolean();
+                if (updated && !tc.removed) {
+                    queue.offer(tc);
+                }
+                return updated;
+            } finally {
+                lock.unlock();
+            }
         }
 
         private class HeapTaskConcurrency extends TaskConcurrencyDelegator {
+            private final AtomicBoolean pending = new AtomicBoolean();
+            private volatile boolean removed = false;
+
             /**
              * Instantiates a new instance.
              *
              * @param delegate the delegate
              */
-            HeapTaskConcurrency(ScheduledTaskConcurrency<T> delegate) {
+            HeapTaskConcurrency(TaskConcurrency<T> delegate) {
                 super(delegate);
             }
 
             @Override
             public void acquire() {
-                syncUpdate(this, ()->super.acquire());
+                update(this, ()->super.acquire());
+            }
+
+            @Override
+            public void acquire(int n) {
+                update(this, ()->super.acquire(n));
+            }
+
+            @Override
+            public boolean tryAcquire() {
+                return tryUpdate(this, ()->super.tryAcquire());
+            }
+
+            @Override
+            public boolean tryAcquire(int n) {
+                return tryUpdate(this, ()->super.tryAcquire(n));
+            }
+
+            @Override
+            public void complete(boolean succeed, long latencyNanos) {
+                update(this, ()->super.complete(succeed, latencyNanos));
+            }
+
+            @Override
+            public void complete(int n, long latencyNanos) {
+                update(this, ()->super.complete(n, latencyNanos));
             }
 
             @Override
-            public void complete(boolean succeed, Duration latency) {
-                syncUpdate(this, ()->super.complete(succeed, latency));
+            public void complete(int n, boolean succeed, long latencyNanos) {
+                update(this, ()->super.complete(n, succeed, latencyNanos));
+            }
+
+            @Override
+            public void release(int n) {
+                update(this, ()->super.release(n));
+            }
+
+            @Override
+            public void setMaxConcurrency(int maxConcurrency) {
+                update(this, ()->super.setMaxConcurrency(maxConcurrency));
             }
 
             @Override
             public void syncState() {
-                syncUpdate(this, ()->super.syncState());
+                update(this, ()->super.syncState());
             }
         }
     }
@@ -184,6 +544,32 @@ public final class HeapConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoa
      */
     public final static class Builder<T>
             extends AbstractBuilder<T, Builder<T>> {
+        private boolean flatCombining = false;
+        private Supplier<Lock> lockFactory = ReentrantLock::new;
+
+        /**
+         * Re-sift updated entities in batch by a combiner thread instead of taking heap lock per update,
+         * it reduces lock contention when many threads complete requests at the same time
+         *
+         * @param flatCombining true to enable flat combining
+         * @return the builder
+         */
+        public Builder<T> withFlatCombining(boolean flatCombining) {
+            this.flatCombining = flatCombining;
+            return this;
+        }
+
+        /**
+         * Factory of heap lock, ReentrantLock by default, e.g. to compare with monitor based lock in benchmark
+         *
+         * @param lockFactory the factory of reentrant lock
+         * @return the builder
+         */
+        Builder<T> withLockFactory(Supplier<Lock> lockFactory) {
+            this.lockFactory = Objects.requireNonNull(lockFactory);
+            return this;
+        }
+
         /**
          * Build a HeapConcurrencyLoadBalancer
          *
@@ -192,8 +578,10 @@ public final class HeapConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoa
         public HeapConcurrencyLoadBalancer<T> build() {
             TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
 
-            TaskConcurrencyQueue<T> taskConcurrencyRepo = new TaskConcurrencyQueue<>(tasks, taskConcurrencyBuilder, scheduledCounterBuilder);
-            return new HeapConcurrencyLoadBalancer(taskConcurrencyRepo, listeners, scheduledCounterBuilder.getTicker());
+            TaskConcurrencyQueue<T> taskConcurrencyRepo = new TaskConcurrencyQueue<>(tasks,
+                    t -> newTaskConcurrency(taskConcurrencyBuilder, t), flatCombining, lockFactory.get());
+            return bind(new HeapConcurrencyLoadBalancer(
+                    taskConcurrencyRepo, listeners, scheduledCounterBuilder.getTicker()));
         }
     }
 }
@@ -1,5 +1,15 @@
 package com.uber.concurrency.loadbalancer;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
 public interface LeastConcurrencyLoadBalancer<T> extends LoadBalancer<CompletableTask<T>> {
     LeastConcurrencyLoadBalancer NOOP_INSTANCE = new NoopLeastConcurrencyLoadBalancer();
 
@@ -25,6 +35,11 @@ public interface LeastConcurrencyLoadBalancer<T> extends LoadBalancer<Completabl
             public double requestCOV() {
                 return 0;
             }
+
+            @Override
+            public long leakedLeaseCount() {
+                return 0;
+            }
         };
         /**
          * Instantiates a NoopLeastConcurrencyLoadBalancer
@@ -45,6 +60,174 @@ public interface LeastConcurrencyLoadBalancer<T> extends LoadBalancer<Completabl
 
     Metrics getMetrics();
 
+    /**
+     * select an entity with next(), start the async call on it, and complete the request when the call finishes.
+     * Request is completed as failed when the call throws or its future completes exceptionally,
+     * so concurrency of the entity is always released.
+     * Example:
+     * <pre>
+     * {@code
+     * CompletableFuture<Response> response = loadBalancer.execute(url -> httpClient.postAsync(url, request));
+     * }
+     * </pre>
+     *
+     * @param call the async call to the selected entity
+     * @param <R>  the result type
+     * @return the future of call result, completed after the request is completed.
+     * It fails with SaturationException if every entity reached its max concurrency,
+     * or NoSuchElementException if there is no entity
+     */
+    default <R> CompletableFuture<R> execute(Function<? super T, ? extends CompletableFuture<R>> call) {
+        CompletableTask<T> completableTask;
+        try {
+            completableTask = next();
+        } catch (SaturationException e) {
+            CompletableFuture<R> saturated = new CompletableFuture<>();
+            saturated.completeExceptionally(e);
+            return saturated;
+        }
+        if (completableTask == null) {
+            CompletableFuture<R> empty = new CompletableFuture<>();
+            empty.completeExceptionally(new NoSuchElementException("no entity to select"));
+            return empty;
+        }
+        CompletableFuture<R> future;
+        try {
+            future = call.apply(completableTask.getTask());
+            if (future == null) {
+                throw new NullPointerException("call returned null future");
+            }
+        } catch (RuntimeException e) {
+            completableTask.complete(false);
+            CompletableFuture<R> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return future.whenComplete((result, throwable) -> completableTask.complete(throwable == null));
+    }
+
+    /**
+     * acquire an entity asynchronously, the same as next() but the result is delivered by future.
+     * Default implementation doesn't wait, loadBalancers with wait queue override it to wait for concurrency released
+     * when every entity reached its max concurrency.
+     *
+     * @param timeout max duration to wait
+     * @return the future of request, which fails with SaturationException if every entity reached its max concurrency,
+     * or NoSuchElementException if there is no entity
+     */
+    default CompletableFuture<CompletableTask<T>> acquireAsync(Duration timeout) {
+        CompletableFuture<CompletableTask<T>> future = new CompletableFuture<>();
+        try {
+            CompletableTask<T> completableTask = next();
+            if (completableTask == null) {
+                future.completeExceptionally(new NoSuchElementException("no entity to select"));
+            } else {
+                future.complete(completableTask);
+            }
+        } catch (SaturationException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * acquire an entity, block the calling thread until an entity is acquired or timeout.
+     * The calling thread is parked instead of holding a monitor while it waits,
+     * so it's safe to be called from a large number of virtual threads.
+     *
+     * @param timeout max duration to wait
+     * @return the request, null if there is no entity
+     * @throws SaturationException  if every entity reached its max concurrency and the request can't wait
+     * @throws TimeoutException     if no entity is available before timeout
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    default CompletableTask<T> acquire(Duration timeout) throws TimeoutException, InterruptedException {
+        CompletableFuture<CompletableTask<T>> future = acquireAsync(timeout);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            //entity handed to the request right before cancel is released without outcome
+            if (!future.cancel(false) && !future.isCompletedExceptionally()) {
+                future.join().release();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof NoSuchElementException) {
+                return null;
+            }
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * get entities for n requests at once, requests are spread across entities the same as n calls of next().
+     * Default implementation calls next() n times, loadBalancers ordering entities by concurrency override it
+     * to distribute requests in one pass.
+     *
+     * @param n the number of requests, must be positive
+     * @return the batch of requests, which may hold less than n requests when entities reached max concurrency,
+     * null if there is no entity
+     * @throws SaturationException if the load balancer enforces concurrency limits and every entity reached its limit
+     */
+    default BatchCompletableTask<T> nextBatch(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        List<CompletableTask<T>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            CompletableTask<T> completableTask;
+            try {
+                completableTask = next();
+            } catch (SaturationException e) {
+                if (completableTasks.isEmpty()) {
+                    throw e;
+                }
+                break;
+            }
+            if (completableTask == null) {
+                break;
+            }
+            completableTasks.add(completableTask);
+        }
+        return completableTasks.isEmpty() ? null : BatchCompletableTask.of(completableTasks);
+    }
+
+    /**
+     * complete requests of the same result in bulk, e.g. responses of a pipelined connection read at once.
+     * Default implementation completes requests one by one, loadBalancers tracking concurrency override it
+     * to update each entity once for all its requests.
+     *
+     * @param completableTasks the requests returned by next()
+     * @param succeed          indicates if the requests are succeed or failed
+     * @return number of requests completed, requests completed already are not counted
+     */
+    default int completeAll(Collection<? extends CompletableTask<T>> completableTasks, boolean succeed) {
+        int completed = 0;
+        for (CompletableTask<T> completableTask : completableTasks) {
+            if (completableTask.complete(succeed)) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * equivalent to completeAll(completableTasks, true)
+     *
+     * @param completableTasks the requests returned by next()
+     * @return number of requests completed, requests completed already are not counted
+     */
+    default int completeAll(Collection<? extends CompletableTask<T>> completableTasks) {
+        return completeAll(completableTasks, true);
+    }
+
     /**
      * Least concurrency Loadbalancer metrics
      */
@@ -76,5 +259,12 @@ public interface LeastConcurrencyLoadBalancer<T> extends LoadBalancer<Completabl
          * @return the double
          */
         double requestCOV();
+
+        /**
+         * Number of requests not completed before lease timeout, which were completed as failure by loadBalancer.
+         *
+         * @return the long
+         */
+        long leakedLeaseCount();
     }
 }
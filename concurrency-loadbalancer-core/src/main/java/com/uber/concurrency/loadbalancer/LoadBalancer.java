@@ -10,6 +10,7 @@ public interface LoadBalancer<T> {
      * get an entity to interact with.
      *
      * @return the t
+     * @throws SaturationException if the load balancer enforces concurrency limits and every entity reached its limit
      */
     T next();
 }
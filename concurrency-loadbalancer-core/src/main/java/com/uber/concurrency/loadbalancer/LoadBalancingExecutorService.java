@@ -0,0 +1,281 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadBalancingExecutorService dispatches jobs across a group of executors, e.g. one worker pool per NUMA node.
+ * <p>
+ * Executors are entities of a {@link HeapConcurrencyLoadBalancer}, concurrency of an executor is the number of
+ * its running and queued jobs, a job is dispatched to the executor with the least concurrency,
+ * and its request is completed when the job finishes, as failed if the job throws.
+ * With {@link SubStrategy#LeastTime} ties are broken in favour of the executor finishing jobs fastest.
+ * </p>
+ * <p>
+ * Job is rejected with RejectedExecutionException when every executor reached max concurrency,
+ * or the chosen executor rejects it.
+ * Shutting down this executor shuts down the underlying executors.
+ * </p>
+ * Example:
+ * <pre>
+ * {@code
+ * ExecutorService executor = LoadBalancingExecutorService.newBuilder()
+ *                 .withExecutors(Arrays.asList(Executors.newFixedThreadPool(8), Executors.newFixedThreadPool(8)))
+ *                 .withSubStrategy(SubStrategy.LeastTime)
+ *                 .build();
+ * Future<Long> result = executor.submit(() -> compute());
+ * }
+ * </pre>
+ */
+@ThreadSafe
+public final class LoadBalancingExecutorService extends AbstractExecutorService {
+    private final ImmutableList<ExecutorService> executors;
+    private final LeastConcurrencyLoadBalancer<ExecutorService> loadBalancer;
+    private volatile boolean shutdown;
+
+    /**
+     * Instantiates a new LoadBalancingExecutorService
+     *
+     * @param executors    the executors
+     * @param loadBalancer the load balancer with the executors as entities
+     */
+    LoadBalancingExecutorService(Collection<ExecutorService> executors,
+                                 LeastConcurrencyLoadBalancer<ExecutorService> loadBalancer) {
+        this.executors = ImmutableList.copyOf(executors);
+        this.loadBalancer = loadBalancer;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("command is null");
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("executor is shutdown");
+        }
+        CompletableTask<ExecutorService> completableTask;
+        try {
+            completableTask = loadBalancer.next();
+        } catch (SaturationException e) {
+            throw new RejectedExecutionException("all executors reached max concurrency", e);
+        }
+        if (completableTask == null) {
+            throw new RejectedExecutionException("no executor to select");
+        }
+        try {
+            completableTask.getTask().execute(new Job(command, completableTask));
+        } catch (RuntimeException e) {
+            completableTask.complete(false);
+            throw e;
+        }
+    }
+
+    @Override
+    protected <V> RunnableFuture<V> newTaskFor(Runnable runnable, V value) {
+        return new JobFuture<>(runnable, value);
+    }
+
+    @Override
+    protected <V> RunnableFuture<V> newTaskFor(Callable<V> callable) {
+        return new JobFuture<>(callable);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Shutdown underlying executors right away, requests of jobs never started are released without outcome
+     *
+     * @return jobs never started
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> result = new ArrayList<>();
+        for (ExecutorService executor : executors) {
+            for (Runnable runnable : executor.shutdownNow()) {
+                if (runnable instanceof Job) {
+                    Job job = (Job) runnable;
+                    job.completableTask.release();
+                    result.add(job.command);
+                } else {
+                    result.add(runnable);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        if (!shutdown) {
+            return false;
+        }
+        for (ExecutorService executor : executors) {
+            if (!executor.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService executor : executors) {
+            if (!executor.awaitTermination(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the load balancer of executors, e.g. to check metrics
+     *
+     * @return the load balancer
+     */
+    public LeastConcurrencyLoadBalancer<ExecutorService> getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    /**
+     * New builder of LoadBalancingExecutorService
+     *
+     * @return the builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Job dispatched to an executor, completes its request when it finishes,
+     * or releases it if the job was cancelled before it started
+     */
+    private static final class Job implements Runnable {
+        private final Runnable command;
+        private final CompletableTask<ExecutorService> completableTask;
+
+        private Job(Runnable command, CompletableTask<ExecutorService> completableTask) {
+            this.command = command;
+            this.completableTask = completableTask;
+        }
+
+        @Override
+        public void run() {
+            if (command instanceof JobFuture && ((JobFuture<?>) command).isCancelled()) {
+                completableTask.release();
+                return;
+            }
+            boolean succeed = false;
+            try {
+                command.run();
+                //future of submitted job captures exception instead of throwing it
+                succeed = !(command instanceof JobFuture) || !((JobFuture<?>) command).failed;
+            } finally {
+                completableTask.complete(succeed);
+            }
+        }
+    }
+
+    /**
+     * Future of submitted job, which remembers whether the job threw
+     *
+     * @param <V> the result type
+     */
+    private static final class JobFuture<V> extends FutureTask<V> {
+        private volatile boolean failed;
+
+        private JobFuture(Callable<V> callable) {
+            super(callable);
+        }
+
+        private JobFuture(Runnable runnable, V result) {
+            super(runnable, result);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed = true;
+            super.setException(t);
+        }
+    }
+
+    /**
+     * Builder of LoadBalancingExecutorService
+     */
+    public static class Builder {
+        private final HeapConcurrencyLoadBalancer.Builder<ExecutorService> loadBalancerBuilder =
+                HeapConcurrencyLoadBalancer.newBuilder(ExecutorService.class);
+        private Collection<ExecutorService> executors = ImmutableList.of();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets executors to dispatch jobs to
+         *
+         * @param executors the executors
+         * @return the builder
+         */
+        public Builder withExecutors(Collection<? extends ExecutorService> executors) {
+            this.executors = ImmutableList.copyOf(executors);
+            return this;
+        }
+
+        /**
+         * Sets sub strategy to choose between executors of the same concurrency
+         *
+         * @param subStrategy the sub strategy
+         * @return the builder
+         */
+        public Builder withSubStrategy(SubStrategy subStrategy) {
+            loadBalancerBuilder.withSubStrategy(subStrategy);
+            return this;
+        }
+
+        /**
+         * Sets max number of running and queued jobs of each executor, jobs over the limit are rejected
+         *
+         * @param maxConcurrency the max concurrency
+         * @return the builder
+         */
+        public Builder withMaxConcurrency(int maxConcurrency) {
+            loadBalancerBuilder.withMaxConcurrency(maxConcurrency);
+            return this;
+        }
+
+        /**
+         * Build LoadBalancingExecutorService
+         *
+         * @return the executor service
+         */
+        public LoadBalancingExecutorService build() {
+            if (executors.isEmpty()) {
+                throw new IllegalArgumentException("executors must not be empty");
+            }
+            return new LoadBalancingExecutorService(executors, loadBalancerBuilder.withTasks(executors).build());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * MultiQueueConcurrencyLoadBalancer distribute interaction to the less concurrent entity of heads of two random shards.
+ *
+ * <P>
+ * Entities are spread across multiple shards, each shard is a min-heap guarded by its own lock,
+ * the same as the single heap of {@link HeapConcurrencyLoadBalancer}.
+ * MultiQueueConcurrencyLoadBalancer peeks heads of two random shards and takes the less concurrent one,
+ * in the style of relaxed MultiQueue priority queue. Selected entity is not always the global least concurrent one,
+ * but it's close to, since head of a shard is the least of the shard and the two choices keep shards balanced.
+ * </p>
+ *
+ * <P>
+ * Updates of entities in different shards don't contend on the same lock, so throughput scales with number of cores,
+ * while HeapConcurrencyLoadBalancer serializes all updates with a single monitor.
+ * Use number of shards to trade accuracy for throughput, 1 shard behaves as HeapConcurrencyLoadBalancer.
+ * </P>
+ * Example:
+ * <pre>
+ * {@code
+ * MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(urls)
+ *                 .withShards(Runtime.getRuntime().availableProcessors())
+ *                 .build();
+ * CompletableTask<String> url = loadBalancer.next();
+ * boolean succeed = doPost(url.getTask()); //make rest call with url.getTask()
+ * url.complete(succeed);                   //finish the task
+ * }
+ * </pre>
+ */
+public final class MultiQueueConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private final ImmutableList<HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<T>> shards;
+
+    /**
+     * Instantiates a new MultiQueueConcurrencyLoadBalancer
+     *
+     * @param tasks     the tasks
+     * @param shards    the shards of concurrency state storage
+     * @param listeners the listeners
+     * @param ticker    the ticker
+     */
+    MultiQueueConcurrencyLoadBalancer(Collection<T> tasks,
+                                      ImmutableList<HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<T>> shards,
+                                      List<CompletableTask.Listener<T>> listeners,
+                                      Ticker ticker) {
+        super(tasks, listeners, ticker);
+        this.shards = shards;
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        if (shards.isEmpty()) {
+            return null;
+        }
+        while (true) {
+            TaskConcurrency<T> taskConcurrency = select();
+            if (taskConcurrency.isSaturated()
+                    || Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
+                //both heads have no capacity, fallback to the least of all heads
+                taskConcurrency = selectAll();
+            }
+            if (Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
+                return null; // all tasks reached concurrency limits
+            }
+            //saturated task is ordered after unsaturated task, so the least head saturated means all saturated
+            if (taskConcurrency.isSaturated()) {
+                throw new SaturationException("all tasks reached max concurrency");
+            }
+            //lost race to other thread when the task reached max concurrency, select again
+            CompletableTask<T> completableTask = tryAcquire(taskConcurrency);
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+    }
+
+    @Override
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        List<TaskConcurrency<T>> taskConcurrencies = new ArrayList<>();
+        for (HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<T> shard : shards) {
+            taskConcurrencies.addAll(shard.getTaskConcurrencies());
+        }
+        return taskConcurrencies;
+    }
+
+    @VisibleForTesting
+    TaskConcurrency<T> get(T t) {
+        for (HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<T> shard : shards) {
+            TaskConcurrency<T> tc = shard.get(t);
+            if (tc != null) {
+                return tc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * select the less concurrent head of two random shards
+     */
+    private TaskConcurrency<T> select() {
+        int size = shards.size();
+        if (size == 1) {
+            return shards.get(0).peek();
+        }
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int i = rand.nextInt(size);
+        //pick j out of the remaining size - 1 shards, so that i != j
+        int j = rand.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        TaskConcurrency<T> a = shards.get(i).peek();
+        TaskConcurrency<T> b = shards.get(j).peek();
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * select the least concurrent head of all shards
+     */
+    private TaskConcurrency<T> selectAll() {
+        TaskConcurrency<T> result = null;
+        for (HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<T> shard : shards) {
+            TaskConcurrency<T> head = shard.peek();
+            if (result == null || head.compareTo(result) < 0) {
+                result = head;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * New builder of MultiQueueConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     * @return the multi queue concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of MultiQueueConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public final static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private int shards = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Number of shards, each shard is guarded by its own lock,
+         * more shards gives higher throughput with lower accuracy, it's capped by number of tasks.
+         *
+         * @param shards the number of shards, must be positive
+         * @return the builder
+         */
+        public Builder<T> withShards(int shards) {
+            if (shards <= 0) {
+                throw new IllegalArgumentException("shards must be positive");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Build a MultiQueueConcurrencyLoadBalancer
+         *
+         * @return the multi queue concurrency load balancer
+         */
+        public MultiQueueConcurrencyLoadBalancer<T> build() {
+            TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+            Function<T, TaskConcurrency<T>> taskConcurrencyFactory = t -> newTaskConcurrency(taskConcurrencyBuilder, t);
+
+            int size = Math.min(shards, tasks.size());
+            List<List<T>> shardTasks = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                shardTasks.add(new ArrayList<>());
+            }
+            int i = 0;
+            for (T task : tasks) {
+                shardTasks.get(i++ % size).add(task);
+            }
+            ImmutableList.Builder<HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<T>> builder = ImmutableList.builder();
+            for (List<T> shard : shardTasks) {
+                builder.add(new HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<>(shard, taskConcurrencyFactory));
+            }
+            return bind(new MultiQueueConcurrencyLoadBalancer<>(
+                    tasks, builder.build(), listeners, scheduledCounterBuilder.getTicker()));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * P2CConcurrencyLoadBalancer distribute interaction to the less concurrent entity of two random choices.
+ *
+ * <P>
+ * P2CConcurrencyLoadBalancer samples two distinct entities uniformly at random and picks the one
+ * with lower concurrency, ties are resolved by {@link SubStrategy} the same way as other least concurrency loadBalancers.
+ * Selection has time complexity O(1) regardless of number of entities, and there is no lock shared across entities.
+ * Comparing with random selection, the power of two choices keeps most of the benefit of least concurrency selection,
+ * max load deviates from average by O(loglogN) instead of O(logN/loglogN)
+ * </p>
+ *
+ * <p>
+ * Same as {@link ArrayConcurrencyLoadBalancer}, multiple loadbalancers built by the same builder share concurrency state.
+ * </p>
+ * Example:
+ * <pre>
+ * {@code
+ * ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c");}};
+ *
+ * P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(entries)
+ *                 .build();
+ * loadBalancer.next();
+ * }
+ * </pre>
+ */
+public final class P2CConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private final ImmutableList<TaskConcurrency<T>> taskConcurrencies;
+
+    /**
+     * Instantiates a P2CConcurrencyLoadBalancer
+     *
+     * @param tasks              the entity list
+     * @param taskConcurrencyMap the concurrency state storage
+     * @param listeners          the listeners
+     * @param ticker             the ticker
+     */
+    P2CConcurrencyLoadBalancer(Collection<T> tasks,
+                               Function<T, TaskConcurrency<T>> taskConcurrencyMap,
+                               List<CompletableTask.Listener<T>> listeners,
+                               Ticker ticker) {
+        super(tasks, listeners, ticker);
+        ImmutableList.Builder<TaskConcurrency<T>> builder = ImmutableList.builder();
+        for (T task : tasks) {
+            builder.add(taskConcurrencyMap.apply(task));
+        }
+        this.taskConcurrencies = builder.build();
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        while (true) {
+            TaskConcurrency<T> result = select(taskConcurrencies);
+            if (result != null && result.isSaturated()) {
+                //both choices reached max concurrency, fallback to the least concurrent unsaturated entity
+                result = selectUnsaturated(taskConcurrencies);
+                if (result == null) {
+                    throw new SaturationException("all tasks reached max concurrency");
+                }
+            }
+            if (result == null || Integer.compareUnsigned(Integer.MAX_VALUE, result.getConcurrency()) < 0) {
+                return null; // no tasks or all tasks reached concurrency limits
+            }
+            //lost race to other thread when result reached max concurrency, select again
+            CompletableTask<T> completableTask = tryAcquire(result);
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+    }
+
+    @Override
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        return taskConcurrencies;
+    }
+
+    /**
+     * Pick the less concurrent one out of two distinct random entities
+     *
+     * @param taskConcurrencies the candidates
+     * @param <T>               the entity type
+     * @return the selected entity, null if there is no candidate
+     */
+    static <T> TaskConcurrency<T> select(List<TaskConcurrency<T>> taskConcurrencies) {
+        int size = taskConcurrencies.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            TaskConcurrency<T> only = taskConcurrencies.get(0);
+            only.syncState();
+            return only;
+        }
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int i = rand.nextInt(size);
+        //pick j out of the remaining size - 1 entities, so that i != j
+        int j = rand.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        TaskConcurrency<T> a = taskConcurrencies.get(i);
+        TaskConcurrency<T> b = taskConcurrencies.get(j);
+        a.syncState();
+        b.syncState();
+        int diff = a.compareTo(b);
+        if (diff == 0) {
+            return rand.nextBoolean() ? a : b;
+        }
+        return diff < 0 ? a : b;
+    }
+
+    /**
+     * Pick the least concurrent one out of all entities not reaching max concurrency
+     * with time complexity O(n), used only when both random choices are saturated
+     *
+     * @param taskConcurrencies the candidates
+     * @param <T>               the entity type
+     * @return the selected entity, null if all candidates reached max concurrency
+     */
+    static <T> TaskConcurrency<T> selectUnsaturated(List<TaskConcurrency<T>> taskConcurrencies) {
+        TaskConcurrency<T> result = null;
+        for (TaskConcurrency<T> taskConcurrency : taskConcurrencies) {
+            taskConcurrency.syncState();
+            if (!taskConcurrency.isSaturated() && (result == null || taskConcurrency.compareTo(result) < 0)) {
+                result = taskConcurrency;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * New builder of P2CConcurrencyLoadBalancer.
+     *
+     * @param <T> the type parameter
+     * @return the p2c concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of P2CConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private volatile Function<T, TaskConcurrency<T>> taskConcurrencyMap = null;
+
+        Function<T, TaskConcurrency<T>> getTaskConcurrencyMap() {
+            return taskConcurrencyMap;
+        }
+
+        /**
+         * Build p2c concurrency load balancer.
+         *
+         * @return the p2c concurrency load balancer
+         */
+        public P2CConcurrencyLoadBalancer<T> build() {
+            if (taskConcurrencyMap == null) {
+                synchronized (this) {
+                    if (taskConcurrencyMap == null) {
+                        TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+                        taskConcurrencyMap = new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(t -> newTaskConcurrency(taskConcurrencyBuilder, t));
+                    }
+                }
+            }
+            return bind(new P2CConcurrencyLoadBalancer<>(
+                    tasks, taskConcurrencyMap, listeners, scheduledCounterBuilder.getTicker()));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.uber.concurrency.loadbalancer.internal.PeakEwmaTaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * PeakEwmaConcurrencyLoadBalancer distribute interaction to the entity with least latency weighted concurrency.
+ *
+ * <P>
+ * Cost of each entity is (concurrency + 1) * peakEwmaLatency, where peakEwmaLatency is peak-sensitive exponentially
+ * weighted moving average of request latency. Comparing with {@link SubStrategy#LeastTime} which only breaks ties
+ * among entities with the same concurrency, latency weighted cost steers traffic away from a slowed entity
+ * before its concurrency climbs.
+ * When request failed, its latency is taken at least the same as failure effective latency.
+ * </p>
+ *
+ * <P>
+ * Same as {@link P2CConcurrencyLoadBalancer}, PeakEwmaConcurrencyLoadBalancer picks the lower cost one of two random
+ * entities with time complexity O(1). When cost is the same, sub strategy decides.
+ * </P>
+ * Example:
+ * <pre>
+ * {@code
+ * ArrayList<String> urls = new ArrayList<String>() {{add("http://192.168.0.1:80"); add("http://192.168.0.2:80");}};
+ *
+ * PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(urls)
+ *                 .withDecayTime(Duration.ofSeconds(10))
+ *                 .build();
+ * CompletableTask<String> url = loadBalancer.next();
+ * boolean succeed = doPost(url.getTask()); //make rest call with url.getTask()
+ * url.complete(succeed);                   //finish the task
+ * }
+ * </pre>
+ */
+public final class PeakEwmaConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private final ImmutableList<TaskConcurrency<T>> taskConcurrencies;
+
+    /**
+     * Instantiates a new PeakEwmaConcurrencyLoadBalancer
+     *
+     * @param tasks             the entity list
+     * @param taskConcurrencies the concurrency state of entities
+     * @param listeners         the listeners
+     * @param ticker            the ticker
+     */
+    PeakEwmaConcurrencyLoadBalancer(Collection<T> tasks,
+                                    ImmutableList<TaskConcurrency<T>> taskConcurrencies,
+                                    List<CompletableTask.Listener<T>> listeners,
+                                    Ticker ticker) {
+        super(tasks, listeners, ticker);
+        this.taskConcurrencies = taskConcurrencies;
+    }
+
+    @Override
+    boolean isBackedBy(TaskConcurrency<T> state) {
+        return isBackedBy(taskConcurrencies, state);
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        while (true) {
+            TaskConcurrency<T> result = P2CConcurrencyLoadBalancer.select(taskConcurrencies);
+            if (result != null && result.isSaturated()) {
+                //both choices reached max concurrency, fallback to the least concurrent unsaturated entity
+                result = P2CConcurrencyLoadBalancer.selectUnsaturated(taskConcurrencies);
+                if (result == null) {
+                    throw new SaturationException("all tasks reached max concurrency");
+                }
+            }
+            if (result == null || Integer.compareUnsigned(Integer.MAX_VALUE, result.getConcurrency()) < 0) {
+                return null; // no tasks or all tasks reached concurrency limits
+            }
+            //lost race to other thread when result reached max concurrency, select again
+            CompletableTask<T> completableTask = tryAcquire(result);
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    PeakEwmaTaskConcurrency<T> get(T t) {
+        for (TaskConcurrency<T> tc : taskConcurrencies) {
+            if (tc.getTask() == t) {
+                return (PeakEwmaTaskConcurrency<T>) tc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * New builder of PeakEwmaConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     * @return the peak ewma concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of PeakEwmaConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public final static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private Duration decayTime = Duration.ofSeconds(10);
+
+        /**
+         * Time for weight of past latency decays to 1/e.
+         * shorter decay time reacts faster to latency change, longer decay time is more stable
+         *
+         * @param decayTime the decay time
+         * @return the builder
+         */
+        public Builder<T> withDecayTime(Duration decayTime) {
+            if (decayTime.isNegative() || decayTime.isZero()) {
+                throw new IllegalArgumentException("decay time must be positive");
+            }
+            this.decayTime = decayTime;
+            return this;
+        }
+
+        /**
+         * Build a PeakEwmaConcurrencyLoadBalancer
+         *
+         * @return the peak ewma concurrency load balancer
+         */
+        public PeakEwmaConcurrencyLoadBalancer<T> build() {
+            TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+            Ticker ticker = scheduledCounterBuilder.getTicker();
+            ImmutableList.Builder<TaskConcurrency<T>> builder = ImmutableList.builder();
+            for (T t : tasks) {
+                builder.add(new PeakEwmaTaskConcurrency<>(newTaskConcurrency(taskConcurrencyBuilder, t), decayTime, scheduledCounterBuilder.getMaxDelay(), ticker));
+            }
+            return bind(new PeakEwmaConcurrencyLoadBalancer<>(tasks, builder.build(), listeners, ticker));
+        }
+    }
+}
@@ -5,12 +5,14 @@ import com.google.common.collect.ImmutableList;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * RoundRobinLoadBalancer iteratively distribute
  * interaction evenly across all entities with index
+ * entities can be added or removed at runtime
  *
  * Example:
  * {@code
@@ -26,7 +28,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 @ThreadSafe
 public final class RoundRobinLoadBalancer<T> implements LoadBalancer<T> {
-    private final ImmutableList<T> tasks;
+    private volatile ImmutableList<T> tasks;
     private final AtomicInteger index;
 
     /**
@@ -42,11 +44,47 @@ public final class RoundRobinLoadBalancer<T> implements LoadBalancer<T> {
 
     @Override
     public T next() {
-        int size = tasks.size();
+        ImmutableList<T> current = tasks;
+        int size = current.size();
         if (size == 0) {
             return null;
         }
-        return tasks.get(((index.getAndIncrement() % size) + size) % size);
+        return current.get(((index.getAndIncrement() % size) + size) % size);
+    }
+
+    /**
+     * Add entity at runtime
+     *
+     * @param task the task
+     * @return true if the entity is added, false if it exists already
+     */
+    public synchronized boolean addTask(T task) {
+        Objects.requireNonNull(task);
+        if (tasks.contains(task)) {
+            return false;
+        }
+        tasks = ImmutableList.<T>builder().addAll(tasks).add(task).build();
+        return true;
+    }
+
+    /**
+     * Remove entity at runtime
+     *
+     * @param task the task
+     * @return true if the entity is removed, false if it doesn't exist
+     */
+    public synchronized boolean removeTask(T task) {
+        if (!tasks.contains(task)) {
+            return false;
+        }
+        ImmutableList.Builder<T> builder = ImmutableList.builder();
+        for (T t : tasks) {
+            if (!t.equals(task)) {
+                builder.add(t);
+            }
+        }
+        tasks = builder.build();
+        return true;
     }
 
     /**
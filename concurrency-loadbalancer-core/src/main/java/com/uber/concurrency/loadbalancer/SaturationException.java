@@ -0,0 +1,19 @@
+package com.uber.concurrency.loadbalancer;
+
+/**
+ * Thrown by {@link LoadBalancer#next()} when every entity reached its max concurrency.
+ * Caller is expected to fail fast, e.g. reject or shed the request, instead of queueing on downstream.
+ * Stack trace is not filled in, since saturation is expected under overload and shall be cheap to signal.
+ */
+public class SaturationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new SaturationException
+     *
+     * @param message the message
+     */
+    public SaturationException(String message) {
+        super(message, null, false, false);
+    }
+}
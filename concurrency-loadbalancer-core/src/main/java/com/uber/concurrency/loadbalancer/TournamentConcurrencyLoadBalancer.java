@@ -0,0 +1,291 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyDelegator;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * TournamentConcurrencyLoadBalancer distribute interaction to the least concurrent entity without lock.
+ *
+ * <P>
+ * TournamentConcurrencyLoadBalancer keeps a tournament tree, each internal node holds index of the least concurrent
+ * entity in its subtree, root holds the least concurrent entity of all, which is read with time complexity O(1).
+ * Whenever concurrency of an entity changes, nodes on the path from the entity to root are refreshed with
+ * compare-and-set, time complexity O(logn), n indicate number of entities.
+ * </p>
+ *
+ * <P>
+ * Comparing with {@link HeapConcurrencyLoadBalancer}, which serializes every update with a monitor,
+ * concurrent updates of TournamentConcurrencyLoadBalancer don't block each other.
+ * Each node is tagged with version, and is refreshed at most twice: if both compare-and-set failed,
+ * a refresh that started after the concurrency change must have succeeded in between,
+ * so root reflects every completed update the same way as a heap does.
+ * </P>
+ * Example:
+ * <pre>
+ * {@code
+ * ArrayList<String> urls = new ArrayList<String>() {{add("http://192.168.0.1:80"); add("http://192.168.0.2:80");}};
+ *
+ * TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(urls)
+ *                 .build();
+ * CompletableTask<String> url = loadBalancer.next();
+ * boolean succeed = doPost(url.getTask()); //make rest call with url.getTask()
+ * url.complete(succeed);                   //finish the task
+ * }
+ * </pre>
+ */
+public final class TournamentConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+    private static final int EMPTY = -1;
+    private final TaskConcurrency<T>[] leaves;
+    private final int capacity;
+    /**
+     * internal nodes of tournament tree, node k has children 2k and 2k + 1, node capacity + i is leaf i.
+     * each node holds version in high 32 bits and index of winner leaf in low 32 bits
+     */
+    private final AtomicLongArray tree;
+
+    /**
+     * Instantiates a new TournamentConcurrencyLoadBalancer
+     *
+     * @param tasks                  the tasks
+     * @param taskConcurrencyFactory the task concurrency factory
+     * @param listeners              the listeners
+     * @param ticker                 the ticker
+     */
+    TournamentConcurrencyLoadBalancer(Collection<T> tasks,
+                                      Function<T, TaskConcurrency<T>> taskConcurrencyFactory,
+                                      List<CompletableTask.Listener<T>> listeners,
+                                      Ticker ticker) {
+        super(tasks, listeners, ticker);
+        this.leaves = new TaskConcurrency[tasks.size()];
+        int i = 0;
+        for (T task : tasks) {
+            leaves[i] = new TournamentTaskConcurrency(taskConcurrencyFactory.apply(task), i);
+            i++;
+        }
+        int size = 2;
+        while (size < leaves.length) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.tree = new AtomicLongArray(capacity);
+        for (int node = capacity - 1; node >= 1; --node) {
+            tree.set(node, winner(node) & INDEX_MASK);
+        }
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        if (leaves.length == 0) {
+            return null;
+        }
+
+        /**
+         * on completion of failed requests, instead of reducing task concurrency right away
+         * we reduce concurrency with delay to avoid more number of requests assigned to failed task
+         * syncState() will check scheduledCounter to see if there is matured count can be reduced
+         */
+        leaves[ThreadLocalRandom.current().nextInt(leaves.length)].syncState();
+
+        while (true) {
+            int leaf = (int) tree.get(1);
+            TaskConcurrency<T> taskConcurrency = leaves[leaf];
+            if (Integer.compareUnsigned(Integer.MAX_VALUE, taskConcurrency.getConcurrency()) < 0) {
+                return null; // all tasks reached concurrency limits
+            }
+            //saturated task is ordered after unsaturated task, so the least one saturated means all saturated,
+            //unless the winner was saturated by other thread which hasn't refreshed the tree yet
+            if (taskConcurrency.isSaturated()) {
+                refresh(leaf);
+                if (leaves[(int) tree.get(1)].isSaturated()) {
+                    throw new SaturationException("all tasks reached max concurrency");
+                }
+                continue;
+            }
+            //lost race to other thread when the task reached max concurrency, read root again
+            CompletableTask<T> completableTask = tryAcquire(taskConcurrency);
+            if (completableTask != null) {
+                return completableTask;
+            }
+        }
+    }
+
+    @Override
+    List<TaskConcurrency<T>> getTaskConcurrencies() {
+        return Arrays.asList(leaves);
+    }
+
+    @VisibleForTesting
+    TaskConcurrency<T> get(T t) {
+        for (TaskConcurrency<T> tc : leaves) {
+            if (tc.getTask() == t) {
+                return tc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * refresh nodes on the path from leaf to root
+     *
+     * @param leaf index of the leaf
+     */
+    private void refresh(int leaf) {
+        for (int node = (capacity + leaf) >>> 1; node >= 1; node >>>= 1) {
+            //double refresh, if both attempts failed, other thread has refreshed the node with newer state
+            for (int attempt = 0; attempt < 2; ++attempt) {
+                long current = tree.get(node);
+                long updated = (((current >>> 32) + 1) << 32) | (winner(node) & INDEX_MASK);
+                if (tree.compareAndSet(node, current, updated)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * compute winner of node from its children
+     */
+    private int winner(int node) {
+        int left = winnerOf(node << 1);
+        int right = winnerOf((node << 1) + 1);
+        if (left == EMPTY || right == EMPTY) {
+            return left == EMPTY ? right : left;
+        }
+        int diff = leaves[left].compareTo(leaves[right]);
+        if (diff == 0) {
+            //resolve ties randomly, otherwise left most task always wins when concurrency is low
+            return ThreadLocalRandom.current().nextBoolean() ? left : right;
+        }
+        return diff < 0 ? left : right;
+    }
+
+    private int winnerOf(int node) {
+        if (node >= capacity) {
+            int leaf = node - capacity;
+            return leaf < leaves.length ? leaf : EMPTY;
+        }
+        return (int) tree.get(node);
+    }
+
+    /**
+     * Refresh tournament tree whenever state of task changes
+     */
+    @SuppressFBWarnings(
+            value="EQ_COMPARETO_USE_OBJECT_EQUALS",
+            justification="Note: this class has a natural ordering that is inconsistent with equals.")
+    private class TournamentTaskConcurrency extends TaskConcurrencyDelegator<T> {
+        private final int leaf;
+
+        TournamentTaskConcurrency(TaskConcurrency<T> delegate, int leaf) {
+            super(delegate);
+            this.leaf = leaf;
+        }
+
+        @Override
+        public void acquire() {
+            super.acquire();
+            refresh(leaf);
+        }
+
+        @Override
+        public void acquire(int n) {
+            super.acquire(n);
+            refresh(leaf);
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            if (super.tryAcquire()) {
+                refresh(leaf);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryAcquire(int n) {
+            if (super.tryAcquire(n)) {
+                refresh(leaf);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void complete(boolean succeed, long latencyNanos) {
+            super.complete(succeed, latencyNanos);
+            refresh(leaf);
+        }
+
+        @Override
+        public void complete(int n, long latencyNanos) {
+            super.complete(n, latencyNanos);
+            refresh(leaf);
+        }
+
+        @Override
+        public void complete(int n, boolean succeed, long latencyNanos) {
+            super.complete(n, succeed, latencyNanos);
+            refresh(leaf);
+        }
+
+        @Override
+        public void release(int n) {
+            super.release(n);
+            refresh(leaf);
+        }
+
+        @Override
+        public void setMaxConcurrency(int maxConcurrency) {
+            super.setMaxConcurrency(maxConcurrency);
+            refresh(leaf);
+        }
+
+        @Override
+        public void syncState() {
+            super.syncState();
+            refresh(leaf);
+        }
+    }
+
+    /**
+     * New builder of TournamentConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     * @return the tournament concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of TournamentConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public final static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        /**
+         * Build a TournamentConcurrencyLoadBalancer
+         *
+         * @return the tournament concurrency load balancer
+         */
+        public TournamentConcurrencyLoadBalancer<T> build() {
+            TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+            return bind(new TournamentConcurrencyLoadBalancer<>(
+                    tasks, t -> newTaskConcurrency(taskConcurrencyBuilder, t), listeners, scheduledCounterBuilder.getTicker()));
+        }
+    }
+}
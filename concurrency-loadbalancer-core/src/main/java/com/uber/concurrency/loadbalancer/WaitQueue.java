@@ -0,0 +1,222 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded FIFO queue of requests waiting for concurrency when every entity reached its max concurrency.
+ * Waiting requests are handed an entity by the thread releasing concurrency, see {@link #dispatch()},
+ * instead of polling, and only one thread dispatches at a time so that releases don't wake up all waiters.
+ * Concurrency released outside completion of requests, i.e. matured failure sustain and reclaimed leases,
+ * is handed to waiting requests as well, see {@link #signal()}.
+ * A request waits until timeout, and is rejected right away when the queue is full.
+ *
+ * @param <T> the entity type
+ */
+class WaitQueue<T> {
+    private static final ScheduledThreadPoolExecutor TIMER;
+
+    static {
+        TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("concurrency-loadbalancer-wait-timer")
+                .build());
+        //requests handed an entity cancel their timeout, remove them from timer right away
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final int maxLength;
+    private final Supplier<CompletableTask<T>> next;
+    private final Ticker ticker;
+    private final ConcurrentLinkedDeque<Waiter<T>> waiters = new ConcurrentLinkedDeque<>();
+    //number of waiters not resolved yet, including waiters being dispatched
+    private final AtomicInteger length = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * Instantiates a new wait queue
+     *
+     * @param maxLength max number of waiting requests
+     * @param next      function selects and acquires an entity, the same as {@link LoadBalancer#next()}
+     * @param ticker    the ticker of the loadBalancer, measures timeout of waiting requests
+     */
+    WaitQueue(int maxLength, Supplier<CompletableTask<T>> next, Ticker ticker) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("max length of wait queue must be positive");
+        }
+        this.maxLength = maxLength;
+        this.next = next;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Acquire an entity, wait in queue if every entity reached its max concurrency
+     *
+     * @param timeout max duration to wait
+     * @return the future of acquired request
+     */
+    CompletableFuture<CompletableTask<T>> acquire(Duration timeout) {
+        //requests in queue go first
+        if (length.get() == 0 || timeout.isNegative() || timeout.isZero()) {
+            try {
+                return resolved(next.get());
+            } catch (SaturationException e) {
+                if (timeout.isNegative() || timeout.isZero()) {
+                    return failed(e);
+                }
+            }
+        }
+
+        if (length.incrementAndGet() > maxLength) {
+            length.decrementAndGet();
+            return failed(new SaturationException("wait queue is full"));
+        }
+        Waiter<T> waiter = new Waiter<>(ticker.read() + timeout.toNanos());
+        waiter.timeout = TIMER.schedule(() -> expire(waiter), timeout.toNanos(), TimeUnit.NANOSECONDS);
+        waiter.future.whenComplete((task, throwable) -> {
+            if (throwable instanceof CancellationException && waiter.claim()) {
+                waiter.timeout.cancel(false);
+                remove(waiter);
+            }
+        });
+        waiters.offerLast(waiter);
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * Hand entities to waiting requests in order, until every entity reached its max concurrency again.
+     * Called after concurrency is released, release happens during dispatching makes the dispatching thread retry.
+     */
+    void dispatch() {
+        if (length.get() == 0 || wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Waiter<T> waiter;
+            while ((waiter = waiters.pollFirst()) != null) {
+                if (!waiter.claim()) {
+                    //timed out or cancelled
+                    continue;
+                }
+                CompletableTask<T> task;
+                try {
+                    task = next.get();
+                } catch (SaturationException e) {
+                    waiter.unclaim();
+                    waiters.offerFirst(waiter);
+                    //timer or cancellation failed to claim the waiter while it was being dispatched
+                    if (waiter.future.isDone()) {
+                        if (waiter.claim()) {
+                            waiter.timeout.cancel(false);
+                            remove(waiter);
+                        }
+                    } else if (ticker.read() - waiter.deadlineNanos >= 0) {
+                        expire(waiter);
+                    }
+                    break;
+                } catch (RuntimeException e) {
+                    resolve(waiter);
+                    waiter.future.completeExceptionally(e);
+                    continue;
+                }
+                resolve(waiter);
+                if (task == null) {
+                    waiter.future.completeExceptionally(new NoSuchElementException("no entity to select"));
+                } else if (!waiter.future.complete(task)) {
+                    //cancelled right after claimed, give the entity back without outcome
+                    task.release();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Dispatch concurrency released outside completion of requests, i.e. matured failure sustain and reclaimed leases.
+     * It's found while an entity is being selected, so dispatching is deferred to the timer thread
+     * instead of selecting again in the middle of selection.
+     */
+    void signal() {
+        if (length.get() > 0) {
+            TIMER.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Gets number of waiting requests
+     *
+     * @return the length
+     */
+    int getLength() {
+        return length.get();
+    }
+
+    private void expire(Waiter<T> waiter) {
+        if (waiter.claim()) {
+            remove(waiter);
+            waiter.future.completeExceptionally(new TimeoutException("no entity available before timeout"));
+        }
+    }
+
+    private void resolve(Waiter<T> waiter) {
+        waiter.timeout.cancel(false);
+        length.decrementAndGet();
+    }
+
+    private void remove(Waiter<T> waiter) {
+        waiters.remove(waiter);
+        length.decrementAndGet();
+    }
+
+    private static <T> CompletableFuture<CompletableTask<T>> resolved(CompletableTask<T> task) {
+        if (task == null) {
+            return failed(new NoSuchElementException("no entity to select"));
+        }
+        return CompletableFuture.completedFuture(task);
+    }
+
+    private static <T> CompletableFuture<CompletableTask<T>> failed(Throwable throwable) {
+        CompletableFuture<CompletableTask<T>> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    /**
+     * Request waiting in queue, it's resolved by whoever claims it first, the dispatcher, timeout or cancellation
+     *
+     * @param <T> the entity type
+     */
+    static class Waiter<T> {
+        final CompletableFuture<CompletableTask<T>> future = new CompletableFuture<>();
+        final long deadlineNanos;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        volatile ScheduledFuture<?> timeout;
+
+        Waiter(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        void unclaim() {
+            claimed.set(false);
+        }
+    }
+}
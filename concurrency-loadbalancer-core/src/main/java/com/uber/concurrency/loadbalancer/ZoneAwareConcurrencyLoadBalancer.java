@@ -0,0 +1,296 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.uber.concurrency.loadbalancer.internal.CountingTaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * ZoneAwareConcurrencyLoadBalancer distribute interaction to the least concurrent entity, preferring entities in local zone.
+ *
+ * <P>
+ * Entities are grouped by zone label, each zone is served by an inner {@link ArrayConcurrencyLoadBalancer}.
+ * Traffic stays in local zone while load of local zone, aggregated concurrency / weight, is within
+ * (1 + spillThreshold) times of load of remote zones. Beyond that, traffic spills over to the least loaded remote zone
+ * until local zone falls back within the bound, so only the excess is spilled and load of local zone
+ * converges to (1 + spillThreshold) times of remote zones.
+ * When the selected zone is saturated, other zones are tried in order.
+ * </p>
+ *
+ * <P>
+ * Use spillThreshold to trade cross zone latency and cost for balance, 0 spills as soon as local zone
+ * is more loaded than remote zones, Double.POSITIVE_INFINITY never spills unless local zone is saturated.
+ * </P>
+ * Example:
+ * <pre>
+ * {@code
+ * ArrayList<String> urls = new ArrayList<String>() {{add("http://10.0.0.1:80"); add("http://10.1.0.1:80");}};
+ *
+ * ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+ *                 .withTasks(urls)
+ *                 .withZone(url -> url.startsWith("http://10.0.") ? "zone-a" : "zone-b")
+ *                 .withLocalZone("zone-a")
+ *                 .withSpillThreshold(0.5)
+ *                 .build();
+ * CompletableTask<String> url = loadBalancer.next();
+ * }
+ * </pre>
+ */
+public final class ZoneAwareConcurrencyLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
+    private final ImmutableList<Zone<T>> zones;
+    private final Zone<T> localZone;
+    private final double spillThreshold;
+
+    /**
+     * Instantiates a ZoneAwareConcurrencyLoadBalancer
+     *
+     * @param tasks          the entity list
+     * @param zones          the zones
+     * @param localZone      the local zone, null if there is no entity in local zone
+     * @param spillThreshold the tolerance of local zone load above remote zones
+     * @param listeners      the listeners
+     * @param ticker         the ticker
+     */
+    ZoneAwareConcurrencyLoadBalancer(Collection<T> tasks,
+                                     ImmutableList<Zone<T>> zones,
+                                     Zone<T> localZone,
+                                     double spillThreshold,
+                                     List<CompletableTask.Listener<T>> listeners,
+                                     Ticker ticker) {
+        super(tasks, listeners, ticker);
+        this.zones = zones;
+        this.localZone = localZone;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    boolean isBackedBy(TaskConcurrency<T> state) {
+        for (Zone<T> zone : zones) {
+            if (zone.loadBalancer.isBackedBy(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public CompletableTask<T> next() {
+        Zone<T> preferred = selectZone();
+        if (preferred == null) {
+            return null;
+        }
+        boolean saturated = false;
+        CompletableTask<T> completableTask = null;
+        try {
+            completableTask = preferred.loadBalancer.next();
+        } catch (SaturationException e) {
+            saturated = true;
+        }
+        //preferred zone has no capacity, fallback to other zones
+        for (int i = 0; completableTask == null && i < zones.size(); ++i) {
+            Zone<T> zone = zones.get(i);
+            if (zone == preferred) {
+                continue;
+            }
+            try {
+                completableTask = zone.loadBalancer.next();
+            } catch (SaturationException e) {
+                saturated = true;
+            }
+        }
+        if (completableTask == null) {
+            if (saturated) {
+                throw new SaturationException("all tasks reached max concurrency");
+            }
+            return null; // no tasks or all tasks reached concurrency limits
+        }
+        return new ZoneTaskImpl(completableTask);
+    }
+
+    /**
+     * select local zone unless it's overloaded comparing with remote zones,
+     * otherwise spill to the least loaded remote zone
+     */
+    private Zone<T> selectZone() {
+        Zone<T> leastRemoteZone = null;
+        long remoteConcurrency = 0;
+        long remoteWeight = 0;
+        for (Zone<T> zone : zones) {
+            if (zone == localZone) {
+                continue;
+            }
+            remoteConcurrency += zone.getConcurrency();
+            remoteWeight += zone.weight;
+            if (leastRemoteZone == null || zone.getLoad() < leastRemoteZone.getLoad()) {
+                leastRemoteZone = zone;
+            }
+        }
+        if (localZone == null || leastRemoteZone == null) {
+            return localZone == null ? leastRemoteZone : localZone;
+        }
+        //load after this request is assigned
+        double localLoad = (localZone.getConcurrency() + 1) / (double) localZone.weight;
+        double bound = (1 + spillThreshold) * (remoteConcurrency + 1) / remoteWeight;
+        return localLoad <= bound ? localZone : leastRemoteZone;
+    }
+
+    /**
+     * CompletableTask assigned by inner load balancer of the zone
+     */
+    class ZoneTaskImpl extends AbstractCompletableTask {
+        private final CompletableTask<T> delegate;
+
+        ZoneTaskImpl(CompletableTask<T> delegate) {
+            super(delegate.getTask(), ticker.read());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean complete(boolean succeed) {
+            if (super.complete(succeed)) {
+                boolean completed = delegate.complete(succeed);
+                onTaskReleased();
+                return completed;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean release() {
+            if (super.release()) {
+                boolean released = delegate.release();
+                onTaskReleased();
+                return released;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Entities of the same zone
+     *
+     * @param <T> the type parameter
+     */
+    static class Zone<T> {
+        private final ArrayConcurrencyLoadBalancer<T> loadBalancer;
+        private final AtomicLong totalConcurrency;
+        private final long weight;
+
+        Zone(ArrayConcurrencyLoadBalancer<T> loadBalancer, AtomicLong totalConcurrency, long weight) {
+            this.loadBalancer = loadBalancer;
+            this.totalConcurrency = totalConcurrency;
+            this.weight = weight;
+        }
+
+        long getConcurrency() {
+            return Math.max(totalConcurrency.get(), 0);
+        }
+
+        double getLoad() {
+            return getConcurrency() / (double) weight;
+        }
+    }
+
+    /**
+     * New builder of ZoneAwareConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     * @return the zone aware concurrency load balancer builder
+     */
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    /**
+     * Multi-stage builder of ZoneAwareConcurrencyLoadBalancer
+     *
+     * @param <T> the type parameter
+     */
+    public final static class Builder<T>
+            extends AbstractBuilder<T, Builder<T>> {
+        private Function<T, String> zoneFunction = t -> "";
+        private String localZone = "";
+        private double spillThreshold = 0.2;
+
+        /**
+         * Function to get zone label of entity
+         *
+         * @param zoneFunction the zone function
+         * @return the builder
+         */
+        public Builder<T> withZone(Function<T, String> zoneFunction) {
+            this.zoneFunction = Objects.requireNonNull(zoneFunction);
+            return this;
+        }
+
+        /**
+         * Zone label of the caller
+         *
+         * @param localZone the local zone
+         * @return the builder
+         */
+        public Builder<T> withLocalZone(String localZone) {
+            this.localZone = Objects.requireNonNull(localZone);
+            return this;
+        }
+
+        /**
+         * Tolerance of local zone load above remote zones before traffic spills over,
+         * local zone is considered overloaded when its load reached (1 + spillThreshold) times of remote zones.
+         *
+         * @param spillThreshold the spill threshold, must not be negative
+         * @return the builder
+         */
+        public Builder<T> withSpillThreshold(double spillThreshold) {
+            if (!(spillThreshold >= 0)) {
+                throw new IllegalArgumentException("spill threshold can't be negative");
+            }
+            this.spillThreshold = spillThreshold;
+            return this;
+        }
+
+        /**
+         * Build a ZoneAwareConcurrencyLoadBalancer
+         *
+         * @return the zone aware concurrency load balancer
+         */
+        public ZoneAwareConcurrencyLoadBalancer<T> build() {
+            Map<String, List<T>> zoneTasks = new LinkedHashMap<>();
+            for (T task : tasks) {
+                zoneTasks.computeIfAbsent(zoneFunction.apply(task), o -> new ArrayList<>()).add(task);
+            }
+            Ticker ticker = scheduledCounterBuilder.getTicker();
+            ImmutableList.Builder<Zone<T>> builder = ImmutableList.builder();
+            Zone<T> local = null;
+            for (Map.Entry<String, List<T>> entry : zoneTasks.entrySet()) {
+                TaskConcurrency.Builder taskConcurrencyBuilder = subStrategy.newTaskConcurrencyBuilder().withLookBackTime(lookBackTime);
+                AtomicLong totalConcurrency = new AtomicLong();
+                ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<T> taskConcurrencyMap = new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(
+                        t -> newTaskConcurrency(taskConcurrencyBuilder, t, tc -> new CountingTaskConcurrency<>(tc, totalConcurrency)));
+                long weight = 0;
+                for (T task : entry.getValue()) {
+                    weight += getWeight(task);
+                }
+                ArrayConcurrencyLoadBalancer<T> loadBalancer = new ArrayConcurrencyLoadBalancer<>(
+                        entry.getValue(), taskConcurrencyMap, Integer.MAX_VALUE, Collections.emptyList(), ticker);
+                Zone<T> zone = new Zone<>(loadBalancer, totalConcurrency, weight);
+                if (entry.getKey().equals(localZone)) {
+                    local = zone;
+                }
+                builder.add(zone);
+            }
+            return bind(new ZoneAwareConcurrencyLoadBalancer<>(
+                    tasks, builder.build(), local, spillThreshold, listeners, ticker));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.uber.concurrency.loadbalancer.internal;
+
+import com.uber.concurrency.loadbalancer.limit.LimitAlgorithm;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Adjusts max concurrency of task with limit learned by {@link LimitAlgorithm}
+ * from latency and result of completed requests.
+ * Max concurrency set explicitly caps the learned limit.
+ *
+ * @param <T> the type parameter
+ */
+@SuppressFBWarnings(
+        value="EQ_COMPARETO_USE_OBJECT_EQUALS",
+        justification="Note: this class has a natural ordering that is inconsistent with equals.")
+public class AdaptiveLimitTaskConcurrency<T> extends TaskConcurrencyDelegator<T> {
+    private final LimitAlgorithm limitAlgorithm;
+    private volatile int maxConcurrency;
+
+    /**
+     * Instantiates a new AdaptiveLimitTaskConcurrency
+     *
+     * @param delegate       the delegate
+     * @param limitAlgorithm the limit algorithm
+     */
+    public AdaptiveLimitTaskConcurrency(TaskConcurrency<T> delegate, LimitAlgorithm limitAlgorithm) {
+        super(delegate);
+        this.limitAlgorithm = limitAlgorithm;
+        this.maxConcurrency = delegate.getMaxConcurrency();
+        updateLimit();
+    }
+
+    @Override
+    public void complete(boolean succeed, long latencyNanos) {
+        limitAlgorithm.onSample(latencyNanos, getConcurrency(), !succeed);
+        updateLimit();
+        super.complete(succeed, latencyNanos);
+    }
+
+    @Override
+    public void complete(int n, long latencyNanos) {
+        if (n > 0) {
+            limitAlgorithm.onSample(latencyNanos / n, getConcurrency(), false);
+            updateLimit();
+        }
+        super.complete(n, latencyNanos);
+    }
+
+    /**
+     * Batch of requests is taken as one sample with average latency,
+     * so that failures of one batch reduce the limit once.
+     */
+    @Override
+    public void complete(int n, boolean succeed, long latencyNanos) {
+        if (n > 0) {
+            limitAlgorithm.onSample(latencyNanos / n, getConcurrency(), !succeed);
+            updateLimit();
+        }
+        super.complete(n, succeed, latencyNanos);
+    }
+
+    @Override
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        updateLimit();
+    }
+
+    /**
+     * Gets limit learned by limit algorithm
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return limitAlgorithm.getLimit();
+    }
+
+    private void updateLimit() {
+        int limit = limitAlgorithm.getLimit();
+        super.setMaxConcurrency(Integer.compareUnsigned(limit, maxConcurrency) < 0 ? limit : maxConcurrency);
+    }
+}
@@ -0,0 +1,83 @@
+package com.uber.concurrency.loadbalancer.internal;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of total concurrency of a group of tasks sharing the same counter,
+ * so that average concurrency can be read with time complexity O(1)
+ *
+ * @param <T> the type parameter
+ */
+@SuppressFBWarnings(
+        value="EQ_COMPARETO_USE_OBJECT_EQUALS",
+        justification="Note: this class has a natural ordering that is inconsistent with equals.")
+public class CountingTaskConcurrency<T> extends TaskConcurrencyDelegator<T> {
+    private final AtomicLong totalConcurrency;
+
+    /**
+     * Instantiates a new CountingTaskConcurrency
+     *
+     * @param delegate         the delegate
+     * @param totalConcurrency the counter shared by group of tasks
+     */
+    public CountingTaskConcurrency(TaskConcurrency<T> delegate, AtomicLong totalConcurrency) {
+        super(delegate);
+        this.totalConcurrency = totalConcurrency;
+    }
+
+    @Override
+    public void acquire() {
+        super.acquire();
+        totalConcurrency.incrementAndGet();
+    }
+
+    @Override
+    public void acquire(int n) {
+        super.acquire(n);
+        totalConcurrency.addAndGet(n);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        if (super.tryAcquire()) {
+            totalConcurrency.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryAcquire(int n) {
+        if (super.tryAcquire(n)) {
+            totalConcurrency.addAndGet(n);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void complete(boolean succeed, long latencyNanos) {
+        super.complete(succeed, latencyNanos);
+        totalConcurrency.decrementAndGet();
+    }
+
+    @Override
+    public void complete(int n, long latencyNanos) {
+        super.complete(n, latencyNanos);
+        totalConcurrency.addAndGet(-n);
+    }
+
+    @Override
+    public void complete(int n, boolean succeed, long latencyNanos) {
+        super.complete(n, succeed, latencyNanos);
+        totalConcurrency.addAndGet(-n);
+    }
+
+    @Override
+    public void release(int n) {
+        super.release(n);
+        totalConcurrency.addAndGet(-n);
+    }
+}
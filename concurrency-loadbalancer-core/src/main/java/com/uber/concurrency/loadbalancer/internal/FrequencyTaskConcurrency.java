@@ -21,15 +21,15 @@ public class FrequencyTaskConcurrency<T> extends TaskConcurrencyImpl<T> {
      */
     private final TimedCounter frequency;
 
-    private FrequencyTaskConcurrency(T task, Builder builder) {
-        super(task);
+    private FrequencyTaskConcurrency(T task, int weight, Builder builder) {
+        super(task, weight);
         frequency = new WindowTimedCounter(builder.scheduledCounterBuilder);
     }
 
     @Override
-    public void complete(int n, Duration latency) {
+    public void complete(int n, long latencyNanos) {
         frequency.add(n);
-        super.complete(n, latency);
+        super.complete(n, latencyNanos);
     }
 
     @Override
@@ -37,7 +37,8 @@ public class FrequencyTaskConcurrency<T> extends TaskConcurrencyImpl<T> {
         int result = super.compareTo(o);
         //When two tasks have same concurrency, pick the least frequent one
         if (result == 0 && o instanceof FrequencyTaskConcurrency) {
-            result = Long.compareUnsigned(frequency.get(), ((FrequencyTaskConcurrency)o).frequency.get());
+            FrequencyTaskConcurrency other = (FrequencyTaskConcurrency)o;
+            result = Long.compareUnsigned(frequency.get() * other.weight, other.frequency.get() * weight);
         }
         return result;
     }
@@ -60,8 +61,8 @@ public class FrequencyTaskConcurrency<T> extends TaskConcurrencyImpl<T> {
             return this;
         }
 
-        public <T> TaskConcurrency<T> build(T task) {
-            return new FrequencyTaskConcurrency<>(task, this);
+        public <T> TaskConcurrency<T> build(T task, int weight) {
+            return new FrequencyTaskConcurrency<>(task, weight, this);
         }
     }
 }
@@ -6,6 +6,7 @@ import com.uber.concurrency.loadbalancer.timedcounter.WindowTimedCounter;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Keeps track of task latency, when all tasks have same concurrency, select the least
@@ -18,15 +19,15 @@ import java.time.Duration;
 public class LatencyTaskConcurrency<T> extends TaskConcurrencyImpl<T> {
     private final TimedCounter durationMs;
 
-    private LatencyTaskConcurrency(T task, Builder builder) {
-        super(task);
+    private LatencyTaskConcurrency(T task, int weight, Builder builder) {
+        super(task, weight);
         durationMs = new WindowTimedCounter(builder.scheduledCounterBuilder);
     }
 
     @Override
-    public void complete(int n, Duration latency) {
-        durationMs.add(latency.toMillis());
-        super.complete(n, latency);
+    public void complete(int n, long latencyNanos) {
+        durationMs.add(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        super.complete(n, latencyNanos);
     }
 
     @Override
@@ -34,7 +35,8 @@ public class LatencyTaskConcurrency<T> extends TaskConcurrencyImpl<T> {
         int result = super.compareTo(o);
         //When two tasks have same concurrency, pick the least duration one
         if (result == 0 && o instanceof LatencyTaskConcurrency) {
-            result = Long.compareUnsigned(durationMs.get(), ((LatencyTaskConcurrency)o).durationMs.get());
+            LatencyTaskConcurrency other = (LatencyTaskConcurrency)o;
+            result = Long.compareUnsigned(durationMs.get() * other.weight, other.durationMs.get() * weight);
         }
         return result;
     }
@@ -57,8 +59,8 @@ public class LatencyTaskConcurrency<T> extends TaskConcurrencyImpl<T> {
             return this;
         }
 
-        public <T> TaskConcurrency<T> build(T task) {
-            return new LatencyTaskConcurrency<>(task, this);
+        public <T> TaskConcurrency<T> build(T task, int weight) {
+            return new LatencyTaskConcurrency<>(task, weight, this);
         }
     }
 }
@@ -0,0 +1,136 @@
+package com.uber.concurrency.loadbalancer.internal;
+
+import com.google.common.base.Ticker;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of peak-sensitive exponentially weighted moving average of task latency,
+ * and orders tasks by cost = (concurrency + 1) * peakEwmaLatency
+ * <p>
+ * Latency higher than current average is taken as new average right away,
+ * latency lower than current average is blended in with weight decaying by elapsed time.
+ * Average decays toward zero when there is no completion, so that a degraded task is retried eventually.
+ * A task without any latency observation is preferred when idle, and is penalized when there is
+ * outstanding request, so that only one probe request is sent to it until the first completion.
+ * </p>
+ * @param <T> the type parameter
+ */
+@SuppressFBWarnings(
+        value="EQ_COMPARETO_USE_OBJECT_EQUALS",
+        justification="Note: this class has a natural ordering that is inconsistent with equals.")
+public class PeakEwmaTaskConcurrency<T> extends TaskConcurrencyDelegator<T> {
+    private static final double PENALTY = Long.MAX_VALUE >> 16;
+    private final Ticker ticker;
+    private final double decayNanos;
+    private final long failureLatencyNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double ewmaNanos;
+    private long stampNanos;
+
+    /**
+     * Instantiates a new PeakEwmaTaskConcurrency
+     *
+     * @param delegate       the delegate
+     * @param decayTime      time for weight of past latency decays to 1/e
+     * @param failureLatency the minimal latency observed when request failed
+     * @param ticker         the ticker
+     */
+    public PeakEwmaTaskConcurrency(TaskConcurrency<T> delegate, Duration decayTime, Duration failureLatency, Ticker ticker) {
+        super(delegate);
+        if (decayTime.isNegative() || decayTime.isZero()) {
+            throw new IllegalArgumentException("decay time must be positive");
+        }
+        this.ticker = ticker;
+        this.decayNanos = decayTime.toNanos();
+        this.failureLatencyNanos = failureLatency.toNanos();
+        this.stampNanos = ticker.read();
+    }
+
+    @Override
+    public void complete(boolean succeed, long latencyNanos) {
+        observe(succeed ? latencyNanos : Math.max(latencyNanos, failureLatencyNanos));
+        super.complete(succeed, latencyNanos);
+    }
+
+    @Override
+    public void complete(int n, long latencyNanos) {
+        if (n > 0) {
+            observe(latencyNanos / (double) n);
+        }
+        super.complete(n, latencyNanos);
+    }
+
+    @Override
+    public void complete(int n, boolean succeed, long latencyNanos) {
+        if (n > 0) {
+            double averageNanos = latencyNanos / (double) n;
+            observe(succeed ? averageNanos : Math.max(averageNanos, failureLatencyNanos));
+        }
+        super.complete(n, succeed, latencyNanos);
+    }
+
+    /**
+     * Gets latency average at the moment
+     *
+     * @return the peak ewma latency in nanos
+     */
+    public double getLatencyNanos() {
+        lock.lock();
+        try {
+            return ewmaNanos * weight(ticker.read());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets cost of the task, (concurrency + 1) * peakEwmaLatency
+     *
+     * @return the cost
+     */
+    public double getCost() {
+        long concurrency = Integer.toUnsignedLong(getConcurrency());
+        double latencyNanos = getLatencyNanos();
+        if (latencyNanos == 0 && concurrency != 0) {
+            return PENALTY + concurrency;
+        }
+        return latencyNanos * (concurrency + 1);
+    }
+
+    @Override
+    public int compareTo(TaskConcurrency o) {
+        if (o instanceof PeakEwmaTaskConcurrency && isSaturated() == o.isSaturated()) {
+            int result = Double.compare(getCost(), ((PeakEwmaTaskConcurrency) o).getCost());
+            //when cost is the same, fallback to concurrency and sub strategy
+            if (result != 0) {
+                return result;
+            }
+        }
+        return super.compareTo(o);
+    }
+
+    private void observe(double latencyNanos) {
+        lock.lock();
+        try {
+            long nowNanos = ticker.read();
+            double w = weight(nowNanos);
+            double decayedNanos = ewmaNanos * w;
+            if (latencyNanos > decayedNanos) {
+                ewmaNanos = latencyNanos;
+            } else {
+                ewmaNanos = decayedNanos + latencyNanos * (1 - w);
+            }
+            stampNanos = Math.max(stampNanos, nowNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double weight(long nowNanos) {
+        long elapsedNanos = Math.max(nowNanos - stampNanos, 0);
+        return Math.exp(-elapsedNanos / decayNanos);
+    }
+}
@@ -8,6 +8,11 @@ import java.time.Duration;
  * @param <T> the type of entity
  */
 public interface TaskConcurrency<T> extends Comparable<TaskConcurrency> {
+    /**
+     * max concurrency of task without limit, equals to max unsigned integer
+     */
+    int UNLIMITED = -1;
+
     /**
      * Gets task.
      *
@@ -29,7 +34,17 @@ public interface TaskConcurrency<T> extends Comparable<TaskConcurrency> {
      * @param latency the latency
      */
     default void complete(boolean succeed, Duration latency) {
-        complete(1, latency);
+        complete(succeed, latency.toNanos());
+    }
+
+    /**
+     * Complete task
+     *
+     * @param succeed      the result
+     * @param latencyNanos the latency in nanoseconds
+     */
+    default void complete(boolean succeed, long latencyNanos) {
+        complete(1, latencyNanos);
     }
 
     /**
@@ -39,13 +54,95 @@ public interface TaskConcurrency<T> extends Comparable<TaskConcurrency> {
      */
     void acquire(int n);
 
+    /**
+     * Acquire task if concurrency limit is not reached
+     *
+     * @return true if acquired
+     */
+    default boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Acquire tasks in batch atomically, if concurrency limit is not exceeded after acquisition
+     *
+     * @param n number of requests
+     * @return true if acquired
+     */
+    boolean tryAcquire(int n);
+
     /**
      * Complete requests in batch
      *
      * @param n        number of requests
      * @param latency total duration
      */
-    void complete(int n, Duration latency);
+    default void complete(int n, Duration latency) {
+        complete(n, latency.toNanos());
+    }
+
+    /**
+     * Complete requests in batch
+     *
+     * @param n            number of requests
+     * @param latencyNanos total duration in nanoseconds
+     */
+    void complete(int n, long latencyNanos);
+
+    /**
+     * Complete requests of the same result in batch, state is updated once for all requests
+     * instead of n times of single completion.
+     *
+     * @param n            number of requests
+     * @param succeed      the result
+     * @param latencyNanos total duration in nanoseconds
+     */
+    default void complete(int n, boolean succeed, long latencyNanos) {
+        if (succeed) {
+            complete(n, latencyNanos);
+            return;
+        }
+        for (int i = 0; i < n; ++i) {
+            complete(false, latencyNanos / n);
+        }
+    }
+
+    /**
+     * Release concurrency of requests without outcome, e.g. requests cancelled before they interact with the entity,
+     * neither result nor latency of the requests is observed
+     *
+     * @param n number of requests
+     */
+    void release(int n);
+
+    /**
+     * Start leases of requests acquired at the same time, requests not completed before lease timeout are reclaimed.
+     * Lease is kept by the start time of requests, so that it's cancelled in the time window it was recorded.
+     *
+     * @param n          number of requests
+     * @param startNanos ticker time in nanoseconds when requests started
+     */
+    default void lease(int n, long startNanos) {
+    }
+
+    /**
+     * Cancel leases of requests completed before lease timeout
+     *
+     * @param n          number of requests
+     * @param startNanos ticker time in nanoseconds when requests started, the same as the leases started with
+     */
+    default void cancelLease(int n, long startNanos) {
+    }
+
+    /**
+     * Whether this is the concurrency state, or decorates it
+     *
+     * @param state the concurrency state
+     * @return true if this is backed by the state
+     */
+    default boolean isBackedBy(TaskConcurrency<?> state) {
+        return this == state;
+    }
 
     /**
      * Gets concurrency.
@@ -54,19 +151,82 @@ public interface TaskConcurrency<T> extends Comparable<TaskConcurrency> {
      */
     int getConcurrency();
 
+    /**
+     * Gets max concurrency, compared as unsigned integer
+     *
+     * @return the max concurrency, {@link #UNLIMITED} if there is no limit
+     */
+    default int getMaxConcurrency() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Sets max concurrency, compared as unsigned integer
+     *
+     * @param maxConcurrency the max concurrency, {@link #UNLIMITED} if there is no limit
+     */
+    void setMaxConcurrency(int maxConcurrency);
+
+    /**
+     * Check if concurrency limit is reached
+     *
+     * @return true if concurrency reached max concurrency
+     */
+    default boolean isSaturated() {
+        return Integer.compareUnsigned(getConcurrency(), getMaxConcurrency()) >= 0;
+    }
+
+    /**
+     * Gets capacity weight of the task, concurrency is compared proportionally to weight
+     *
+     * @return the weight
+     */
+    default int getWeight() {
+        return 1;
+    }
+
     /**
      * prepare state for read
      */
     void syncState();
 
+    /**
+     * compare concurrency / weight of tasks, saturated task is always greater than unsaturated task
+     * concurrency is compared as unsigned integer
+     */
     @Override
     default int compareTo(TaskConcurrency o) {
-        return Integer.compareUnsigned(getConcurrency(), o.getConcurrency());
+        boolean saturated = isSaturated();
+        if (saturated != o.isSaturated()) {
+            return saturated ? 1 : -1;
+        }
+        return Long.compare(Integer.toUnsignedLong(getConcurrency()) * o.getWeight(),
+                Integer.toUnsignedLong(o.getConcurrency()) * getWeight());
     }
 
     interface Builder<B extends Builder> {
         B withLookBackTime(Duration lookBackTime);
-        <T> TaskConcurrency<T> build(T task);
+
+        /**
+         * build TaskConcurrency with weight 1
+         *
+         * @param task the task
+         * @param <T>  the type of task
+         * @return the task concurrency
+         */
+        default <T> TaskConcurrency<T> build(T task) {
+            return build(task, 1);
+        }
+
+        /**
+         * build TaskConcurrency with capacity weight
+         *
+         * @param task   the task
+         * @param weight the capacity weight, must be positive
+         * @param <T>    the type of task
+         * @return the task concurrency
+         */
+        <T> TaskConcurrency<T> build(T task, int weight);
     }
 
     class Noop<T> implements TaskConcurrency<T> {
@@ -87,7 +247,16 @@ public interface TaskConcurrency<T> extends Comparable<TaskConcurrency> {
         }
 
         @Override
-        public void complete(int n, Duration latency) {
+        public boolean tryAcquire(int n) {
+            return true;
+        }
+
+        @Override
+        public void complete(int n, long latencyNanos) {
+        }
+
+        @Override
+        public void release(int n) {
         }
 
         @Override
@@ -95,6 +264,10 @@ public interface TaskConcurrency<T> extends Comparable<TaskConcurrency> {
             return concurrency;
         }
 
+        @Override
+        public void setMaxConcurrency(int maxConcurrency) {
+        }
+
         @Override
         public void syncState() {
         }
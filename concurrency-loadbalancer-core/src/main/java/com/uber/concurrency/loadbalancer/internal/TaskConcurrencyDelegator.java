@@ -2,8 +2,6 @@ package com.uber.concurrency.loadbalancer.internal;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import java.time.Duration;
-
 @SuppressFBWarnings(
         value="EQ_COMPARETO_USE_OBJECT_EQUALS",
         justification="Note: this class has a natural ordering that is inconsistent with equals.")
@@ -22,22 +20,66 @@ public class TaskConcurrencyDelegator<T> implements TaskConcurrency<T> {
         delegate.acquire();
     }
 
-    public void complete(boolean succeed, Duration latency) {
-        delegate.complete(succeed, latency);
+    public void complete(boolean succeed, long latencyNanos) {
+        delegate.complete(succeed, latencyNanos);
     }
 
     public void acquire(int n) {
         delegate.acquire(n);
     }
 
-    public void complete(int n, Duration latency) {
-        delegate.complete(n, latency);
+    public boolean tryAcquire() {
+        return delegate.tryAcquire();
+    }
+
+    public boolean tryAcquire(int n) {
+        return delegate.tryAcquire(n);
+    }
+
+    public void complete(int n, long latencyNanos) {
+        delegate.complete(n, latencyNanos);
+    }
+
+    public void complete(int n, boolean succeed, long latencyNanos) {
+        delegate.complete(n, succeed, latencyNanos);
+    }
+
+    public void release(int n) {
+        delegate.release(n);
+    }
+
+    public void lease(int n, long startNanos) {
+        delegate.lease(n, startNanos);
+    }
+
+    public void cancelLease(int n, long startNanos) {
+        delegate.cancelLease(n, startNanos);
+    }
+
+    public boolean isBackedBy(TaskConcurrency<?> state) {
+        return this == state || delegate.isBackedBy(state);
     }
 
     public int getConcurrency() {
         return delegate.getConcurrency();
     }
 
+    public int getMaxConcurrency() {
+        return delegate.getMaxConcurrency();
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        delegate.setMaxConcurrency(maxConcurrency);
+    }
+
+    public boolean isSaturated() {
+        return delegate.isSaturated();
+    }
+
+    public int getWeight() {
+        return delegate.getWeight();
+    }
+
     public void syncState() {
         delegate.syncState();
     }
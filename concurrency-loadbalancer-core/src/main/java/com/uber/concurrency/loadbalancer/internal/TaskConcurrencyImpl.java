@@ -12,10 +12,26 @@ public class TaskConcurrencyImpl<T> implements TaskConcurrency<T> {
      * The concurrency counter
      */
     protected final AtomicInteger concurrency;
+    /**
+     * The capacity weight
+     */
+    protected final int weight;
+    /**
+     * The concurrency limit
+     */
+    protected volatile int maxConcurrency = UNLIMITED;
 
     protected TaskConcurrencyImpl(T task) {
+        this(task, 1);
+    }
+
+    protected TaskConcurrencyImpl(T task, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
         this.task = task;
         this.concurrency = new AtomicInteger();
+        this.weight = weight;
     }
 
     @Override
@@ -29,7 +45,32 @@ public class TaskConcurrencyImpl<T> implements TaskConcurrency<T> {
     }
 
     @Override
-    public void complete(int n, Duration duration) {
+    public boolean tryAcquire(int n) {
+        while (true) {
+            int current = concurrency.get();
+            int next = current + n;
+            if (Integer.compareUnsigned(next, maxConcurrency) > 0 || Integer.compareUnsigned(next, current) < 0) {
+                return false;
+            }
+            if (concurrency.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void complete(int n, long latencyNanos) {
+        concurrency.addAndGet(-n);
+    }
+
+    @Override
+    public void complete(int n, boolean succeed, long latencyNanos) {
+        //result doesn't make difference to concurrency counter
+        complete(n, latencyNanos);
+    }
+
+    @Override
+    public void release(int n) {
         concurrency.addAndGet(-n);
     }
 
@@ -43,6 +84,21 @@ public class TaskConcurrencyImpl<T> implements TaskConcurrency<T> {
         return concurrency.get();
     }
 
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public int getWeight() {
+        return weight;
+    }
+
     @Override
     public void syncState() {
     }
@@ -60,8 +116,8 @@ public class TaskConcurrencyImpl<T> implements TaskConcurrency<T> {
             return this;
         }
 
-        public <T> TaskConcurrency<T> build(T task) {
-            return new TaskConcurrencyImpl<>(task);
+        public <T> TaskConcurrency<T> build(T task, int weight) {
+            return new TaskConcurrencyImpl<>(task, weight);
         }
     }
 }
@@ -0,0 +1,131 @@
+package com.uber.concurrency.loadbalancer.limit;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Additive increase multiplicative decrease limit.
+ * <p>
+ * Limit is increased by 1 when a request succeeded within timeout and inflight requests reached half of the limit,
+ * limit is multiplied by backoff ratio when a request failed or exceeded timeout.
+ * </p>
+ */
+public class AimdLimit implements LimitAlgorithm {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int limit;
+
+    private AimdLimit(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.timeoutNanos = builder.timeout.toNanos();
+        this.limit = builder.initialLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public void onSample(long latencyNanos, int inflight, boolean dropped) {
+        lock.lock();
+        try {
+            int current = limit;
+            if (dropped || latencyNanos > timeoutNanos) {
+                limit = Math.max(minLimit, (int) (current * backoffRatio));
+            } else if (inflight * 2 >= current) {
+                limit = Math.min(maxLimit, current + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * New builder of AimdLimit
+     *
+     * @return the builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of AimdLimit
+     */
+    public static class Builder implements LimitAlgorithm.Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 1000;
+        private double backoffRatio = 0.9;
+        private Duration timeout = Duration.ofSeconds(5);
+
+        /**
+         * Limit before any sample is observed
+         *
+         * @param initialLimit the initial limit
+         * @return the builder
+         */
+        public Builder withInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Lower and upper bound of the limit
+         *
+         * @param minLimit the min limit, must be positive
+         * @param maxLimit the max limit, must not be less than min limit
+         * @return the builder
+         */
+        public Builder withLimitRange(int minLimit, int maxLimit) {
+            if (minLimit <= 0 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("limit range must be positive and min limit must not exceed max limit");
+            }
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Ratio the limit is multiplied by on overload
+         *
+         * @param backoffRatio the backoff ratio, in range [0.5, 1)
+         * @return the builder
+         */
+        public Builder withBackoffRatio(double backoffRatio) {
+            if (backoffRatio < 0.5 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("backoff ratio must be in range [0.5, 1)");
+            }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Latency above timeout is considered as overload
+         *
+         * @param timeout the timeout
+         * @return the builder
+         */
+        public Builder withTimeout(Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        @Override
+        public AimdLimit build() {
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("initial limit must be within limit range");
+            }
+            return new AimdLimit(this);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.uber.concurrency.loadbalancer.limit;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gradient limit adjusts limit by ratio of long term latency to short term latency.
+ * <p>
+ * Short term and long term latency are exponential moving averages of sample latency with different window size.
+ * When short term latency rises above long term latency, which indicates queueing at downstream,
+ * gradient = tolerance * longLatency / shortLatency drops below 1 and limit is reduced proportionally,
+ * otherwise limit grows by a queue allowance of sqrt(limit).
+ * Failed request is taken as minimal gradient.
+ * New limit is smoothed with the previous limit to avoid oscillation.
+ * </p>
+ * <p>
+ * Limit is not changed when inflight requests are below half of the limit,
+ * since latency of an under-utilized entity says nothing about its capacity.
+ * </p>
+ */
+public class GradientLimit implements LimitAlgorithm {
+    private static final double MIN_GRADIENT = 0.5;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double shortAlpha;
+    private final double longAlpha;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double shortLatencyNanos;
+    private double longLatencyNanos;
+    private double estimatedLimit;
+    private volatile int limit;
+
+    private GradientLimit(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.tolerance = builder.tolerance;
+        this.smoothing = builder.smoothing;
+        this.shortAlpha = 2.0 / (builder.shortWindow + 1);
+        this.longAlpha = 2.0 / (builder.longWindow + 1);
+        this.estimatedLimit = builder.initialLimit;
+        this.limit = builder.initialLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public void onSample(long latencyNanos, int inflight, boolean dropped) {
+        lock.lock();
+        try {
+            double gradient = MIN_GRADIENT;
+            if (!dropped) {
+                if (longLatencyNanos == 0) {
+                    shortLatencyNanos = latencyNanos;
+                    longLatencyNanos = latencyNanos;
+                } else {
+                    shortLatencyNanos += (latencyNanos - shortLatencyNanos) * shortAlpha;
+                    longLatencyNanos += (latencyNanos - longLatencyNanos) * longAlpha;
+                }
+                //long term latency recovers fast after a sustained latency increase,
+                //e.g. when downstream was scaled down
+                if (longLatencyNanos > shortLatencyNanos * 2) {
+                    longLatencyNanos *= 0.95;
+                }
+                if (shortLatencyNanos > 0) {
+                    gradient = Math.max(MIN_GRADIENT,
+                            Math.min(1.0, tolerance * longLatencyNanos / shortLatencyNanos));
+                } else {
+                    gradient = 1.0;
+                }
+            }
+            if (!dropped && inflight * 2 < estimatedLimit) {
+                return;
+            }
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+            limit = (int) estimatedLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * New builder of GradientLimit
+     *
+     * @return the builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of GradientLimit
+     */
+    public static class Builder implements LimitAlgorithm.Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 1000;
+        private double tolerance = 1.5;
+        private double smoothing = 0.2;
+        private int shortWindow = 10;
+        private int longWindow = 600;
+
+        /**
+         * Limit before any sample is observed
+         *
+         * @param initialLimit the initial limit
+         * @return the builder
+         */
+        public Builder withInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Lower and upper bound of the limit
+         *
+         * @param minLimit the min limit, must be positive
+         * @param maxLimit the max limit, must not be less than min limit
+         * @return the builder
+         */
+        public Builder withLimitRange(int minLimit, int maxLimit) {
+            if (minLimit <= 0 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("limit range must be positive and min limit must not exceed max limit");
+            }
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Tolerance of short term latency over long term latency before limit is reduced
+         *
+         * @param tolerance the tolerance, must not be less than 1
+         * @return the builder
+         */
+        public Builder withTolerance(double tolerance) {
+            if (tolerance < 1) {
+                throw new IllegalArgumentException("tolerance must not be less than 1");
+            }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Weight of new limit blended into previous limit
+         *
+         * @param smoothing the smoothing factor, in range (0, 1]
+         * @return the builder
+         */
+        public Builder withSmoothing(double smoothing) {
+            if (smoothing <= 0 || smoothing > 1) {
+                throw new IllegalArgumentException("smoothing must be in range (0, 1]");
+            }
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        /**
+         * Number of samples averaged by short term and long term latency
+         *
+         * @param shortWindow the short window, must be positive
+         * @param longWindow  the long window, must be greater than short window
+         * @return the builder
+         */
+        public Builder withWindows(int shortWindow, int longWindow) {
+            if (shortWindow <= 0 || longWindow <= shortWindow) {
+                throw new IllegalArgumentException("windows must be positive and long window must be greater than short window");
+            }
+            this.shortWindow = shortWindow;
+            this.longWindow = longWindow;
+            return this;
+        }
+
+        @Override
+        public GradientLimit build() {
+            if (initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("initial limit must be within limit range");
+            }
+            return new GradientLimit(this);
+        }
+    }
+}
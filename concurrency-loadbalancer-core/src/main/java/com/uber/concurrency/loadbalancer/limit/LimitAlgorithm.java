@@ -0,0 +1,47 @@
+package com.uber.concurrency.loadbalancer.limit;
+
+import java.time.Duration;
+
+/**
+ * LimitAlgorithm learns concurrency limit of an entity from samples of completed requests
+ */
+public interface LimitAlgorithm {
+    /**
+     * Gets current concurrency limit
+     *
+     * @return the limit
+     */
+    int getLimit();
+
+    /**
+     * Update limit with sample of a completed request
+     *
+     * @param latency  the request latency
+     * @param inflight number of inflight requests when the request completed, including itself
+     * @param dropped  true if the request failed, which indicates overload
+     */
+    default void onSample(Duration latency, int inflight, boolean dropped) {
+        onSample(latency.toNanos(), inflight, dropped);
+    }
+
+    /**
+     * Update limit with sample of a completed request
+     *
+     * @param latencyNanos the request latency in nanoseconds
+     * @param inflight     number of inflight requests when the request completed, including itself
+     * @param dropped      true if the request failed, which indicates overload
+     */
+    void onSample(long latencyNanos, int inflight, boolean dropped);
+
+    /**
+     * Builder of LimitAlgorithm, build a new instance for each entity
+     */
+    interface Builder {
+        /**
+         * Build a LimitAlgorithm
+         *
+         * @return the limit algorithm
+         */
+        LimitAlgorithm build();
+    }
+}
@@ -5,6 +5,7 @@ import com.google.common.base.Ticker;
 
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * LifespanTracker tracks lifespan of numbers being added. a number is considering dead/purgeable
@@ -26,6 +27,7 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 class LifespanTracker {
     private final Duration maxAge;
+    private final long maxAgeNanos;
     private final int totalWindows;
     private final long windowNanos;
     private final Window[] windows;
@@ -54,6 +56,7 @@ class LifespanTracker {
             throw new IllegalArgumentException("duration over 1000days is not supported");
         }
         this.maxAge = maxAge;
+        this.maxAgeNanos = maxAge.toNanos();
         this.totalWindows = nWindows;
         this.ticker = ticker;
         this.windowNanos = maxAge.dividedBy(nWindows).toNanos();
@@ -72,18 +75,58 @@ class LifespanTracker {
      * @return nanoSecond of lower limit when the number is purgable
      */
     public long add(long n, Duration timeToLive) {
-        if (maxAge.minus(timeToLive).isNegative()) {
-            timeToLive = maxAge;
-        }
+        //cap before conversion, so that duration out of range of long nanos doesn't overflow
         if (timeToLive.isNegative()) {
-            timeToLive = Duration.ZERO;
+            return add(n, 0L);
+        }
+        return add(n, maxAge.compareTo(timeToLive) < 0 ? maxAgeNanos : timeToLive.toNanos());
+    }
+
+    /**
+     * add number to tracker with timeToLive in nanoseconds
+     * Aged number became purgeable by function purge()
+     *
+     * @param n               the number to add
+     * @param timeToLiveNanos the time to live in nanoseconds, will be rounded to zero when negative
+     * @return nanoSecond of lower limit when the number is purgable
+     */
+    public long add(long n, long timeToLiveNanos) {
+        if (timeToLiveNanos > maxAgeNanos) {
+            timeToLiveNanos = maxAgeNanos;
+        }
+        if (timeToLiveNanos < 0) {
+            timeToLiveNanos = 0;
         }
         long nowNanos = ticker.read();
+        return add(n, nowNanos, nowNanos + timeToLiveNanos);
+    }
+
+    /**
+     * add number to tracker, purgeable at the deadline, so that numbers added with the same deadline
+     * land in the same window regardless of when they are added
+     *
+     * @param n             the number to add
+     * @param deadlineNanos ticker time in nanoseconds when the number is purgeable,
+     *                      will be rounded to now when passed, and to now + maxAge when beyond
+     * @return nanoSecond of lower limit when the number is purgable
+     */
+    public long addAt(long n, long deadlineNanos) {
+        long nowNanos = ticker.read();
+        if (deadlineNanos - nowNanos > maxAgeNanos) {
+            deadlineNanos = nowNanos + maxAgeNanos;
+        }
+        if (deadlineNanos - nowNanos < 0) {
+            deadlineNanos = nowNanos;
+        }
+        return add(n, nowNanos, deadlineNanos);
+    }
+
+    private long add(long n, long nowNanos, long deadlineNanos) {
         if (windowNanos == 0) {
             toBePurged.addAndGet(n);
             return nowNanos;
         }
-        long windowId = (nowNanos + timeToLive.toNanos()) / windowNanos;
+        long windowId = deadlineNanos / windowNanos;
         long windowUpperNano = (windowId + 1) * windowNanos;
         //windowId could be negative
         int index = (int) (((windowId % totalWindows) + totalWindows) % totalWindows);
@@ -91,12 +134,15 @@ class LifespanTracker {
         Window window = windows[index];
 
         if (window.windowId < windowId) {
-            synchronized (window) {
+            window.lock.lock();
+            try {
                 if (window.windowId < windowId) {
                     toBePurged.addAndGet(window.count.getAndSet(n));
                     window.windowId = windowId;
                     return windowUpperNano;
                 }
+            } finally {
+                window.lock.unlock();
             }
         }
         if (window.windowId > windowId) {
@@ -154,6 +200,15 @@ class LifespanTracker {
         return maxAge;
     }
 
+    /**
+     * Gets max duration in nanos.
+     *
+     * @return the max duration in nanos
+     */
+    protected long getMaxAgeNanos() {
+        return maxAgeNanos;
+    }
+
     /**
      * Gets total number of windows.
      *
@@ -197,5 +252,10 @@ class LifespanTracker {
          * the count can be negative
          */
         AtomicLong count = new AtomicLong();
+
+        /**
+         * The lock to roll the window over, a park based lock doesn't pin virtual threads to carriers like monitor.
+         */
+        final ReentrantLock lock = new ReentrantLock();
     }
 }
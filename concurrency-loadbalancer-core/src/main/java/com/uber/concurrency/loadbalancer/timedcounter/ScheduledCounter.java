@@ -4,6 +4,7 @@ import com.google.common.base.Ticker;
 
 import java.time.Duration;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * ScheduledCounter supports delayed counting.
@@ -18,6 +19,16 @@ public interface ScheduledCounter {
      */
     void schedule(long n, Duration delay);
 
+    /**
+     * delay count n for period delay in nanoseconds
+     *
+     * @param n          the n count to add
+     * @param delayNanos the delay before counting in nanoseconds
+     */
+    default void schedule(long n, long delayNanos) {
+        schedule(n, Duration.ofNanos(delayNanos));
+    }
+
 
     /**
      * delay count n for max period
@@ -45,6 +56,16 @@ public interface ScheduledCounter {
          */
         C of(Consumer<Long> consumer);
 
+        /**
+         * create instance of ScheduledCounter, and have count consumed by primitive consumer without boxing
+         *
+         * @param consumer the consumer
+         * @return the c
+         */
+        default C ofLong(LongConsumer consumer) {
+            return of(consumer == null ? null : (Consumer<Long>) consumer::accept);
+        }
+
         /**
          * Gets max delay.
          *
@@ -21,6 +21,16 @@ public interface TimedCounter {
      */
     void add(long n, Duration duration);
 
+    /**
+     * add count with specific sustain period in nanoseconds
+     *
+     * @param n             the value
+     * @param durationNanos sustain period of value in nanoseconds, capped by maximum sustain period
+     */
+    default void add(long n, long durationNanos) {
+        add(n, Duration.ofNanos(durationNanos));
+    }
+
     /**
      * Check and dropped matured count
      */
@@ -7,6 +7,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * WindowScheduledCounter is a counter support delayed add operation.
@@ -41,7 +42,7 @@ import java.util.function.Consumer;
 @ThreadSafe
 public class WindowScheduledCounter implements ScheduledCounter {
     final LifespanTracker lifespanTracker;
-    private final Consumer<Long> consumer;
+    private final LongConsumer consumer;
     private final Ticker ticker;
     private final AtomicLong expiredCount;
 
@@ -52,6 +53,16 @@ public class WindowScheduledCounter implements ScheduledCounter {
      * @param consumer         the count consumer
      */
     WindowScheduledCounter(LifespanTracker lifespanTracker, Consumer<Long> consumer) {
+        this(consumer == null ? null : (LongConsumer) consumer::accept, lifespanTracker);
+    }
+
+    /**
+     * Instantiates a new Scheduled counter with primitive count consumer.
+     *
+     * @param consumer         the count consumer
+     * @param lifespanTracker the lifespan tracker
+     */
+    private WindowScheduledCounter(LongConsumer consumer, LifespanTracker lifespanTracker) {
         this.lifespanTracker = lifespanTracker;
         this.consumer = consumer;
         this.ticker = lifespanTracker.getTicker();
@@ -69,17 +80,43 @@ public class WindowScheduledCounter implements ScheduledCounter {
      */
     @Override
     public void schedule(long n, Duration delay) {
-        internalSchedule(n, delay);
+        pushIfMatured(lifespanTracker.add(n, delay));
+    }
+
+    /**
+     * Delay counter add operation, the same as {@link #schedule(long, Duration)} with delay in nanoseconds
+     *
+     * @param n          the count to add
+     * @param delayNanos time to wait before feed the count to consumer in nanoseconds
+     */
+    @Override
+    public void schedule(long n, long delayNanos) {
+        pushIfMatured(lifespanTracker.add(n, delayNanos));
+    }
+
+    /**
+     * Delay counter add operation to the deadline, counts scheduled with the same deadline
+     * are feed to consumer together, regardless of when they are scheduled.
+     * Deadline is limited by max age of ScheduledCounter from now, and a passed deadline is rounded to now
+     *
+     * @param n             the count to add
+     * @param deadlineNanos ticker time in nanoseconds to feed the count to consumer
+     */
+    public void scheduleAt(long n, long deadlineNanos) {
+        pushIfMatured(lifespanTracker.addAt(n, deadlineNanos));
     }
 
     @Override
     public void schedule(long n) {
-        internalSchedule(n, lifespanTracker.getMaxAge());
+        pushIfMatured(lifespanTracker.add(n, lifespanTracker.getMaxAgeNanos()));
     }
 
     @VisibleForTesting
     protected long internalSchedule(long n, Duration delay) {
-        long nanoTimestamp = lifespanTracker.add(n, delay);
+        return pushIfMatured(lifespanTracker.add(n, delay));
+    }
+
+    private long pushIfMatured(long nanoTimestamp) {
         if (nanoTimestamp - ticker.read() <= 0) {
             tryPush();
         }
@@ -170,7 +207,18 @@ public class WindowScheduledCounter implements ScheduledCounter {
          * @return the scheduled counter
          */
         public WindowScheduledCounter of(Consumer<Long> consumer) {
-            return new WindowScheduledCounter(new LifespanTracker(maxDelay, numWindows, ticker), consumer);
+            return ofLong(consumer == null ? null : (LongConsumer) consumer::accept);
+        }
+
+        /**
+         * Build instance of ScheduledCounter with primitive consumer
+         *
+         * @param consumer the consumer
+         * @return the scheduled counter
+         */
+        @Override
+        public WindowScheduledCounter ofLong(LongConsumer consumer) {
+            return new WindowScheduledCounter(consumer, new LifespanTracker(maxDelay, numWindows, ticker));
         }
     }
 }
@@ -24,6 +24,12 @@ public class WindowTimedCounter implements TimedCounter {
         this.scheduledCounter.schedule(-n, duration);
     }
 
+    @Override
+    public void add(long n, long durationNanos) {
+        this.value.addAndGet(n);
+        this.scheduledCounter.schedule(-n, durationNanos);
+    }
+
     @Override
     public void check() {
         scheduledCounter.check();
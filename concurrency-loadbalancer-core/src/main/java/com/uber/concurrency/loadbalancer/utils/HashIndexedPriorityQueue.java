@@ -103,7 +103,9 @@ public class HashIndexedPriorityQueue<E> extends AbstractQueue<E> implements Set
         int index = indexOf(e);
         if (index != -1) {
             siftUp(index, e); // sift up if smaller than parent
-            siftDown(index, e); // sift down if bigger than child
+            if (entityList.get(index) == e) {
+                siftDown(index, e); // sift down if bigger than child, unless it has moved up
+            }
         } else {
             index = entityList.size();
             entityList.add(e);
@@ -0,0 +1,104 @@
+package com.uber.concurrency.loadbalancer.utils;
+
+/**
+ * Murmur3 hash of strings, compatible with Guava's murmur3_128 so that hashes are stable across processes
+ */
+public final class Murmur3 {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() {
+    }
+
+    /**
+     * murmur3 x64 128-bit hash of UTF-8 bytes of the string with seed 0, lower 64 bits,
+     * the same as {@code Hashing.murmur3_128().hashString(s, UTF_8).asLong()} without allocating a hasher or byte array.
+     * Unpaired surrogate is encoded as '?', the same as {@link String#getBytes(java.nio.charset.Charset)}.
+     *
+     * @param s the string
+     * @return the hash
+     */
+    public static long hash64(CharSequence s) {
+        long h1 = 0;
+        long h2 = 0;
+        long k1 = 0;
+        long k2 = 0;
+        int position = 0;
+        long length = 0;
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            //UTF-8 bytes of the char packed into an int in order, lowest byte first
+            int bytes;
+            int n;
+            if (c < 0x80) {
+                bytes = c;
+                n = 1;
+            } else if (c < 0x800) {
+                bytes = (0xc0 | c >>> 6) | (0x80 | c & 0x3f) << 8;
+                n = 2;
+            } else if (!Character.isSurrogate(c)) {
+                bytes = (0xe0 | c >>> 12) | (0x80 | c >>> 6 & 0x3f) << 8 | (0x80 | c & 0x3f) << 16;
+                n = 3;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                bytes = (0xf0 | codePoint >>> 18) | (0x80 | codePoint >>> 12 & 0x3f) << 8
+                        | (0x80 | codePoint >>> 6 & 0x3f) << 16 | (0x80 | codePoint & 0x3f) << 24;
+                n = 4;
+            } else {
+                bytes = '?';
+                n = 1;
+            }
+            for (int j = 0; j < n; ++j) {
+                long b = (bytes >>> (j << 3)) & 0xffL;
+                if (position < 8) {
+                    k1 |= b << (position << 3);
+                } else {
+                    k2 |= b << ((position - 8) << 3);
+                }
+                if (++position == 16) {
+                    h1 ^= mixK1(k1);
+                    h1 = Long.rotateLeft(h1, 27) + h2;
+                    h1 = h1 * 5 + 0x52dce729;
+                    h2 ^= mixK2(k2);
+                    h2 = Long.rotateLeft(h2, 31) + h1;
+                    h2 = h2 * 5 + 0x38495ab5;
+                    k1 = 0;
+                    k2 = 0;
+                    position = 0;
+                }
+            }
+            length += n;
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
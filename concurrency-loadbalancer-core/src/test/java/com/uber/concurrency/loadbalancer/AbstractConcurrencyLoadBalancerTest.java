@@ -1,6 +1,8 @@
 package com.uber.concurrency.loadbalancer;
 
 import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyImpl;
 import com.uber.concurrency.loadbalancer.utils.WritableTicker;
 import org.junit.Assert;
 import org.junit.Before;
@@ -92,6 +94,76 @@ public class AbstractConcurrencyLoadBalancerTest {
         Assert.assertNotEquals("", metrics.requestCOV(),  0, 0.0001);
     }
 
+    @Test
+    public void testWaterFill() {
+        List<TaskConcurrency<String>> taskConcurrencies = new ArrayList<>();
+        for (String task : Arrays.asList("a", "b", "c")) {
+            taskConcurrencies.add(TaskConcurrencyImpl.newBuilder().build(task));
+        }
+        taskConcurrencies.get(0).acquire(5);
+        taskConcurrencies.get(1).acquire(2);
+
+        //least concurrent entities are filled up to the level of the next one first
+        int[] plan = AbstractConcurrencyLoadBalancer.waterFill(taskConcurrencies, 3);
+        Assert.assertArrayEquals(new int[]{0, 0, 3}, plan);
+
+        //then requests are spread evenly
+        plan = AbstractConcurrencyLoadBalancer.waterFill(taskConcurrencies, 14);
+        Assert.assertEquals(14, Arrays.stream(plan).sum());
+        for (int i = 0; i < plan.length; ++i) {
+            Assert.assertEquals(7, taskConcurrencies.get(i).getConcurrency() + plan[i]);
+        }
+    }
+
+    @Test
+    public void testWaterFillWeighted() {
+        List<TaskConcurrency<String>> taskConcurrencies = new ArrayList<>();
+        taskConcurrencies.add(TaskConcurrencyImpl.newBuilder().build("a", 1));
+        taskConcurrencies.add(TaskConcurrencyImpl.newBuilder().build("b", 3));
+
+        //requests are distributed proportionally to weight
+        int[] plan = AbstractConcurrencyLoadBalancer.waterFill(taskConcurrencies, 400);
+        Assert.assertEquals(100, plan[0], 1);
+        Assert.assertEquals(300, plan[1], 1);
+        Assert.assertEquals(400, plan[0] + plan[1]);
+    }
+
+    @Test
+    public void testWaterFillMaxConcurrency() {
+        List<TaskConcurrency<String>> taskConcurrencies = new ArrayList<>();
+        for (String task : Arrays.asList("a", "b", "c")) {
+            taskConcurrencies.add(TaskConcurrencyImpl.newBuilder().build(task));
+        }
+        taskConcurrencies.get(0).setMaxConcurrency(2);
+        taskConcurrencies.get(1).setMaxConcurrency(4);
+        taskConcurrencies.get(2).setMaxConcurrency(0);
+
+        //capacity is capped by max concurrency
+        int[] plan = AbstractConcurrencyLoadBalancer.waterFill(taskConcurrencies, 10);
+        Assert.assertArrayEquals(new int[]{2, 4, 0}, plan);
+    }
+
+    @Test
+    public void testNextBatchFallback() {
+        //entities are not ordered by concurrency, requests are selected one by one
+        BatchCompletableTask<Integer> batch = testLoadBalancer.nextBatch(10);
+        Assert.assertEquals(10, batch.getCount());
+        int count = 0;
+        for (int i = 0; i < batch.size(); ++i) {
+            count += batch.getCount(i);
+            Assert.assertTrue(tasks.contains(batch.getTask(i)));
+        }
+        Assert.assertEquals(10, count);
+        Assert.assertEquals(1, batch.complete(0, 1, true));
+        Assert.assertEquals(9, batch.complete(true));
+        Assert.assertEquals(0, batch.complete(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNextBatchNonPositive() {
+        testLoadBalancer.nextBatch(0);
+    }
+
     private static class TestLoadBalancer<T> extends AbstractConcurrencyLoadBalancer<T> {
         Ticker ticker;
         List<T> tasks;
@@ -0,0 +1,228 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.internal.CountingTaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyDelegator;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyImpl;
+import com.uber.concurrency.loadbalancer.utils.WritableTicker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ApertureConcurrencyLoadBalancerTest {
+    private static final List<String> ENTRIES = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 20; ++i) {
+            ENTRIES.add("task" + i);
+        }
+    }
+
+    @Test
+    public void testZeroTask() {
+        ApertureConcurrencyLoadBalancer<String> loadBalancer = ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        Assert.assertNull(loadBalancer.next());
+    }
+
+    @Test
+    public void testDeterministicSubset() {
+        //apertures of 4 clients cover all tasks evenly
+        Map<String, Integer> coverage = new HashMap<>();
+        for (int client = 0; client < 4; ++client) {
+            ApertureConcurrencyLoadBalancer<String> loadBalancer = ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                    .withTasks(ENTRIES)
+                    .withClientIndex(client, 4)
+                    .withApertureRange(1, 20)
+                    .build();
+            Assert.assertEquals(5, loadBalancer.getApertureSize());
+
+            Set<String> result = new HashSet<>();
+            for (int i = 0; i < 100; ++i) {
+                CompletableTask<String> ct = loadBalancer.next();
+                result.add(ct.getTask());
+                ct.complete();
+            }
+            Assert.assertEquals(5, result.size());
+            for (String task : result) {
+                coverage.merge(task, 1, Integer::sum);
+            }
+        }
+        Assert.assertEquals(ENTRIES.size(), coverage.size());
+        for (int count : coverage.values()) {
+            Assert.assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void testResize() {
+        WritableTicker testTicker = new WritableTicker();
+        ApertureConcurrencyLoadBalancer<String> loadBalancer = ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withClientIndex(0, 4)
+                .withApertureRange(5, 20)
+                .withTargetLoad(1, 2)
+                .withTicker(testTicker)
+                .build();
+
+        //load of 3 per task grows aperture to bring load to 1.5
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < 15; ++i) {
+            completableTasks.add(loadBalancer.next());
+        }
+        testTicker.add(Duration.ofSeconds(2));
+        completableTasks.add(loadBalancer.next());
+        Assert.assertEquals(10, loadBalancer.getApertureSize());
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < 20; ++i) {
+            CompletableTask<String> ct = loadBalancer.next();
+            result.add(ct.getTask());
+            completableTasks.add(ct);
+        }
+        Assert.assertTrue(result.size() > 5);
+
+        //aperture shrinks back when load is gone
+        for (CompletableTask<String> ct : completableTasks) {
+            ct.complete();
+        }
+        testTicker.add(Duration.ofSeconds(2));
+        loadBalancer.next().complete();
+        Assert.assertEquals(5, loadBalancer.getApertureSize());
+    }
+
+    @Test
+    public void testShrinkWithOutstandingRequest() {
+        WritableTicker testTicker = new WritableTicker();
+        AtomicLong totalConcurrency = new AtomicLong();
+        ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<String> map;
+        map = new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(
+                t -> new CountingTaskConcurrency<>(TaskConcurrencyImpl.newBuilder().build(t), totalConcurrency));
+        ApertureConcurrencyLoadBalancer<String> loadBalancer = new ApertureConcurrencyLoadBalancer<>(ENTRIES,
+                map, totalConcurrency, ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withClientIndex(0, 4)
+                .withApertureRange(5, 20)
+                .withTargetLoad(1, 2), testTicker);
+
+        //load of 3 per task grows aperture to task0 ~ task9
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < 15; ++i) {
+            completableTasks.add(loadBalancer.next());
+        }
+        testTicker.add(Duration.ofSeconds(2));
+        completableTasks.add(loadBalancer.next());
+        Assert.assertEquals(10, loadBalancer.getApertureSize());
+        CompletableTask<String> outstanding = loadBalancer.next();
+        while (ENTRIES.indexOf(outstanding.getTask()) < 5) {
+            completableTasks.add(outstanding);
+            outstanding = loadBalancer.next();
+        }
+
+        //entity left aperture keeps its state while the request is outstanding
+        for (CompletableTask<String> ct : completableTasks) {
+            ct.complete();
+        }
+        testTicker.add(Duration.ofSeconds(2));
+        loadBalancer.next().complete();
+        Assert.assertEquals(5, loadBalancer.getApertureSize());
+        Assert.assertEquals(1, map.get(outstanding.getTask()).getConcurrency());
+        for (int i = 5; i < 10; ++i) {
+            if (!ENTRIES.get(i).equals(outstanding.getTask())) {
+                Assert.assertNull(map.get(ENTRIES.get(i)));
+            }
+        }
+
+        //and is released on completion
+        outstanding.complete();
+        Assert.assertNull(map.get(outstanding.getTask()));
+    }
+
+    @Test
+    public void testStateReleasedAfterSelection() {
+        AtomicBoolean releaseOnAcquire = new AtomicBoolean(true);
+        AtomicReference<ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<String>> map = new AtomicReference<>();
+        map.set(new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(
+                t -> new TaskConcurrencyDelegator<String>(TaskConcurrencyImpl.newBuilder().build(t)) {
+                    @Override
+                    public boolean tryAcquire() {
+                        //state is released by resize of other thread after it was selected
+                        if (releaseOnAcquire.getAndSet(false)) {
+                            map.get().removeIfIdle(getTask());
+                        }
+                        return super.tryAcquire();
+                    }
+                }));
+        ApertureConcurrencyLoadBalancer<String> loadBalancer = new ApertureConcurrencyLoadBalancer<>(ENTRIES,
+                map.get(), new AtomicLong(), ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withApertureRange(1, 1), Ticker.systemTicker());
+
+        //orphaned state is given back, request is acquired on the state kept by the map
+        CompletableTask<String> ct = loadBalancer.next();
+        Assert.assertEquals(1, map.get().apply(ct.getTask()).getConcurrency());
+        Assert.assertTrue(ct.complete());
+        Assert.assertEquals(0, map.get().apply(ct.getTask()).getConcurrency());
+    }
+
+    @Test
+    public void testMetricsOfAperture() {
+        WritableTicker testTicker = new WritableTicker();
+        ApertureConcurrencyLoadBalancer<String> loadBalancer = ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withApertureRange(1, 1)
+                .withTicker(testTicker)
+                .build();
+
+        testTicker.add(Duration.ofSeconds(6));
+        for (int i = 0; i < 100; ++i) {
+            loadBalancer.next().complete();
+        }
+        testTicker.add(Duration.ofSeconds(5));
+        //entities out of aperture are not tracked, so they don't skew request COV
+        Assert.assertEquals(0, loadBalancer.getMetrics().requestCOV(), 0.0001);
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ApertureConcurrencyLoadBalancer<String> loadBalancer = ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withClientIndex(1, 4)
+                .withApertureRange(2, 2)
+                .withMaxConcurrency(1)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        result.add(loadBalancer.next().getTask());
+        result.add(loadBalancer.next().getTask());
+        Assert.assertEquals(2, result.size());
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidClientIndex() {
+        ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withClientIndex(4, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTargetLoad() {
+        ApertureConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTargetLoad(2, 1);
+    }
+}
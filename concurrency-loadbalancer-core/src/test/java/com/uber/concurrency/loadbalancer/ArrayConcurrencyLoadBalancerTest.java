@@ -1,6 +1,9 @@
 package com.uber.concurrency.loadbalancer;
 
+import com.google.common.base.Ticker;
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyDelegator;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyImpl;
 import com.uber.concurrency.loadbalancer.utils.WritableTicker;
 import org.junit.Assert;
 import org.junit.Test;
@@ -18,13 +21,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(WeightedSelector.class)
@@ -224,6 +232,33 @@ public class ArrayConcurrencyLoadBalancerTest {
         Assert.assertEquals(count, sum);
     }
 
+    @Test
+    public void testNextBatch() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d"); add("e"); add("f"); add("g"); add("h");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withGroupSize(3)
+                .build();
+
+        //batch spreads across all groups evenly
+        BatchCompletableTask<String> batch = loadBalancer.nextBatch(8000);
+        Assert.assertEquals(entries.size(), batch.size());
+        for (int i = 0; i < batch.size(); ++i) {
+            Assert.assertEquals(1000, batch.getCount(i));
+        }
+        Assert.assertEquals(8000, batch.complete());
+
+        //single selection keeps working after batch completion, and batch left no concurrency behind
+        for (int i = 0; i < 2 * entries.size(); ++i) {
+            Assert.assertNotNull(loadBalancer.next());
+        }
+        int concurrency = 0;
+        for (TaskConcurrency<String> taskConcurrency : loadBalancer.getTaskConcurrencies()) {
+            concurrency += taskConcurrency.getConcurrency();
+        }
+        Assert.assertEquals(2 * entries.size(), concurrency);
+    }
+
     @Test
     public void testUpdateTasks() {
         PowerMockito.mockStatic(WeightedSelector.class);
@@ -247,6 +282,44 @@ public class ArrayConcurrencyLoadBalancerTest {
         }
     }
 
+    @Test
+    public void testWeightedSelector() {
+        WeightedSelector<String> selector = WeightedSelector.<String>newBuilder()
+                .add("a", 5)
+                .add("b", 0)
+                .add("c", 3)
+                .add("d", 2)
+                .build();
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int count = 100000;
+        for (int i = 0; i < count; ++i) {
+            keyFrequency.merge(selector.select(), 1, Integer::sum);
+        }
+        Assert.assertNull(keyFrequency.get("b"));
+        Assert.assertEquals(0.5, keyFrequency.get("a") / (double) count, 0.01);
+        Assert.assertEquals(0.3, keyFrequency.get("c") / (double) count, 0.01);
+        Assert.assertEquals(0.2, keyFrequency.get("d") / (double) count, 0.01);
+
+        //weights follow update at runtime
+        selector.setWeight(0, 0);
+        selector.setWeight(1, 5);
+        Assert.assertEquals(5, selector.getWeight(1));
+        keyFrequency.clear();
+        for (int i = 0; i < count; ++i) {
+            keyFrequency.merge(selector.select(), 1, Integer::sum);
+        }
+        Assert.assertNull(keyFrequency.get("a"));
+        Assert.assertEquals(0.5, keyFrequency.get("b") / (double) count, 0.01);
+        Assert.assertEquals(0.3, keyFrequency.get("c") / (double) count, 0.01);
+        Assert.assertEquals(0.2, keyFrequency.get("d") / (double) count, 0.01);
+
+        //no entity to select when all weights are 0
+        for (int i = 0; i < 4; ++i) {
+            selector.setWeight(i, 0);
+        }
+        Assert.assertNull(selector.select());
+    }
+
     @Test
     public void testShareTaskConcurrencyMap() throws IOException {
         ByteArrayOutputStream os1 = new ByteArrayOutputStream();
@@ -278,6 +351,217 @@ public class ArrayConcurrencyLoadBalancerTest {
         Assert.assertEquals("payload", new String(os2.toByteArray()));
     }
 
+    @Test
+    public void testWeightedTasks() {
+        Map<String, Integer> taskWeights = new LinkedHashMap<>();
+        taskWeights.put("a", 1);
+        taskWeights.put("b", 3);
+
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights)
+                .build();
+
+        //concurrency is distributed proportionally to weight
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(2, keyFrequency.get("a").intValue());
+        Assert.assertEquals(6, keyFrequency.get("b").intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveWeight() {
+        Map<String, Integer> taskWeights = new HashMap<>();
+        taskWeights.put("a", 0);
+        ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights);
+    }
+
+    @Test
+    public void testSetWeight() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withGroupSize(1)
+                .build();
+        Assert.assertEquals(1, loadBalancer.getWeight("a"));
+
+        //group of each entity is selected proportionally to weight set at runtime
+        loadBalancer.setWeight("b", 9);
+        Assert.assertEquals(9, loadBalancer.getWeight("b"));
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int count = 100000;
+        for (int i = 0; i < count; ++i) {
+            CompletableTask<String> completableTask = loadBalancer.next();
+            keyFrequency.merge(completableTask.getTask(), 1, Integer::sum);
+            completableTask.complete();
+        }
+        Assert.assertEquals(0.1, keyFrequency.get("a") / (double) count, 0.01);
+        Assert.assertEquals(0.9, keyFrequency.get("b") / (double) count, 0.01);
+
+        //weight is kept when entity groups are rebuilt
+        loadBalancer.addTask("c");
+        keyFrequency.clear();
+        for (int i = 0; i < count; ++i) {
+            CompletableTask<String> completableTask = loadBalancer.next();
+            keyFrequency.merge(completableTask.getTask(), 1, Integer::sum);
+            completableTask.complete();
+        }
+        Assert.assertEquals(0.9 / 1.1, keyFrequency.get("b") / (double) count, 0.01);
+
+        //weight is reset once entity is removed
+        loadBalancer.removeTask("b");
+        loadBalancer.addTask("b");
+        Assert.assertEquals(1, loadBalancer.getWeight("b"));
+    }
+
+    @Test
+    public void testSetWeightOfGroup() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");add("d");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withGroupSize(2)
+                .build();
+
+        //groups {a, c} and {b, d} are weighted 2 and 8
+        loadBalancer.setWeight("b", 4);
+        loadBalancer.setWeight("d", 4);
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int count = 100000;
+        for (int i = 0; i < count; ++i) {
+            CompletableTask<String> completableTask = loadBalancer.next();
+            keyFrequency.merge(completableTask.getTask(), 1, Integer::sum);
+            completableTask.complete();
+        }
+        Assert.assertEquals(0.2, (keyFrequency.get("a") + keyFrequency.get("c")) / (double) count, 0.01);
+        Assert.assertEquals(0.8, (keyFrequency.get("b") + keyFrequency.get("d")) / (double) count, 0.01);
+    }
+
+    @Test
+    public void testSetWeightInGroup() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //entities of the same group are compared by concurrency / weight set at runtime
+        loadBalancer.setWeight("b", 3);
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(2, keyFrequency.get("a").intValue());
+        Assert.assertEquals(6, keyFrequency.get("b").intValue());
+
+        //weight set to entity without weight
+        loadBalancer.setWeight("a", 5);
+        loadBalancer.setWeight("b", 1);
+        keyFrequency.clear();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(8, keyFrequency.get("a").intValue());
+        Assert.assertNull(keyFrequency.get("b"));
+    }
+
+    @Test
+    public void testGetWeightOfUnknownTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        ArrayConcurrencyLoadBalancer.Builder<String> builder = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries);
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = builder.build();
+        try {
+            loadBalancer.getWeight("b");
+            Assert.fail("expect IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        //concurrency state is not built for unknown task
+        Assert.assertNull(((ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<String>) builder.getTaskConcurrencyMap())
+                .get("b"));
+    }
+
+    @Test
+    public void testSetInvalidWeight() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        try {
+            loadBalancer.setWeight("a", 0);
+            Assert.fail("expect IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            loadBalancer.setWeight("b", 1);
+            Assert.fail("expect IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertEquals(1, loadBalancer.getWeight("a"));
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        Map<String, Integer> maxConcurrencies = new HashMap<>();
+        maxConcurrencies.put("a", 1);
+
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(2)
+                .withMaxConcurrency(maxConcurrencies)
+                .build();
+
+        //task reached max concurrency is skipped
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            keyFrequency.merge(task.getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(1, keyFrequency.get("a").intValue());
+        Assert.assertEquals(2, keyFrequency.get("b").intValue());
+
+        //all tasks reached max concurrency
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        //capacity is released on completion
+        completableTasks.get(0).complete();
+        Assert.assertEquals(completableTasks.get(0).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testMaxConcurrencyAcrossGroups() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");add("d");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withGroupSize(1)
+                .build();
+
+        //saturated group falls back to other groups until every entity reached max concurrency
+        Set<String> selected = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            Assert.assertTrue(selected.add(loadBalancer.next().getTask()));
+        }
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxConcurrency() {
+        ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withMaxConcurrency(0);
+    }
+
     @Test
     public void testConcurrencyLimits() {
         ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
@@ -305,4 +589,165 @@ public class ArrayConcurrencyLoadBalancerTest {
         CompletableTask<String> task = loadBalancer.next();
         Assert.assertNull(task);
     }
+
+    @Test
+    public void testAddRemoveTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        Map<String, CompletableTask<String>> completableTasks = new HashMap<>();
+        for (int i = 0; i < 2; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.put(task.getTask(), task);
+        }
+
+        //new task receives requests until it catches up with existing tasks
+        Assert.assertTrue(loadBalancer.addTask("c"));
+        Assert.assertFalse(loadBalancer.addTask("c"));
+        Assert.assertEquals("c", loadBalancer.next().getTask());
+
+        //removed task stops receiving requests and drains
+        CompletableFuture<Void> drained = loadBalancer.removeTask("a");
+        Assert.assertFalse(drained.isDone());
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertNotEquals("a", loadBalancer.next().getTask());
+        }
+        completableTasks.get("a").complete();
+        Assert.assertTrue(drained.isDone());
+        Assert.assertTrue(loadBalancer.removeTask("a").isDone());
+
+        //task added back keeps its concurrency state
+        Assert.assertTrue(loadBalancer.addTask("a"));
+        Assert.assertEquals("a", loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testRemoveTaskAfterSelection() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        AtomicBoolean removeOnAcquire = new AtomicBoolean(true);
+        AtomicReference<ArrayConcurrencyLoadBalancer<String>> loadBalancer = new AtomicReference<>();
+        AtomicReference<String> removed = new AtomicReference<>();
+        AtomicReference<CompletableFuture<Void>> drained = new AtomicReference<>();
+        ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<String> map;
+        map = new ArrayConcurrencyLoadBalancer.TaskConcurrencyMap<>(
+                t -> new TaskConcurrencyDelegator<String>(TaskConcurrencyImpl.newBuilder().build(t)) {
+                    @Override
+                    public boolean tryAcquire() {
+                        //entity is removed by other thread after it was selected
+                        if (removeOnAcquire.getAndSet(false)) {
+                            removed.set(getTask());
+                            drained.set(loadBalancer.get().removeTask(getTask()));
+                        }
+                        return super.tryAcquire();
+                    }
+                });
+        loadBalancer.set(new ArrayConcurrencyLoadBalancer<>(entries, map, Integer.MAX_VALUE,
+                Collections.emptyList(), Ticker.systemTicker()));
+
+        //removed entity is released and the other one is selected, drain future doesn't miss the late request
+        CompletableTask<String> completableTask = loadBalancer.get().next();
+        Assert.assertNotEquals(removed.get(), completableTask.getTask());
+        Assert.assertTrue(drained.get().isDone());
+        Assert.assertEquals(0, map.apply(removed.get()).getConcurrency());
+        Assert.assertEquals(1, map.apply(completableTask.getTask()).getConcurrency());
+    }
+
+    @Test
+    public void testRemoveTaskOfSharedTaskConcurrencyMap() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        ArrayConcurrencyLoadBalancer.Builder<String> builder = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries);
+        ArrayConcurrencyLoadBalancer<String> loadBalancer1 = builder.build();
+        ArrayConcurrencyLoadBalancer<String> loadBalancer2 = builder.build();
+        CompletableTask<String> task1 = loadBalancer1.next();
+        CompletableTask<String> task2 = loadBalancer2.next();
+
+        //removed entity is drained of requests of the loadBalancer it's removed from only
+        CompletableFuture<Void> drained = loadBalancer1.removeTask("a");
+        Assert.assertFalse(drained.isDone());
+        task1.complete();
+        Assert.assertTrue(drained.isDone());
+        Assert.assertFalse(loadBalancer2.removeTask("a").isDone());
+        task2.complete();
+    }
+
+    @Test
+    public void testRemoveTaskWithLeaseTimeout() {
+        WritableTicker testTicker = new WritableTicker();
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withLeaseTimeout(Duration.ofSeconds(10))
+                .withTicker(testTicker)
+                .build();
+        CompletableTask<String> completableTask = loadBalancer.next();
+
+        //requests not completed are drained once their leases expired
+        CompletableFuture<Void> drained = loadBalancer.removeTask(completableTask.getTask());
+        Assert.assertFalse(drained.isDone());
+        testTicker.add(Duration.ofSeconds(11));
+        loadBalancer.next().complete();
+        Assert.assertTrue(drained.isDone());
+    }
+
+    @Test
+    public void testJoinIdleQueue() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");}};
+        ArrayConcurrencyLoadBalancer.Builder<String> builder = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withJoinIdleQueue(1);
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = builder.build();
+
+        //idle entities are taken in order
+        Map<String, CompletableTask<String>> completableTasks = new HashMap<>();
+        for (String entry : entries) {
+            CompletableTask<String> task = loadBalancer.next();
+            Assert.assertEquals(entry, task.getTask());
+            completableTasks.put(entry, task);
+        }
+
+        //entity completed all its requests joins idle queue
+        completableTasks.get("b").complete();
+        Assert.assertEquals("b", loadBalancer.next().getTask());
+
+        //fall back to least concurrency when there is no idle entity
+        completableTasks.get("c").complete();
+        CompletableTask<String> busy = loadBalancer.next();
+        Assert.assertEquals("c", busy.getTask());
+        Assert.assertEquals(2, builder.getTaskConcurrencyMap().apply(loadBalancer.next().getTask()).getConcurrency());
+
+        //removed entity leaves idle queue
+        completableTasks.get("a").complete();
+        loadBalancer.removeTask("a");
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertNotEquals("a", loadBalancer.next().getTask());
+        }
+    }
+
+    @Test
+    public void testJoinIdleQueueWithIdleConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        ArrayConcurrencyLoadBalancer.Builder<String> builder = ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withJoinIdleQueue(2);
+        ArrayConcurrencyLoadBalancer<String> loadBalancer = builder.build();
+
+        //entity stays in idle queue until it reaches idle concurrency
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            selected.add(loadBalancer.next().getTask());
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "a", "b"), selected);
+        for (String entry : entries) {
+            Assert.assertEquals(2, builder.getTaskConcurrencyMap().apply(entry).getConcurrency());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveIdleConcurrency() {
+        ArrayConcurrencyLoadBalancer.newBuilder(String.class)
+                .withJoinIdleQueue(0);
+    }
 }
@@ -0,0 +1,386 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyImpl;
+import com.uber.concurrency.loadbalancer.utils.WritableTicker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BucketConcurrencyLoadBalancerTest {
+
+    @Test
+    public void testZeroTask() {
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertNull(task1);
+    }
+
+    @Test
+    public void testOneTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertEquals("a", task1.getTask());
+        CompletableTask<String> task2 = loadBalancer.next();
+        Assert.assertEquals("a", task2.getTask());
+    }
+
+    @Test
+    public void testTwoTasks() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        result.add(ct1.getTask());
+        CompletableTask<String> ct2 = loadBalancer.next();
+        result.add(ct2.getTask());
+        Assert.assertEquals(2, result.size());
+        result = new HashSet<>();
+        ct2.complete();
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(1, result.size());
+    }
+
+    @Test
+    public void testMultiComplete() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        final AtomicInteger pendingRequest = new AtomicInteger();
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+                })
+                .build();
+        Assert.assertEquals(0, pendingRequest.get());
+        CompletableTask<String> ct1 = loadBalancer.next();
+        Assert.assertEquals(1, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+    }
+
+    @Test
+    public void testFairness() {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 26; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withSubStrategy(SubStrategy.LeastFrequency)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+            task.complete();
+        }
+        Assert.assertEquals(entries.size(), result.size());
+    }
+
+    @Test
+    public void testMultipleRound() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d"); add("e");}};
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int repeat = 1000;
+        for (int i = 0; i < repeat * entries.size(); ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : keyFrequency.entrySet()) {
+            Assert.assertEquals(repeat, entry.getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws InterruptedException {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 13; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    loadBalancer.next().complete();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //after all updates finished, buckets are consistent with concurrency of tasks
+        for (String entry : entries) {
+            Assert.assertEquals(0, loadBalancer.get(entry).getConcurrency());
+        }
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < entries.size() * 2; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (String entry : entries) {
+            Assert.assertEquals(2, keyFrequency.get(entry).intValue());
+        }
+    }
+
+    @Test
+    public void testFailureSustain() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        WritableTicker testTicker = new WritableTicker();
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFailureEffectiveLatency(Duration.ofSeconds(30), 100)
+                .withTicker(testTicker)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        String t1 = ct1.getTask();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        Assert.assertNotEquals(t1, ct2.getTask());
+        ct1.complete(false);
+        ct2.complete(true);
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            Assert.assertNotEquals(t1, ct2.getTask());
+            ct2.complete();
+        }
+        //one second later after failure effective latency, passed sustain period of failed task
+        testTicker.add(Duration.ofSeconds(31));
+        for (int i = 0; i < 40; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testWeightedTasks() {
+        Map<String, Integer> taskWeights = new LinkedHashMap<>();
+        taskWeights.put("a", 1);
+        taskWeights.put("b", 3);
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights)
+                .build();
+
+        //concurrency is distributed proportionally to weight
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(2, keyFrequency.get("a").intValue());
+        Assert.assertEquals(6, keyFrequency.get("b").intValue());
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .build();
+
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            result.add(task.getTask());
+        }
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        completableTasks.get(1).complete();
+        Assert.assertEquals(completableTasks.get(1).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testConcurrencyLimits() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        for (String key : entries) {
+            TaskConcurrency<String> tc = loadBalancer.get(key);
+            tc.acquire(Integer.MAX_VALUE);
+        }
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+        }
+
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        //reached limit
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNull(task);
+    }
+
+    @Test
+    public void testRotationInBucket() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //entity moves to the tail of bucket, so entities of the same level take turns in FIFO order
+        for (int round = 0; round < 3; ++round) {
+            for (String entry : entries) {
+                CompletableTask<String> task = loadBalancer.next();
+                Assert.assertEquals(entry, task.getTask());
+                task.complete();
+            }
+        }
+        for (int round = 0; round < 3; ++round) {
+            for (String entry : entries) {
+                Assert.assertEquals(entry, loadBalancer.next().getTask());
+            }
+        }
+    }
+
+    @Test
+    public void testGrowLevels() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //buckets grow beyond initial 16 levels
+        loadBalancer.get("a").acquire(40);
+        for (int i = 0; i < 40; ++i) {
+            Assert.assertEquals("b", loadBalancer.next().getTask());
+        }
+        Assert.assertEquals(40, loadBalancer.get("b").getConcurrency());
+        Set<String> result = new HashSet<>();
+        result.add(loadBalancer.next().getTask());
+        result.add(loadBalancer.next().getTask());
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        //least level is found again after entity moves below it
+        loadBalancer.get("a").complete(41, 0);
+        Assert.assertEquals("a", loadBalancer.next().getTask());
+        Assert.assertEquals(1, loadBalancer.get("a").getConcurrency());
+    }
+
+    @Test
+    public void testOverflowLevel() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");}};
+
+        BucketConcurrencyLoadBalancer<String> loadBalancer = BucketConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //levels above overflow level share one bucket, which is searched for the least entity
+        loadBalancer.get("a").acquire(5000);
+        loadBalancer.get("b").acquire(3000);
+        loadBalancer.get("c").acquire(4000);
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertEquals("b", loadBalancer.next().getTask());
+        }
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 2000; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertNull(keyFrequency.get("a"));
+        Assert.assertEquals(1000, keyFrequency.get("b").intValue());
+        Assert.assertEquals(1000, keyFrequency.get("c").intValue());
+
+        //entity leaves overflow bucket once it's below overflow level
+        loadBalancer.get("c").complete(4500, 0);
+        Assert.assertEquals("c", loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testSaturatedHeadBeforeRelocate() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 16; ++i) {
+            entries.add(Character.toString((char) ('a' + i)));
+        }
+        AtomicBoolean armed = new AtomicBoolean();
+        BucketConcurrencyLoadBalancer<String> loadBalancer = new BucketConcurrencyLoadBalancer<>(entries,
+                t -> new TaskConcurrencyImpl<String>(t) {
+                    @Override
+                    public int getConcurrency() {
+                        //head saturated by other thread right after it's peeked, the bucket is yet to relocate it
+                        if (task.equals("a") && armed.compareAndSet(true, false)) {
+                            concurrency.addAndGet(2);
+                        }
+                        return super.getConcurrency();
+                    }
+                }, false, Collections.emptyList(), Ticker.systemTicker());
+        for (String entry : entries) {
+            loadBalancer.get(entry).setMaxConcurrency(2);
+            if (!entry.equals("a")) {
+                loadBalancer.get(entry).acquire();
+            }
+        }
+
+        armed.set(true);
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNotEquals("a", task.getTask());
+        Assert.assertEquals(2, loadBalancer.get(task.getTask()).getConcurrency());
+    }
+}
@@ -0,0 +1,215 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConsistentHashConcurrencyLoadBalancerTest {
+
+    @Test
+    public void testZeroTask() {
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        Assert.assertNull(loadBalancer.next());
+        Assert.assertNull(loadBalancer.next("key"));
+    }
+
+    @Test
+    public void testOneTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals("a", loadBalancer.next("key").getTask());
+        }
+    }
+
+    @Test
+    public void testKeyAffinity() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d");}};
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer1 = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer2 = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //same key is mapped to same task, even by different load balancers
+        Set<String> result = new HashSet<>();
+        for (int key = 0; key < 100; ++key) {
+            CompletableTask<String> ct1 = loadBalancer1.next(key);
+            CompletableTask<String> ct2 = loadBalancer2.next(key);
+            Assert.assertEquals(ct1.getTask(), ct2.getTask());
+            result.add(ct1.getTask());
+            ct1.complete();
+            ct2.complete();
+            for (int i = 0; i < 3; ++i) {
+                CompletableTask<String> ct = loadBalancer1.next(key);
+                Assert.assertEquals(ct1.getTask(), ct.getTask());
+                ct.complete();
+            }
+        }
+        //keys are spread to all tasks
+        Assert.assertEquals(new HashSet<>(entries), result);
+    }
+
+    @Test
+    public void testKeyHashedByToString() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d");}};
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //keys with identity hashCode but the same toString() are mapped to the same task
+        for (int key = 0; key < 100; ++key) {
+            String name = "user-" + key;
+            CompletableTask<String> ct1 = loadBalancer.next(new Object() {
+                @Override
+                public String toString() {
+                    return name;
+                }
+            });
+            ct1.complete();
+            CompletableTask<String> ct2 = loadBalancer.next(name);
+            ct2.complete();
+            Assert.assertEquals(ct1.getTask(), ct2.getTask());
+        }
+    }
+
+    @Test
+    public void testBoundedLoad() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d");}};
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withBalanceFactor(0.25)
+                .build();
+
+        //hot key spills to next tasks on the ring when the primary task is overloaded
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 100; ++i) {
+            keyFrequency.merge(loadBalancer.next("hot").getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(entries.size(), keyFrequency.size());
+        for (int frequency : keyFrequency.values()) {
+            Assert.assertTrue(frequency <= 32);
+        }
+    }
+
+    @Test
+    public void testShareTaskConcurrencyMap() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        ConsistentHashConcurrencyLoadBalancer.Builder<String> builder = ConsistentHashConcurrencyLoadBalancer
+                .newBuilder(String.class)
+                .withTasks(entries)
+                .withBalanceFactor(0.5);
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer1 = builder.build();
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer2 = builder.build();
+
+        //load of the primary task is visible to both load balancers
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            result.add(loadBalancer1.next("key").getTask());
+            result.add(loadBalancer2.next("key").getTask());
+        }
+        Assert.assertEquals(new HashSet<>(entries), new HashSet<>(result));
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .build();
+
+        CompletableTask<String> ct1 = loadBalancer.next("key");
+        CompletableTask<String> ct2 = loadBalancer.next("key");
+        Assert.assertNotEquals(ct1.getTask(), ct2.getTask());
+        try {
+            loadBalancer.next("key");
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        ct1.complete();
+        Assert.assertEquals(ct1.getTask(), loadBalancer.next("key").getTask());
+    }
+
+    @Test
+    public void testMaxConcurrencyOfManyTasks() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 150; ++i) {
+            entries.add("task" + i);
+        }
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withVirtualNodes(10)
+                .withMaxConcurrency(1)
+                .build();
+
+        //walk on the ring visits every entity once, beyond the first 64 entities as well
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            result.add(loadBalancer.next("key").getTask());
+        }
+        Assert.assertEquals(new HashSet<>(entries), result);
+        try {
+            loadBalancer.next("key");
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveBalanceFactor() {
+        ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class)
+                .withBalanceFactor(0);
+    }
+
+    @Test
+    public void testConcurrencyLimits() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        ConsistentHashConcurrencyLoadBalancer.Builder<String> builder = ConsistentHashConcurrencyLoadBalancer.newBuilder(String.class);
+
+        ConsistentHashConcurrencyLoadBalancer<String> loadBalancer = builder
+                .withTasks(entries)
+                .build();
+
+        for (String key : entries) {
+            TaskConcurrency<String> tc = builder.getTaskConcurrencyMap().apply(key);
+            tc.acquire(Integer.MAX_VALUE);
+        }
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+        }
+
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        //reached limit
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNull(task);
+    }
+}
@@ -1,6 +1,7 @@
 package com.uber.concurrency.loadbalancer;
 
 import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.limit.AimdLimit;
 import com.uber.concurrency.loadbalancer.utils.WritableTicker;
 import org.junit.Assert;
 import org.junit.Test;
@@ -10,7 +11,13 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 @RunWith(PowerMockRunner.class)
 @PowerMockIgnore("javax.management.*")
@@ -234,6 +241,716 @@ public class HeapConcurrencyLoadBalancerTest {
         Assert.assertEquals(2, result.size());
     }
 
+    @Test
+    public void testWeightedTasks() {
+        Map<String, Integer> taskWeights = new LinkedHashMap<>();
+        taskWeights.put("a", 1);
+        taskWeights.put("b", 3);
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights)
+                .build();
+
+        //concurrency is distributed proportionally to weight
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(2, keyFrequency.get("a").intValue());
+        Assert.assertEquals(6, keyFrequency.get("b").intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveWeight() {
+        Map<String, Integer> taskWeights = new HashMap<>();
+        taskWeights.put("a", 0);
+        HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights);
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        Map<String, Integer> maxConcurrencies = new HashMap<>();
+        maxConcurrencies.put("a", 1);
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(2)
+                .withMaxConcurrency(maxConcurrencies)
+                .build();
+
+        //task reached max concurrency is skipped
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            keyFrequency.merge(task.getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(1, keyFrequency.get("a").intValue());
+        Assert.assertEquals(2, keyFrequency.get("b").intValue());
+
+        //all tasks reached max concurrency
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        //capacity is released on completion
+        completableTasks.get(0).complete();
+        Assert.assertEquals(completableTasks.get(0).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxConcurrency() {
+        HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withMaxConcurrency(0);
+    }
+
+    @Test
+    public void testNextBatch() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");}};
+        final AtomicInteger pendingRequest = new AtomicInteger();
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+                })
+                .build();
+        CompletableTask<String> single = loadBalancer.next();
+
+        //requests fill up the less concurrent entities first, then spread evenly
+        BatchCompletableTask<String> batch = loadBalancer.nextBatch(8);
+        Assert.assertEquals(8, batch.getCount());
+        Assert.assertEquals(9, pendingRequest.get());
+        for (String entry : entries) {
+            Assert.assertEquals(3, loadBalancer.getTaskConcurrencyQueue().get(entry).getConcurrency());
+        }
+        //heap is updated on batch acquisition
+        Assert.assertEquals(3, loadBalancer.getTaskConcurrencyQueue().peek().getConcurrency());
+
+        //complete per entity, then in bulk
+        Assert.assertEquals(1, batch.complete(0, 1, true));
+        Assert.assertEquals(1, batch.complete(0, 1, false));
+        Assert.assertEquals(6, batch.complete(true));
+        Assert.assertEquals(0, batch.complete(true));
+        single.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+        for (String entry : entries) {
+            Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get(entry).getConcurrency());
+        }
+    }
+
+    @Test
+    public void testNextBatchMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        Map<String, Integer> maxConcurrencies = new HashMap<>();
+        maxConcurrencies.put("a", 1);
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(2)
+                .withMaxConcurrency(maxConcurrencies)
+                .build();
+
+        //batch is partially filled when entities reached max concurrency
+        BatchCompletableTask<String> batch = loadBalancer.nextBatch(5);
+        Assert.assertEquals(3, batch.getCount());
+
+        try {
+            loadBalancer.nextBatch(1);
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        batch.complete();
+        Assert.assertEquals(3, loadBalancer.nextBatch(5).getCount());
+    }
+
+    @Test
+    public void testCompleteAll() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        final AtomicInteger pendingRequest = new AtomicInteger();
+        final AtomicInteger completeEvents = new AtomicInteger();
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed, int n) {
+                        completeEvents.incrementAndGet();
+                        pendingRequest.addAndGet(-n);
+                    }
+                })
+                .build();
+        List<CompletableTask<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            requests.add(loadBalancer.next());
+        }
+        requests.get(0).complete();
+        //requests from other loadBalancer are completed one by one
+        requests.add(CompletableTask.ofNoop("c"));
+        Assert.assertEquals(9, pendingRequest.get());
+
+        //one event per entity, request completed already is not counted
+        Assert.assertEquals(10, loadBalancer.completeAll(requests));
+        Assert.assertEquals(3, completeEvents.get());
+        Assert.assertEquals(0, pendingRequest.get());
+        for (String entry : entries) {
+            Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get(entry).getConcurrency());
+        }
+        Assert.assertEquals(1, loadBalancer.completeAll(requests));
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        final AtomicInteger failures = new AtomicInteger();
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        if (!succeed) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+        TaskConcurrency<String> taskConcurrency = loadBalancer.getTaskConcurrencyQueue().get("a");
+
+        //request is completed when the call completes
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> result = loadBalancer.execute(t -> call);
+        Assert.assertEquals(1, taskConcurrency.getConcurrency());
+        call.complete("ok");
+        Assert.assertEquals("ok", result.get());
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        Assert.assertEquals(0, failures.get());
+
+        //exceptional completion completes request as failed
+        CompletableFuture<String> failedCall = new CompletableFuture<>();
+        result = loadBalancer.execute(t -> failedCall);
+        failedCall.completeExceptionally(new RuntimeException("failed"));
+        Assert.assertTrue(result.isCompletedExceptionally());
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        Assert.assertEquals(1, failures.get());
+
+        //call throws
+        result = loadBalancer.<String>execute(t -> {
+            throw new IllegalStateException("failed");
+        });
+        Assert.assertTrue(result.isCompletedExceptionally());
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        Assert.assertEquals(2, failures.get());
+    }
+
+    @Test
+    public void testExecuteSaturated() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .build();
+        CompletableFuture<String> call = new CompletableFuture<>();
+        loadBalancer.execute(t -> call);
+        CompletableFuture<String> result = loadBalancer.execute(t -> CompletableFuture.completedFuture("ok"));
+        try {
+            result.get();
+            Assert.fail("expect SaturationException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SaturationException);
+        }
+
+        HeapConcurrencyLoadBalancer<String> empty = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+        Assert.assertTrue(empty.execute(t -> CompletableFuture.completedFuture("ok")).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testLeaseTimeoutOfTwoBuilds() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        WritableTicker testTicker = new WritableTicker();
+        HeapConcurrencyLoadBalancer.Builder<String> builder = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withLeaseTimeout(Duration.ofSeconds(10))
+                .withWaitQueue(1)
+                .withTicker(testTicker);
+        HeapConcurrencyLoadBalancer<String> loadBalancer1 = builder.build();
+        HeapConcurrencyLoadBalancer<String> loadBalancer2 = builder.build();
+        loadBalancer1.next();
+        CompletableFuture<CompletableTask<String>> waiting = loadBalancer1.acquireAsync(Duration.ofMinutes(1));
+
+        //lease reclaimed is reported to the loadBalancer it's leased from, not the one built last
+        testTicker.add(Duration.ofSeconds(11));
+        loadBalancer1.getTaskConcurrencyQueue().get("a").syncState();
+        Assert.assertEquals(1, loadBalancer1.getMetrics().leakedLeaseCount());
+        Assert.assertEquals(0, loadBalancer2.getMetrics().leakedLeaseCount());
+        //and its waiting request is handed the reclaimed concurrency
+        Assert.assertEquals("a", waiting.get(10, TimeUnit.SECONDS).getTask());
+    }
+
+    @Test
+    public void testLeaseTimeout() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        WritableTicker testTicker = new WritableTicker();
+        final AtomicInteger failures = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withLeaseTimeout(Duration.ofSeconds(10))
+                .withTicker(testTicker)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        if (!succeed) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+        TaskConcurrency<String> taskConcurrency = loadBalancer.getTaskConcurrencyQueue().get("a");
+
+        CompletableTask<String> ct1 = loadBalancer.next();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        CompletableTask<String> ct3 = loadBalancer.next();
+        testTicker.add(Duration.ofSeconds(5));
+        Assert.assertTrue(ct1.complete());
+        Assert.assertEquals(2, taskConcurrency.getConcurrency());
+
+        //leases expired, leaked requests are completed as failure
+        testTicker.add(Duration.ofSeconds(6));
+        taskConcurrency.syncState();
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        Assert.assertEquals(2, loadBalancer.getMetrics().leakedLeaseCount());
+        Assert.assertEquals(2, failures.get());
+
+        //completion after lease timeout is ignored
+        Assert.assertFalse(ct2.complete());
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        Assert.assertEquals(2, failures.get());
+
+        //completion after lease timeout but before reclamation doesn't release concurrency twice
+        CompletableTask<String> ct4 = loadBalancer.next();
+        testTicker.add(Duration.ofSeconds(11));
+        Assert.assertFalse(ct4.complete());
+        taskConcurrency.syncState();
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        Assert.assertEquals(3, loadBalancer.getMetrics().leakedLeaseCount());
+        Assert.assertFalse(ct3.complete());
+    }
+
+    @Test
+    public void testLeaseCancelledAcrossWindowEdge() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        WritableTicker testTicker = new WritableTicker();
+        final AtomicInteger failures = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withLeaseTimeout(Duration.ofSeconds(10))
+                .withTicker(testTicker)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        if (!succeed) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+        TaskConcurrency<String> taskConcurrency = loadBalancer.getTaskConcurrencyQueue().get("a");
+
+        //leases are tracked in 100ms windows, requests start on both sides of a window edge
+        testTicker.add(Duration.ofMillis(50));
+        CompletableTask<String> ct1 = loadBalancer.next();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        testTicker.add(Duration.ofMillis(100));
+        CompletableTask<String> ct3 = loadBalancer.next();
+        CompletableTask<String> ct4 = loadBalancer.next();
+        testTicker.add(Duration.ofMillis(4850));
+        Assert.assertEquals(2, loadBalancer.completeAll(Arrays.asList(ct1, ct3)));
+        Assert.assertTrue(ct2.complete());
+        Assert.assertTrue(ct4.complete());
+        Assert.assertEquals(0, taskConcurrency.getConcurrency());
+
+        //no lease is reclaimed after completion, windows are checked one by one
+        for (int i = 0; i < 1000; ++i) {
+            testTicker.add(Duration.ofMillis(10));
+            taskConcurrency.syncState();
+            Assert.assertEquals(0, taskConcurrency.getConcurrency());
+        }
+        Assert.assertEquals(0, loadBalancer.getMetrics().leakedLeaseCount());
+        Assert.assertEquals(0, failures.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveLeaseTimeout() {
+        HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withLeaseTimeout(Duration.ZERO);
+    }
+
+    @Test
+    public void testAcquireAsync() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withWaitQueue(1)
+                .build();
+
+        CompletableTask<String> ct1 = loadBalancer.acquireAsync(Duration.ofSeconds(10)).get();
+        CompletableTask<String> ct2 = loadBalancer.acquireAsync(Duration.ofSeconds(10)).get();
+        Assert.assertNotEquals(ct1.getTask(), ct2.getTask());
+
+        //wait for concurrency released by completion
+        CompletableFuture<CompletableTask<String>> waiting = loadBalancer.acquireAsync(Duration.ofSeconds(10));
+        Assert.assertFalse(waiting.isDone());
+        //queue is full
+        Assert.assertTrue(loadBalancer.acquireAsync(Duration.ofSeconds(10)).isCompletedExceptionally());
+
+        ct2.complete();
+        Assert.assertEquals(ct2.getTask(), waiting.get().getTask());
+        Assert.assertEquals(1, loadBalancer.getTaskConcurrencyQueue().get(ct2.getTask()).getConcurrency());
+    }
+
+    @Test
+    public void testAcquireAsyncWithoutWaitQueue() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .build();
+        Assert.assertFalse(loadBalancer.acquireAsync(Duration.ofSeconds(10)).isCompletedExceptionally());
+        Assert.assertTrue(loadBalancer.acquireAsync(Duration.ofSeconds(10)).isCompletedExceptionally());
+    }
+
+    @Test(timeout = 10000)
+    public void testAcquire() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withWaitQueue(1)
+                .build();
+
+        CompletableTask<String> ct = loadBalancer.acquire(Duration.ofSeconds(10));
+        Assert.assertEquals("a", ct.getTask());
+        //blocked thread is handed the entity released by completion
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<CompletableTask<String>> blocked = CompletableFuture.supplyAsync(() -> {
+            try {
+                started.countDown();
+                return loadBalancer.acquire(Duration.ofSeconds(10));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        //request is in queue once the thread started waiting
+        while (loadBalancer.waitQueue.getLength() == 0) {
+            Thread.yield();
+        }
+        Assert.assertFalse(blocked.isDone());
+        ct.complete();
+        Assert.assertEquals("a", blocked.get().getTask());
+        Assert.assertEquals(1, loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency());
+
+        try {
+            loadBalancer.acquire(Duration.ofMillis(50));
+            Assert.fail("expect TimeoutException");
+        } catch (TimeoutException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testAcquireAsyncOnFailureSustainMatured() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        WritableTicker testTicker = new WritableTicker();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withFailureEffectiveLatency(Duration.ofSeconds(10))
+                .withWaitQueue(1)
+                .withTicker(testTicker)
+                .build();
+
+        Assert.assertTrue(loadBalancer.next().complete(false));
+        CompletableFuture<CompletableTask<String>> waiting = loadBalancer.acquireAsync(Duration.ofSeconds(30));
+        Assert.assertFalse(waiting.isDone());
+        //concurrency sustained by failure is handed to waiting request when it matures
+        testTicker.add(Duration.ofSeconds(11));
+        loadBalancer.getTaskConcurrencyQueue().get("a").syncState();
+        Assert.assertEquals("a", waiting.get(5, TimeUnit.SECONDS).getTask());
+    }
+
+    @Test
+    public void testAcquireAsyncOnLeaseReclaimed() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        WritableTicker testTicker = new WritableTicker();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withLeaseTimeout(Duration.ofSeconds(10))
+                .withWaitQueue(1)
+                .withTicker(testTicker)
+                .build();
+
+        Assert.assertNotNull(loadBalancer.next());
+        CompletableFuture<CompletableTask<String>> waiting = loadBalancer.acquireAsync(Duration.ofSeconds(30));
+        Assert.assertFalse(waiting.isDone());
+        //concurrency of leaked request is handed to waiting request when its lease is reclaimed
+        testTicker.add(Duration.ofSeconds(11));
+        loadBalancer.getTaskConcurrencyQueue().get("a").syncState();
+        Assert.assertEquals("a", waiting.get(5, TimeUnit.SECONDS).getTask());
+        Assert.assertEquals(1, loadBalancer.getMetrics().leakedLeaseCount());
+    }
+
+    @Test
+    public void testRelease() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        completions.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onRelease(String s) {
+                        releases.incrementAndGet();
+                    }
+                })
+                .build();
+
+        CompletableTask<String> ct = loadBalancer.next();
+        Assert.assertEquals(1, loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency());
+        //released request gives concurrency back without outcome
+        Assert.assertTrue(ct.release());
+        Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency());
+        Assert.assertEquals(0, completions.get());
+        Assert.assertEquals(1, releases.get());
+        //only the first of completion and release takes effect
+        Assert.assertFalse(ct.complete());
+        Assert.assertFalse(ct.release());
+        Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency());
+        Assert.assertEquals(0, completions.get());
+    }
+
+    @Test(expected = SaturationException.class)
+    public void testAcquireWithoutWaitQueue() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .build();
+        Assert.assertNotNull(loadBalancer.acquire(Duration.ofSeconds(10)));
+        loadBalancer.acquire(Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void testCompleteAllFailureSustain() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        WritableTicker testTicker = new WritableTicker();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFailureEffectiveLatency(Duration.ofSeconds(30), 100)
+                .withTicker(testTicker)
+                .build();
+
+        List<CompletableTask<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            requests.add(loadBalancer.next());
+        }
+        Assert.assertEquals(4, loadBalancer.completeAll(requests, false));
+        //failed requests are sustained together until failure effective latency
+        testTicker.add(Duration.ofSeconds(15));
+        for (String entry : entries) {
+            loadBalancer.getTaskConcurrencyQueue().get(entry).syncState();
+            Assert.assertEquals(2, loadBalancer.getTaskConcurrencyQueue().get(entry).getConcurrency());
+        }
+        testTicker.add(Duration.ofSeconds(16));
+        for (String entry : entries) {
+            loadBalancer.getTaskConcurrencyQueue().get(entry).syncState();
+            Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get(entry).getConcurrency());
+        }
+    }
+
+    @Test
+    public void testAdaptiveLimit() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withAdaptiveLimit(AimdLimit.newBuilder().withInitialLimit(2).withLimitRange(1, 10))
+                .build();
+
+        CompletableTask<String> ct1 = loadBalancer.next();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        //failure reduces limit to 1
+        ct1.complete(false);
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        //success at full utilization increases limit to 2
+        ct2.complete(true);
+        Assert.assertNotNull(loadBalancer.next());
+        Assert.assertNotNull(loadBalancer.next());
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+    }
+
+    @Test
+    public void testFlatCombining() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d"); add("e");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFlatCombining(true)
+                .build();
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int repeat = 1000;
+        for (int i = 0; i < repeat * entries.size(); ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : keyFrequency.entrySet()) {
+            Assert.assertEquals(repeat, entry.getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testFlatCombiningConcurrentUpdate() throws InterruptedException {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 13; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFlatCombining(true)
+                .build();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    loadBalancer.next().complete();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //after all updates combined, heap is consistent with concurrency of tasks
+        HeapConcurrencyLoadBalancer.TaskConcurrencyQueue<String> repo = loadBalancer.getTaskConcurrencyQueue();
+        for (String entry : entries) {
+            Assert.assertEquals(0, repo.get(entry).getConcurrency());
+        }
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < entries.size() * 2; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (String entry : entries) {
+            Assert.assertEquals(2, keyFrequency.get(entry).intValue());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFlatCombiningStaleSaturatedHead() throws Exception {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withFlatCombining(true)
+                .build();
+
+        //other thread holds combiner role, so the saturated head is published but not re-sifted
+        ReentrantLock combiner = loadBalancer.getTaskConcurrencyQueue().getCombiner();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            combiner.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                combiner.unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        CompletableTask<String> first = loadBalancer.next();
+        Assert.assertTrue(first.getTask().equals(loadBalancer.getTaskConcurrencyQueue().peek().getTask()));
+
+        //next selection waits for combiner to re-sift the stale head instead of failing
+        CompletableFuture<CompletableTask<String>> second = CompletableFuture.supplyAsync(loadBalancer::next);
+        while (!combiner.hasQueuedThreads() && !second.isDone()) {
+            Thread.yield();
+        }
+        release.countDown();
+        holder.join();
+        Assert.assertNotEquals(first.getTask(), second.get().getTask());
+    }
+
     @Test
     public void testConcurrencyLimits() {
         ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
@@ -260,4 +977,81 @@ public class HeapConcurrencyLoadBalancerTest {
         CompletableTask<String> task = loadBalancer.next();
         Assert.assertNull(task);
     }
+
+    @Test
+    public void testAddRemoveTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        Map<String, CompletableTask<String>> completableTasks = new HashMap<>();
+        for (int i = 0; i < 2; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.put(task.getTask(), task);
+        }
+
+        //new task receives requests until it catches up with existing tasks
+        Assert.assertTrue(loadBalancer.addTask("c"));
+        Assert.assertFalse(loadBalancer.addTask("c"));
+        Assert.assertEquals("c", loadBalancer.next().getTask());
+        Assert.assertEquals(1, loadBalancer.getTaskConcurrencyQueue().get("b").getConcurrency());
+
+        //removed task stops receiving requests and drains
+        CompletableFuture<Void> drained = loadBalancer.removeTask("a");
+        Assert.assertFalse(drained.isDone());
+        completableTasks.get("a").complete();
+        for (int i = 0; i < 10; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            Assert.assertNotEquals("a", task.getTask());
+            task.complete();
+        }
+        Assert.assertTrue(drained.isDone());
+
+        //task added back while draining keeps its concurrency state
+        drained = loadBalancer.removeTask("b");
+        Assert.assertTrue(loadBalancer.addTask("b"));
+        Assert.assertTrue(drained.isCancelled());
+        Assert.assertEquals(1, loadBalancer.getTaskConcurrencyQueue().get("b").getConcurrency());
+        completableTasks.get("b").complete();
+        Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get("b").getConcurrency());
+        Assert.assertEquals("b", loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testAddRemoveTaskWithFlatCombining() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFlatCombining(true)
+                .build();
+        CompletableTask<String> task = loadBalancer.next();
+        CompletableFuture<Void> drained = loadBalancer.removeTask(task.getTask());
+        Assert.assertTrue(loadBalancer.addTask("c"));
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertNotEquals(task.getTask(), loadBalancer.next().getTask());
+        }
+        task.complete();
+        Assert.assertTrue(drained.isDone());
+        Assert.assertNull(loadBalancer.getTaskConcurrencyQueue().get(task.getTask()));
+    }
+
+    @Test
+    public void testRemoveTaskAfterSelection() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        HeapConcurrencyLoadBalancer<String> loadBalancer = HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        //entity selected by other thread before it was removed
+        TaskConcurrency<String> selected = loadBalancer.getTaskConcurrencyQueue().get("a");
+        CompletableFuture<Void> drained = loadBalancer.removeTask("a");
+        Assert.assertTrue(drained.isDone());
+
+        //late acquire is released, so that drain future doesn't miss the request
+        Assert.assertNull(loadBalancer.tryAcquire(selected));
+        Assert.assertEquals(0, selected.getConcurrency());
+        Assert.assertEquals("b", loadBalancer.next().getTask());
+    }
 }
@@ -0,0 +1,179 @@
+package com.uber.concurrency.loadbalancer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class LoadBalancingExecutorServiceTest {
+
+    @Test
+    public void testDispatchAcrossExecutors() throws Exception {
+        ExecutorService executor = LoadBalancingExecutorService.newBuilder()
+                .withExecutors(Arrays.asList(Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor()))
+                .withMaxConcurrency(1)
+                .build();
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            futures.add(executor.submit(() -> {
+                latch.await();
+                return Thread.currentThread().getName();
+            }));
+        }
+        //both executors are running a job
+        try {
+            executor.execute(() -> { });
+            Assert.fail("expect RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SaturationException);
+        }
+
+        latch.countDown();
+        Set<String> threads = new HashSet<>();
+        for (Future<String> future : futures) {
+            threads.add(future.get());
+        }
+        Assert.assertEquals(2, threads.size());
+        //concurrency is released when job finishes
+        Assert.assertEquals("done", executor.submit(() -> "done").get());
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testFailedJob() throws Exception {
+        LoadBalancingExecutorService executor = LoadBalancingExecutorService.newBuilder()
+                .withExecutors(Arrays.asList(Executors.newSingleThreadExecutor()))
+                .build();
+        Future<String> future = executor.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+        try {
+            future.get();
+            Assert.fail("expect ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals("done", executor.submit(() -> "done").get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        ExecutorService executor = LoadBalancingExecutorService.newBuilder()
+                .withExecutors(Arrays.asList(Executors.newSingleThreadExecutor()))
+                .build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runnable queued = () -> { };
+        executor.execute(queued);
+        started.await();
+
+        //jobs never started are returned as submitted
+        Assert.assertEquals(Arrays.asList(queued), executor.shutdownNow());
+        Assert.assertTrue(executor.isShutdown());
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        try {
+            executor.execute(() -> { });
+            Assert.fail("expect RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testCancelledJobIsReleased() throws Exception {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        LoadBalancingExecutorService executor = newRecordingExecutor(worker, events);
+        CountDownLatch latch = new CountDownLatch(1);
+        Future<?> running = executor.submit(() -> {
+            latch.await();
+            return null;
+        });
+        Future<?> queued = executor.submit(() -> { });
+
+        //job cancelled before it starts gives the executor back without outcome
+        Assert.assertTrue(queued.cancel(false));
+        latch.countDown();
+        running.get();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("complete:true", "release"), events);
+    }
+
+    @Test
+    public void testShutdownNowReleasesQueuedJobs() throws Exception {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        LoadBalancingExecutorService executor = newRecordingExecutor(worker, events);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> { });
+        started.await();
+
+        //job never started is released, job interrupted by shutdownNow completes when it finishes
+        Assert.assertEquals(1, executor.shutdownNow().size());
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("release", "complete:true")), new HashSet<>(events));
+        Assert.assertEquals(2, events.size());
+    }
+
+    private static LoadBalancingExecutorService newRecordingExecutor(ExecutorService worker, List<String> events) {
+        List<ExecutorService> executors = Collections.singletonList(worker);
+        HeapConcurrencyLoadBalancer<ExecutorService> loadBalancer = HeapConcurrencyLoadBalancer
+                .newBuilder(ExecutorService.class)
+                .withTasks(executors)
+                .withTaskListener(new CompletableTask.Listener<ExecutorService>() {
+                    @Override
+                    public void onCreate(ExecutorService executorService) {
+                    }
+
+                    @Override
+                    public void onComplete(ExecutorService executorService, boolean succeed) {
+                        events.add("complete:" + succeed);
+                    }
+
+                    @Override
+                    public void onRelease(ExecutorService executorService) {
+                        events.add("release");
+                    }
+                })
+                .build();
+        return new LoadBalancingExecutorService(executors, loadBalancer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyExecutors() {
+        LoadBalancingExecutorService.newBuilder().build();
+    }
+}
@@ -0,0 +1,251 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MultiQueueConcurrencyLoadBalancerTest {
+
+    @Test
+    public void testZeroTask() {
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertNull(task1);
+    }
+
+    @Test
+    public void testOneTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(4)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertEquals("a", task1.getTask());
+        CompletableTask<String> task2 = loadBalancer.next();
+        Assert.assertEquals("a", task2.getTask());
+    }
+
+    @Test
+    public void testTwoTasks() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(2)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        result.add(ct1.getTask());
+        CompletableTask<String> ct2 = loadBalancer.next();
+        result.add(ct2.getTask());
+        Assert.assertEquals(2, result.size());
+        result = new HashSet<>();
+        ct2.complete();
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(1, result.size());
+    }
+
+    @Test
+    public void testMultiComplete() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        final AtomicInteger pendingRequest = new AtomicInteger();
+
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+                })
+                .build();
+        Assert.assertEquals(0, pendingRequest.get());
+        CompletableTask<String> ct1 = loadBalancer.next();
+        Assert.assertEquals(1, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+    }
+
+    @Test
+    public void testOneShard() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d"); add("e");}};
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(1)
+                .build();
+
+        //single shard is exact as heap
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int repeat = 1000;
+        for (int i = 0; i < repeat * entries.size(); ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : keyFrequency.entrySet()) {
+            Assert.assertEquals(repeat, entry.getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testMultipleRound() {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 16; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(4)
+                .build();
+
+        //relaxed selection keeps concurrency of tasks close to each other
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int repeat = 1000;
+        for (int i = 0; i < repeat * entries.size(); ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : keyFrequency.entrySet()) {
+            Assert.assertEquals(repeat, entry.getValue().intValue(), 10);
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws InterruptedException {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 13; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(4)
+                .build();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    loadBalancer.next().complete();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (String entry : entries) {
+            Assert.assertEquals(0, loadBalancer.get(entry).getConcurrency());
+        }
+    }
+
+    @Test
+    public void testWeightedTasks() {
+        Map<String, Integer> taskWeights = new LinkedHashMap<>();
+        taskWeights.put("a", 1);
+        taskWeights.put("b", 3);
+
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights)
+                .withShards(2)
+                .build();
+
+        //concurrency is distributed proportionally to weight
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(2, keyFrequency.get("a").intValue());
+        Assert.assertEquals(6, keyFrequency.get("b").intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveShards() {
+        MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withShards(0);
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");add("d");}};
+
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(4)
+                .withMaxConcurrency(1)
+                .build();
+
+        //saturated heads fallback to other shards
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            result.add(task.getTask());
+        }
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        completableTasks.get(1).complete();
+        Assert.assertEquals(completableTasks.get(1).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testConcurrencyLimits() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        MultiQueueConcurrencyLoadBalancer<String> loadBalancer = MultiQueueConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withShards(2)
+                .build();
+
+        for (String key : entries) {
+            TaskConcurrency<String> tc = loadBalancer.get(key);
+            tc.acquire(Integer.MAX_VALUE);
+        }
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+        }
+
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        //reached limit
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNull(task);
+    }
+}
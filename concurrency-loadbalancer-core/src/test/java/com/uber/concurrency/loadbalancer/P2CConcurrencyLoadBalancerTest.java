@@ -0,0 +1,236 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.utils.WritableTicker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class P2CConcurrencyLoadBalancerTest {
+
+    @Test
+    public void testZeroTask() {
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertNull(task1);
+    }
+
+    @Test
+    public void testOneTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertEquals("a", task1.getTask());
+        CompletableTask<String> task2 = loadBalancer.next();
+        Assert.assertEquals("a", task2.getTask());
+    }
+
+    @Test
+    public void testTwoTasks() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        result.add(ct1.getTask());
+        CompletableTask<String> ct2 = loadBalancer.next();
+        result.add(ct2.getTask());
+        Assert.assertEquals(2, result.size());
+        result = new HashSet<>();
+        ct2.complete();
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(1, result.size());
+    }
+
+    @Test
+    public void testMultiComplete() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        final AtomicInteger pendingRequest = new AtomicInteger();
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+                })
+                .build();
+        Assert.assertEquals(0, pendingRequest.get());
+        CompletableTask<String> ct1 = loadBalancer.next();
+        Assert.assertEquals(1, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+    }
+
+    @Test
+    public void testBalance() {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 26; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //without completion, concurrency of each task shall not deviate from average by more than a few
+        int repeat = 100;
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < repeat * entries.size(); ++i) {
+            String key = loadBalancer.next().getTask();
+            keyFrequency.merge(key, 1, Integer::sum);
+        }
+        Assert.assertEquals(entries.size(), keyFrequency.size());
+        for (Map.Entry<String, Integer> entry : keyFrequency.entrySet()) {
+            Assert.assertTrue(Math.abs(entry.getValue() - repeat) <= 10);
+        }
+    }
+
+    @Test
+    public void testFailureSustain() {
+        WritableTicker testTicker = new WritableTicker();
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFailureEffectiveLatency(Duration.ofSeconds(30), 100)
+                .withTicker(testTicker)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        String t1 = ct1.getTask();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        Assert.assertNotEquals(t1, ct2.getTask());
+        ct1.complete(false);
+        ct2.complete(true);
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            Assert.assertNotEquals(t1, ct2.getTask());
+            ct2.complete();
+        }
+        //one second later after failure effective latency, passed sustain period of failed task
+        testTicker.add(Duration.ofSeconds(31));
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testShareTaskConcurrencyMap() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        P2CConcurrencyLoadBalancer.Builder<String> builder = P2CConcurrencyLoadBalancer
+                .newBuilder(String.class)
+                .withTasks(entries);
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer1 = builder.build();
+        P2CConcurrencyLoadBalancer<String> loadBalancer2 = builder.build();
+
+        List<String> result = new ArrayList<>();
+        result.add(loadBalancer1.next().getTask());
+        result.add(loadBalancer2.next().getTask());
+        Assert.assertEquals(new HashSet<>(entries), new HashSet<>(result));
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        Map<String, Integer> maxConcurrencies = new HashMap<>();
+        maxConcurrencies.put("a", 1);
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer = P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(2)
+                .withMaxConcurrency(maxConcurrencies)
+                .build();
+
+        //task reached max concurrency is skipped
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            keyFrequency.merge(task.getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(1, keyFrequency.get("a").intValue());
+        Assert.assertEquals(2, keyFrequency.get("b").intValue());
+
+        //all tasks reached max concurrency
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        //capacity is released on completion
+        completableTasks.get(0).complete();
+        Assert.assertEquals(completableTasks.get(0).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxConcurrency() {
+        P2CConcurrencyLoadBalancer.newBuilder(String.class)
+                .withMaxConcurrency(0);
+    }
+
+    @Test
+    public void testConcurrencyLimits() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        P2CConcurrencyLoadBalancer.Builder<String> builder = P2CConcurrencyLoadBalancer.newBuilder(String.class);
+
+        P2CConcurrencyLoadBalancer<String> loadBalancer = builder
+                .withTasks(entries)
+                .build();
+
+        for (String key : entries) {
+            TaskConcurrency<String> tc = builder.getTaskConcurrencyMap().apply(key);
+            tc.acquire(Integer.MAX_VALUE);
+        }
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+        }
+
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        //reached limit
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNull(task);
+    }
+}
@@ -0,0 +1,208 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.uber.concurrency.loadbalancer.internal.PeakEwmaTaskConcurrency;
+import com.uber.concurrency.loadbalancer.utils.WritableTicker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class PeakEwmaConcurrencyLoadBalancerTest {
+
+    @Test
+    public void testZeroTask() {
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertNull(task1);
+    }
+
+    @Test
+    public void testOneTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertEquals("a", task1.getTask());
+    }
+
+    @Test
+    public void testProbeUnknownTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        //without latency observation, each task get one probe request
+        Set<String> result = new HashSet<>();
+        result.add(loadBalancer.next().getTask());
+        result.add(loadBalancer.next().getTask());
+        Assert.assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testLatencyWeighted() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        WritableTicker testTicker = new WritableTicker();
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTicker(testTicker)
+                .build();
+
+        CompletableTask<String> ct1 = loadBalancer.next();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        CompletableTask<String> fast = ct1.getTask().equals("a") ? ct1 : ct2;
+        CompletableTask<String> slow = ct1.getTask().equals("a") ? ct2 : ct1;
+        testTicker.add(Duration.ofMillis(10));
+        fast.complete();
+        testTicker.add(Duration.ofMillis(90));
+        slow.complete();
+
+        //"a" is 10 times faster, it takes about 10 times of concurrency before "b" is picked
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 22; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertTrue(keyFrequency.get("a") >= 18);
+        Assert.assertTrue(keyFrequency.get("b") >= 1);
+    }
+
+    @Test
+    public void testPeakSensitive() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        WritableTicker testTicker = new WritableTicker();
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTicker(testTicker)
+                .build();
+
+        PeakEwmaTaskConcurrency<String> a = loadBalancer.get("a");
+        PeakEwmaTaskConcurrency<String> b = loadBalancer.get("b");
+        a.acquire();
+        a.complete(true, Duration.ofMillis(10));
+        b.acquire();
+        b.complete(true, Duration.ofMillis(20));
+        Assert.assertEquals(Duration.ofMillis(10).toNanos(), a.getLatencyNanos(), 1);
+
+        //latency spike is taken right away
+        a.acquire();
+        a.complete(true, Duration.ofMillis(100));
+        Assert.assertEquals(Duration.ofMillis(100).toNanos(), a.getLatencyNanos(), 1);
+        for (int i = 0; i < 10; ++i) {
+            CompletableTask<String> ct = loadBalancer.next();
+            Assert.assertEquals("b", ct.getTask());
+            ct.complete();
+        }
+
+        //lower latency is blended in with decayed weight
+        testTicker.add(Duration.ofSeconds(10));
+        a.acquire();
+        a.complete(true, Duration.ofMillis(10));
+        Assert.assertTrue(a.getLatencyNanos() < Duration.ofMillis(100).toNanos());
+        Assert.assertTrue(a.getLatencyNanos() > Duration.ofMillis(10).toNanos());
+    }
+
+    @Test
+    public void testDecay() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+        WritableTicker testTicker = new WritableTicker();
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withDecayTime(Duration.ofSeconds(1))
+                .withTicker(testTicker)
+                .build();
+
+        PeakEwmaTaskConcurrency<String> a = loadBalancer.get("a");
+        a.acquire();
+        a.complete(true, Duration.ofMillis(100));
+        testTicker.add(Duration.ofSeconds(1));
+        Assert.assertEquals(Duration.ofMillis(100).toNanos() / Math.E, a.getLatencyNanos(), 1);
+    }
+
+    @Test
+    public void testFailureEffectiveLatency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        WritableTicker testTicker = new WritableTicker();
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFailureEffectiveLatency(Duration.ofSeconds(30))
+                .withTicker(testTicker)
+                .build();
+
+        CompletableTask<String> ct1 = loadBalancer.next();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        testTicker.add(Duration.ofMillis(10));
+        ct1.complete(false);
+        ct2.complete(true);
+        Assert.assertEquals(Duration.ofSeconds(30).toNanos(), loadBalancer.get(ct1.getTask()).getLatencyNanos(), 1);
+        for (int i = 0; i < 10; ++i) {
+            CompletableTask<String> ct = loadBalancer.next();
+            Assert.assertEquals(ct2.getTask(), ct.getTask());
+            ct.complete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveDecayTime() {
+        PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withDecayTime(Duration.ZERO);
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+        Map<String, Integer> maxConcurrencies = new HashMap<>();
+        maxConcurrencies.put("a", 1);
+
+        PeakEwmaConcurrencyLoadBalancer<String> loadBalancer = PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(2)
+                .withMaxConcurrency(maxConcurrencies)
+                .build();
+
+        //task reached max concurrency is skipped
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            keyFrequency.merge(task.getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(1, keyFrequency.get("a").intValue());
+        Assert.assertEquals(2, keyFrequency.get("b").intValue());
+
+        //all tasks reached max concurrency
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        //capacity is released on completion
+        completableTasks.get(0).complete();
+        Assert.assertEquals(completableTasks.get(0).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxConcurrency() {
+        PeakEwmaConcurrencyLoadBalancer.newBuilder(String.class)
+                .withMaxConcurrency(0);
+    }
+}
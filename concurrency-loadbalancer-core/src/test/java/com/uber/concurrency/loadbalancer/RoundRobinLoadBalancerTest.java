@@ -4,6 +4,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public class RoundRobinLoadBalancerTest {
 
@@ -29,4 +31,25 @@ public class RoundRobinLoadBalancerTest {
         }
     }
 
+    @Test
+    public void testAddRemoveTask() {
+        RoundRobinLoadBalancer<String> lb = RoundRobinLoadBalancer
+                .newBuilder()
+                .withInitialIndex(0)
+                .withTasks(Arrays.asList("a", "b"))
+                .build();
+        Assert.assertTrue(lb.addTask("c"));
+        Assert.assertFalse(lb.addTask("c"));
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < 3; ++i) {
+            result.add(lb.next());
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), result);
+
+        Assert.assertTrue(lb.removeTask("a"));
+        Assert.assertFalse(lb.removeTask("a"));
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertNotEquals("a", lb.next());
+        }
+    }
 }
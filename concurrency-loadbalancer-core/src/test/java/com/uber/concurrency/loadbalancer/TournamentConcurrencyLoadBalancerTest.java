@@ -0,0 +1,321 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrency;
+import com.uber.concurrency.loadbalancer.internal.TaskConcurrencyImpl;
+import com.uber.concurrency.loadbalancer.utils.WritableTicker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TournamentConcurrencyLoadBalancerTest {
+
+    @Test
+    public void testZeroTask() {
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertNull(task1);
+    }
+
+    @Test
+    public void testSaturatedWinnerBeforeRefresh() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            entries.add(Character.toString((char) ('a' + i)));
+        }
+        AtomicBoolean armed = new AtomicBoolean();
+        AtomicBoolean comparing = new AtomicBoolean();
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = new TournamentConcurrencyLoadBalancer<>(entries,
+                t -> new TaskConcurrencyImpl<String>(t) {
+                    @Override
+                    public int getConcurrency() {
+                        //winner saturated by other thread right after root is read, the tree is yet to refresh
+                        if (task.equals("a") && !comparing.get() && armed.compareAndSet(true, false)) {
+                            concurrency.addAndGet(2);
+                        }
+                        return super.getConcurrency();
+                    }
+
+                    @Override
+                    public int compareTo(TaskConcurrency o) {
+                        comparing.set(true);
+                        try {
+                            return super.compareTo(o);
+                        } finally {
+                            comparing.set(false);
+                        }
+                    }
+                }, Collections.emptyList(), Ticker.systemTicker());
+        for (String entry : entries) {
+            loadBalancer.get(entry).setMaxConcurrency(2);
+            if (!entry.equals("a")) {
+                loadBalancer.get(entry).acquire();
+            }
+        }
+
+        armed.set(true);
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNotEquals("a", task.getTask());
+        Assert.assertEquals(2, loadBalancer.get(task.getTask()).getConcurrency());
+    }
+
+    @Test
+    public void testOneTask() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");}};
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        CompletableTask<String> task1 = loadBalancer.next();
+        Assert.assertEquals("a", task1.getTask());
+        CompletableTask<String> task2 = loadBalancer.next();
+        Assert.assertEquals("a", task2.getTask());
+    }
+
+    @Test
+    public void testTwoTasks() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        result.add(ct1.getTask());
+        CompletableTask<String> ct2 = loadBalancer.next();
+        result.add(ct2.getTask());
+        Assert.assertEquals(2, result.size());
+        result = new HashSet<>();
+        ct2.complete();
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(1, result.size());
+    }
+
+    @Test
+    public void testMultiComplete() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        final AtomicInteger pendingRequest = new AtomicInteger();
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+                })
+                .build();
+        Assert.assertEquals(0, pendingRequest.get());
+        CompletableTask<String> ct1 = loadBalancer.next();
+        Assert.assertEquals(1, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+        ct1.complete();
+        Assert.assertEquals(0, pendingRequest.get());
+    }
+
+    @Test
+    public void testFairness() {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 26; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withSubStrategy(SubStrategy.LeastFrequency)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+            task.complete();
+        }
+        Assert.assertEquals(entries.size(), result.size());
+    }
+
+    @Test
+    public void testMultipleRound() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b"); add("c"); add("d"); add("e");}};
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        int repeat = 1000;
+        for (int i = 0; i < repeat * entries.size(); ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : keyFrequency.entrySet()) {
+            Assert.assertEquals(repeat, entry.getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws InterruptedException {
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < 13; ++i) {
+            entries.add(Character.toString((char)('a'+i)));
+        }
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    loadBalancer.next().complete();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //after all updates finished, tree is consistent with concurrency of tasks
+        for (String entry : entries) {
+            Assert.assertEquals(0, loadBalancer.get(entry).getConcurrency());
+        }
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < entries.size() * 2; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        for (String entry : entries) {
+            Assert.assertEquals(2, keyFrequency.get(entry).intValue());
+        }
+    }
+
+    @Test
+    public void testFailureSustain() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        WritableTicker testTicker = new WritableTicker();
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withFailureEffectiveLatency(Duration.ofSeconds(30), 100)
+                .withTicker(testTicker)
+                .build();
+
+        Set<String> result = new HashSet<>();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        String t1 = ct1.getTask();
+        CompletableTask<String> ct2 = loadBalancer.next();
+        Assert.assertNotEquals(t1, ct2.getTask());
+        ct1.complete(false);
+        ct2.complete(true);
+        for (int i = 0; i < 10; ++i) {
+            ct2 = loadBalancer.next();
+            Assert.assertNotEquals(t1, ct2.getTask());
+            ct2.complete();
+        }
+        //one second later after failure effective latency, passed sustain period of failed task
+        testTicker.add(Duration.ofSeconds(31));
+        for (int i = 0; i < 40; ++i) {
+            ct2 = loadBalancer.next();
+            result.add(ct2.getTask());
+            ct2.complete();
+        }
+        Assert.assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testWeightedTasks() {
+        Map<String, Integer> taskWeights = new LinkedHashMap<>();
+        taskWeights.put("a", 1);
+        taskWeights.put("b", 3);
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(taskWeights)
+                .build();
+
+        //concurrency is distributed proportionally to weight
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 8; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(2, keyFrequency.get("a").intValue());
+        Assert.assertEquals(6, keyFrequency.get("b").intValue());
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");add("c");}};
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .build();
+
+        List<CompletableTask<String>> completableTasks = new ArrayList<>();
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            completableTasks.add(task);
+            result.add(task.getTask());
+        }
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+
+        completableTasks.get(1).complete();
+        Assert.assertEquals(completableTasks.get(1).getTask(), loadBalancer.next().getTask());
+    }
+
+    @Test
+    public void testConcurrencyLimits() {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a");add("b");}};
+
+        TournamentConcurrencyLoadBalancer<String> loadBalancer = TournamentConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .build();
+
+        for (String key : entries) {
+            TaskConcurrency<String> tc = loadBalancer.get(key);
+            tc.acquire(Integer.MAX_VALUE);
+        }
+
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < entries.size(); ++i) {
+            CompletableTask<String> task = loadBalancer.next();
+            result.add(task.getTask());
+        }
+
+        Assert.assertEquals(new HashSet<>(entries), result);
+
+        //reached limit
+        CompletableTask<String> task = loadBalancer.next();
+        Assert.assertNull(task);
+    }
+}
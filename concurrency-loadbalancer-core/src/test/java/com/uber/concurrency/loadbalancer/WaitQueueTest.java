@@ -0,0 +1,195 @@
+package com.uber.concurrency.loadbalancer;
+
+import com.google.common.base.Ticker;
+import com.uber.concurrency.loadbalancer.utils.WritableTicker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class WaitQueueTest {
+
+    /**
+     * single entity with limited permits
+     */
+    static class Permits implements Supplier<CompletableTask<String>> {
+        final AtomicInteger available;
+
+        Permits(int permits) {
+            this.available = new AtomicInteger(permits);
+        }
+
+        @Override
+        public CompletableTask<String> get() {
+            while (true) {
+                int current = available.get();
+                if (current <= 0) {
+                    throw new SaturationException("saturated");
+                }
+                if (available.compareAndSet(current, current - 1)) {
+                    return CompletableTask.ofNoop("a");
+                }
+            }
+        }
+
+        void release(WaitQueue<String> waitQueue) {
+            available.incrementAndGet();
+            waitQueue.dispatch();
+        }
+    }
+
+    @Test
+    public void testAcquireWithoutWait() throws Exception {
+        Permits permits = new Permits(1);
+        WaitQueue<String> waitQueue = new WaitQueue<>(1, permits, Ticker.systemTicker());
+        Assert.assertEquals("a", waitQueue.acquire(Duration.ofSeconds(10)).get().getTask());
+        //don't wait if timeout is zero
+        CompletableFuture<CompletableTask<String>> future = waitQueue.acquire(Duration.ZERO);
+        try {
+            future.get();
+            Assert.fail("expect SaturationException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SaturationException);
+        }
+        Assert.assertEquals(0, waitQueue.getLength());
+    }
+
+    @Test
+    public void testHandOffInOrder() throws Exception {
+        Permits permits = new Permits(0);
+        WaitQueue<String> waitQueue = new WaitQueue<>(10, permits, Ticker.systemTicker());
+        List<CompletableFuture<CompletableTask<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            futures.add(waitQueue.acquire(Duration.ofSeconds(10)));
+        }
+        Assert.assertEquals(3, waitQueue.getLength());
+        for (CompletableFuture<CompletableTask<String>> future : futures) {
+            Assert.assertFalse(future.isDone());
+        }
+
+        permits.release(waitQueue);
+        Assert.assertTrue(futures.get(0).isDone());
+        Assert.assertFalse(futures.get(1).isDone());
+
+        //new request waits behind requests in queue
+        CompletableFuture<CompletableTask<String>> last = waitQueue.acquire(Duration.ofSeconds(10));
+        permits.release(waitQueue);
+        permits.release(waitQueue);
+        Assert.assertTrue(futures.get(1).isDone());
+        Assert.assertTrue(futures.get(2).isDone());
+        Assert.assertFalse(last.isDone());
+        permits.release(waitQueue);
+        Assert.assertEquals("a", last.get().getTask());
+        Assert.assertEquals(0, waitQueue.getLength());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        Permits permits = new Permits(0);
+        WaitQueue<String> waitQueue = new WaitQueue<>(1, permits, Ticker.systemTicker());
+        waitQueue.acquire(Duration.ofSeconds(10));
+        CompletableFuture<CompletableTask<String>> rejected = waitQueue.acquire(Duration.ofSeconds(10));
+        try {
+            rejected.get();
+            Assert.fail("expect SaturationException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SaturationException);
+        }
+        Assert.assertEquals(1, waitQueue.getLength());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Permits permits = new Permits(0);
+        WaitQueue<String> waitQueue = new WaitQueue<>(1, permits, Ticker.systemTicker());
+        CompletableFuture<CompletableTask<String>> future = waitQueue.acquire(Duration.ofMillis(50));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("expect TimeoutException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(0, waitQueue.getLength());
+        //released permit is not handed to timed out request
+        permits.release(waitQueue);
+        Assert.assertEquals(1, permits.available.get());
+    }
+
+    @Test
+    public void testTimeoutByTicker() throws Exception {
+        Permits permits = new Permits(0);
+        WritableTicker testTicker = new WritableTicker();
+        WaitQueue<String> waitQueue = new WaitQueue<>(1, permits, testTicker);
+        CompletableFuture<CompletableTask<String>> future = waitQueue.acquire(Duration.ofSeconds(10));
+        testTicker.add(Duration.ofSeconds(11));
+        //request past its deadline on ticker of the loadBalancer is expired by dispatching
+        waitQueue.dispatch();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("expect TimeoutException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(0, waitQueue.getLength());
+    }
+
+    @Test
+    public void testSignal() throws Exception {
+        Permits permits = new Permits(0);
+        WaitQueue<String> waitQueue = new WaitQueue<>(1, permits, Ticker.systemTicker());
+        CompletableFuture<CompletableTask<String>> future = waitQueue.acquire(Duration.ofSeconds(10));
+        //permit released outside completion is dispatched by timer thread
+        permits.available.incrementAndGet();
+        waitQueue.signal();
+        Assert.assertEquals("a", future.get(5, TimeUnit.SECONDS).getTask());
+        Assert.assertEquals(0, waitQueue.getLength());
+    }
+
+    @Test
+    public void testCancel() {
+        Permits permits = new Permits(0);
+        WaitQueue<String> waitQueue = new WaitQueue<>(1, permits, Ticker.systemTicker());
+        CompletableFuture<CompletableTask<String>> future = waitQueue.acquire(Duration.ofSeconds(10));
+        future.cancel(false);
+        Assert.assertEquals(0, waitQueue.getLength());
+        permits.release(waitQueue);
+        Assert.assertEquals(1, permits.available.get());
+    }
+
+    @Test
+    public void testConcurrentHandOff() throws Exception {
+        Permits permits = new Permits(4);
+        WaitQueue<String> waitQueue = new WaitQueue<>(1000, permits, Ticker.systemTicker());
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        int requests = 1000;
+        CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i) {
+            es.execute(() -> waitQueue.acquire(Duration.ofSeconds(30))
+                    .thenAcceptAsync(task -> {
+                        permits.release(waitQueue);
+                        latch.countDown();
+                    }, es));
+        }
+        //every request is handed a permit, no request is stranded in queue
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        es.shutdown();
+        Assert.assertEquals(0, waitQueue.getLength());
+        Assert.assertEquals(4, permits.available.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxLength() {
+        new WaitQueue<>(0, new Permits(0), Ticker.systemTicker());
+    }
+}
@@ -0,0 +1,128 @@
+package com.uber.concurrency.loadbalancer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ZoneAwareConcurrencyLoadBalancerTest {
+    private static final ArrayList<String> ENTRIES = new ArrayList<String>() {{add("a1"); add("a2"); add("b1"); add("b2");}};
+
+    @Test
+    public void testZeroTask() {
+        ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.EMPTY_LIST)
+                .build();
+
+        Assert.assertNull(loadBalancer.next());
+    }
+
+    @Test
+    public void testStayLocal() {
+        ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withZone(s -> s.substring(0, 1))
+                .withLocalZone("a")
+                .withSpillThreshold(0.5)
+                .build();
+
+        //local zone is not overloaded when requests complete
+        for (int i = 0; i < 100; ++i) {
+            CompletableTask<String> ct = loadBalancer.next();
+            Assert.assertTrue(ct.getTask().startsWith("a"));
+            ct.complete();
+        }
+    }
+
+    @Test
+    public void testSpillOver() {
+        ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withZone(s -> s.substring(0, 1))
+                .withLocalZone("a")
+                .withSpillThreshold(1)
+                .build();
+
+        //load of local zone converges to 2 times of remote zone
+        Map<String, Integer> zoneFrequency = new HashMap<>();
+        for (int i = 0; i < 300; ++i) {
+            zoneFrequency.merge(loadBalancer.next().getTask().substring(0, 1), 1, Integer::sum);
+        }
+        Assert.assertEquals(200, zoneFrequency.get("a"), 2);
+        Assert.assertEquals(100, zoneFrequency.get("b"), 2);
+    }
+
+    @Test
+    public void testNoLocalTask() {
+        ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withZone(s -> s.substring(0, 1))
+                .withLocalZone("c")
+                .build();
+
+        Map<String, Integer> keyFrequency = new HashMap<>();
+        for (int i = 0; i < 40; ++i) {
+            keyFrequency.merge(loadBalancer.next().getTask(), 1, Integer::sum);
+        }
+        Assert.assertEquals(ENTRIES.size(), keyFrequency.size());
+    }
+
+    @Test
+    public void testLocalZoneSaturated() {
+        ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withZone(s -> s.substring(0, 1))
+                .withLocalZone("a")
+                .withSpillThreshold(Double.POSITIVE_INFINITY)
+                .withMaxConcurrency(1)
+                .build();
+
+        Assert.assertTrue(loadBalancer.next().getTask().startsWith("a"));
+        Assert.assertTrue(loadBalancer.next().getTask().startsWith("a"));
+        Assert.assertTrue(loadBalancer.next().getTask().startsWith("b"));
+        Assert.assertTrue(loadBalancer.next().getTask().startsWith("b"));
+        try {
+            loadBalancer.next();
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+        }
+    }
+
+    @Test
+    public void testMultiComplete() {
+        final AtomicInteger pendingRequest = new AtomicInteger();
+
+        ZoneAwareConcurrencyLoadBalancer<String> loadBalancer = ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(ENTRIES)
+                .withZone(s -> s.substring(0, 1))
+                .withLocalZone("a")
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                        pendingRequest.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        pendingRequest.decrementAndGet();
+                    }
+                })
+                .build();
+        CompletableTask<String> ct1 = loadBalancer.next();
+        Assert.assertEquals(1, pendingRequest.get());
+        Assert.assertTrue(ct1.complete());
+        Assert.assertEquals(0, pendingRequest.get());
+        Assert.assertFalse(ct1.complete());
+        Assert.assertEquals(0, pendingRequest.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSpillThreshold() {
+        ZoneAwareConcurrencyLoadBalancer.newBuilder(String.class)
+                .withSpillThreshold(-1);
+    }
+}
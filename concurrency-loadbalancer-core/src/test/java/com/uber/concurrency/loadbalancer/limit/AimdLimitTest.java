@@ -0,0 +1,68 @@
+package com.uber.concurrency.loadbalancer.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+
+public class AimdLimitTest {
+
+    @Test
+    public void testIncrease() {
+        AimdLimit limit = AimdLimit.newBuilder()
+                .withInitialLimit(10)
+                .build();
+
+        limit.onSample(Duration.ofMillis(10), 5, false);
+        Assert.assertEquals(11, limit.getLimit());
+
+        //under-utilized, limit is not increased
+        limit.onSample(Duration.ofMillis(10), 1, false);
+        Assert.assertEquals(11, limit.getLimit());
+    }
+
+    @Test
+    public void testDecrease() {
+        AimdLimit limit = AimdLimit.newBuilder()
+                .withInitialLimit(10)
+                .withBackoffRatio(0.5)
+                .withTimeout(Duration.ofSeconds(1))
+                .build();
+
+        limit.onSample(Duration.ofMillis(10), 10, true);
+        Assert.assertEquals(5, limit.getLimit());
+
+        limit.onSample(Duration.ofSeconds(2), 5, false);
+        Assert.assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void testLimitRange() {
+        AimdLimit limit = AimdLimit.newBuilder()
+                .withInitialLimit(2)
+                .withLimitRange(2, 3)
+                .withBackoffRatio(0.5)
+                .build();
+
+        limit.onSample(Duration.ofMillis(10), 2, true);
+        Assert.assertEquals(2, limit.getLimit());
+
+        limit.onSample(Duration.ofMillis(10), 2, false);
+        limit.onSample(Duration.ofMillis(10), 3, false);
+        Assert.assertEquals(3, limit.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitialLimitOutOfRange() {
+        AimdLimit.newBuilder()
+                .withInitialLimit(20)
+                .withLimitRange(1, 10)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBackoffRatio() {
+        AimdLimit.newBuilder()
+                .withBackoffRatio(1);
+    }
+}
@@ -0,0 +1,72 @@
+package com.uber.concurrency.loadbalancer.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+
+public class GradientLimitTest {
+
+    @Test
+    public void testIncreaseOnStableLatency() {
+        GradientLimit limit = GradientLimit.newBuilder()
+                .withInitialLimit(20)
+                .withLimitRange(1, 100)
+                .build();
+
+        for (int i = 0; i < 10; ++i) {
+            limit.onSample(Duration.ofMillis(10), limit.getLimit(), false);
+        }
+        Assert.assertTrue(limit.getLimit() > 20);
+        Assert.assertTrue(limit.getLimit() <= 100);
+    }
+
+    @Test
+    public void testDecreaseOnLatencyIncrease() {
+        GradientLimit limit = GradientLimit.newBuilder()
+                .withInitialLimit(50)
+                .withLimitRange(1, 50)
+                .build();
+
+        for (int i = 0; i < 100; ++i) {
+            limit.onSample(Duration.ofMillis(10), limit.getLimit(), false);
+        }
+        Assert.assertEquals(50, limit.getLimit());
+
+        //queueing at downstream
+        for (int i = 0; i < 20; ++i) {
+            limit.onSample(Duration.ofMillis(100), limit.getLimit(), false);
+        }
+        Assert.assertTrue(limit.getLimit() < 40);
+    }
+
+    @Test
+    public void testDecreaseOnDrop() {
+        GradientLimit limit = GradientLimit.newBuilder()
+                .withInitialLimit(100)
+                .withLimitRange(1, 100)
+                .withSmoothing(1)
+                .build();
+
+        limit.onSample(Duration.ofMillis(10), 1, true);
+        Assert.assertEquals(60, limit.getLimit());
+    }
+
+    @Test
+    public void testUnderUtilized() {
+        GradientLimit limit = GradientLimit.newBuilder()
+                .withInitialLimit(20)
+                .build();
+
+        for (int i = 0; i < 10; ++i) {
+            limit.onSample(Duration.ofMillis(10), 1, false);
+        }
+        Assert.assertEquals(20, limit.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindows() {
+        GradientLimit.newBuilder()
+                .withWindows(10, 10);
+    }
+}
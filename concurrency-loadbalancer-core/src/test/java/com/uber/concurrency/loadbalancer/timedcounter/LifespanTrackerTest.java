@@ -35,6 +35,28 @@ public class LifespanTrackerTest {
         Assert.assertEquals(1, tracker.purge()); //count sustained for 61s because of window precision
     }
 
+    @Test
+    public void testOneCountNanos() {
+        WritableTicker clock = new WritableTicker();
+        LifespanTracker tracker = new LifespanTracker(Duration.ofMinutes(5), 100, clock);
+
+        clock.add(Duration.ofSeconds(10)); //10s
+        long result = tracker.add(1, Duration.ofMinutes(1).toNanos()); //count should sustain for 60s
+        Assert.assertEquals(result, Duration.ofSeconds(72).toNanos());
+
+        clock.add(Duration.ofSeconds(61)); //71s
+        Assert.assertEquals(0, tracker.purge());
+
+        clock.add(Duration.ofSeconds(1));  //72s
+        Assert.assertEquals(1, tracker.purge());
+
+        //sustain period is capped by max age
+        result = tracker.add(1, Long.MAX_VALUE);
+        Assert.assertEquals(result, Duration.ofSeconds(375).toNanos());
+        result = tracker.add(1, Duration.ofDays(365 * 1000));
+        Assert.assertEquals(result, Duration.ofSeconds(375).toNanos());
+    }
+
     @Test
     public void testTwoCount() {
         WritableTicker clock = new WritableTicker();
@@ -145,6 +145,31 @@ public class WindowScheduledCounterTest {
         Assert.assertEquals(2, supplier.get().intValue()); //count sustained for 16 because of window precision
     }
 
+    @Test
+    public void testScheduleNanos() {
+        WritableTicker clock = new WritableTicker();
+        AtomicLong result = new AtomicLong();
+        WindowScheduledCounter counter = WindowScheduledCounter.newBuilder()
+                .withMaxDelay(Duration.ofSeconds(30))
+                .withNumWindow(10)
+                .withTicker(clock)
+                .ofLong(n -> result.addAndGet(n));
+        Supplier<Long> supplier = () -> {
+            counter.check();
+            return result.get();
+        };
+        counter.schedule(1, Duration.ofSeconds(10).toNanos()); //count should sustain for 10s
+        clock.add(Duration.ofSeconds(11)); //11s
+        Assert.assertEquals(0, supplier.get().intValue());
+
+        clock.add(Duration.ofSeconds(1)); //12s
+        Assert.assertEquals(1, supplier.get().intValue());
+
+        counter.schedule(1, -1L); //negative delay is rounded to zero
+        clock.add(Duration.ofSeconds(3)); //15s
+        Assert.assertEquals(2, supplier.get().intValue());
+    }
+
     @Test
     public void testNegativeTimeToLive() {
         WritableTicker clock = new WritableTicker();
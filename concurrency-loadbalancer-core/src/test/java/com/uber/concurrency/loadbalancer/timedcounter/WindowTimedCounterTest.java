@@ -33,6 +33,12 @@ public class WindowTimedCounterTest {
         Mockito.verify(mockWindowScheduledCounter, Mockito.times(1)).schedule(-1, duration);
     }
 
+    @Test
+    public void testAddWithDurationNanos() {
+        windowTimedCounter.add(1, 10_000_000_000L);
+        Mockito.verify(mockWindowScheduledCounter, Mockito.times(1)).schedule(-1, 10_000_000_000L);
+    }
+
     @Test
     public void testCheck() {
         windowTimedCounter.check();
@@ -184,6 +184,36 @@ public class HashIndexedPriorityQueueTest {
         }
     }
 
+    @Test
+    public void testUpdateOrderWithPendingUpdate() {
+        Comparator<Entity> comparator = Comparator.comparingInt(o -> o.value);
+        HashIndexedPriorityQueue<Entity> hpq = new HashIndexedPriorityQueue<>(comparator);
+        ArrayList<Entity> array = new ArrayList<>();
+        //heap in array order 1, 2, ..., 7
+        for (int i = 1; i <= 7; ++i) {
+            Entity e = new Entity(i, i);
+            array.add(e);
+            hpq.offer(e);
+        }
+        //child of the entity is updated as well, but offered later, e.g. pending in flat-combining
+        Entity child = array.get(3);
+        child.value = -1;
+        Entity e = array.get(1);
+        e.value = 0;
+
+        //entity moved up isn't sifted down from its original index, which duplicated it and dropped its parent
+        hpq.offer(e);
+        hpq.validate();
+        hpq.offer(child);
+        hpq.validate();
+        int[] expected = {-1, 0, 1, 3, 5, 6, 7};
+        for (int value : expected) {
+            Assert.assertEquals(value, hpq.poll().value);
+            hpq.validate();
+        }
+        Assert.assertTrue(hpq.isEmpty());
+    }
+
     private class Entity {
         int id;
         int value;
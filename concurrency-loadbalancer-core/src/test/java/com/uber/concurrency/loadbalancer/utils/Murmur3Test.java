@@ -0,0 +1,34 @@
+package com.uber.concurrency.loadbalancer.utils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class Murmur3Test {
+
+    @Test
+    public void testSameAsGuava() {
+        HashFunction murmur3 = Hashing.murmur3_128();
+        Random random = new Random(12345);
+        List<String> keys = new ArrayList<>(Arrays.asList(
+                "", "a", "cache1-99", "\u00e9\u4e2d\ud83d\ude00", "\ud83d", "x\ude00y"));
+        for (int i = 0; i < 1000; ++i) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int j = 0; j < chars.length; ++j) {
+                chars[j] = (char) random.nextInt(random.nextBoolean() ? 0x80 : Character.MAX_VALUE + 1);
+            }
+            keys.add(new String(chars));
+        }
+        for (String key : keys) {
+            Assert.assertEquals(murmur3.hashString(key, StandardCharsets.UTF_8).asLong(),
+                    Murmur3.hash64(key));
+        }
+    }
+}
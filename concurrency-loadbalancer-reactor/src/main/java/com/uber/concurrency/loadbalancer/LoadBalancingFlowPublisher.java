@@ -0,0 +1,312 @@
+package com.uber.concurrency.loadbalancer;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Publisher calls an entity of {@link LeastConcurrencyLoadBalancer} for each item of the source,
+ * and publishes results in completion order.
+ * <p>
+ * An entity is acquired before the item is requested from the source, so that saturation of the loadBalancer
+ * turns into backpressure, no item is requested from the source until an entity is available.
+ * Items in flight are bounded by downstream demand and maxInFlight as well.
+ * When every entity reached max concurrency and none of them is held by this subscription,
+ * the subscription waits with {@link LeastConcurrencyLoadBalancer#acquireAsync(Duration)}.
+ * </p>
+ * <p>
+ * Request is completed when its call completes, as failed if the call fails.
+ * Requests acquired but not used are released without outcome on completion, error or cancellation of the subscription,
+ * and calls in flight are cancelled and released on cancellation, so that no request is leaked or counted as succeed.
+ * The first failed call fails the subscription.
+ * </p>
+ *
+ * @param <T> the entity type
+ * @param <I> the source item type
+ * @param <R> the result type
+ */
+final class LoadBalancingFlowPublisher<T, I, R> implements Flow.Publisher<R> {
+    private final LeastConcurrencyLoadBalancer<T> loadBalancer;
+    private final Flow.Publisher<I> source;
+    private final BiFunction<? super T, ? super I, ? extends CompletionStage<R>> call;
+    private final int maxInFlight;
+    private final Duration acquireTimeout;
+
+    /**
+     * Instantiates a new LoadBalancingFlowPublisher
+     *
+     * @param loadBalancer   the load balancer
+     * @param source         the source of items
+     * @param call           the call of an item to the selected entity
+     * @param maxInFlight    max number of items in flight
+     * @param acquireTimeout max duration to wait for an entity
+     */
+    LoadBalancingFlowPublisher(LeastConcurrencyLoadBalancer<T> loadBalancer,
+                               Flow.Publisher<I> source,
+                               BiFunction<? super T, ? super I, ? extends CompletionStage<R>> call,
+                               int maxInFlight,
+                               Duration acquireTimeout) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("max in flight must be positive");
+        }
+        this.loadBalancer = loadBalancer;
+        this.source = source;
+        this.call = call;
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber is null");
+        source.subscribe(new Dispatcher(subscriber));
+    }
+
+    /**
+     * Subscribes to source on behalf of one downstream subscriber, all signals are serialized by {@link #drain()}
+     */
+    private final class Dispatcher implements Flow.Subscriber<I>, Flow.Subscription {
+        private final Flow.Subscriber<? super R> downstream;
+        //requests acquired for items requested from source but not arrived yet
+        private final ConcurrentLinkedQueue<CompletableTask<T>> leases = new ConcurrentLinkedQueue<>();
+        //requests handed off by acquireAsync, taken over by drain loop
+        private final ConcurrentLinkedQueue<CompletableTask<T>> handedOff = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<R> results = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<CompletableFuture<?>> calls = new ConcurrentLinkedQueue<>();
+        //items requested from source and not emitted yet
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile Flow.Subscription upstream;
+        private volatile CompletableFuture<CompletableTask<T>> waiting;
+        private volatile boolean upstreamDone;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private volatile boolean terminated;
+
+        private Dispatcher(Flow.Subscriber<? super R> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(I item) {
+            CompletableTask<T> lease = leases.poll();
+            if (lease == null) {
+                //cancelled, lease was released already
+                return;
+            }
+            CompletableFuture<R> future;
+            try {
+                future = Objects.requireNonNull(call.apply(lease.getTask(), item), "call returned null")
+                        .toCompletableFuture();
+            } catch (RuntimeException e) {
+                lease.complete(false);
+                fail(e);
+                drain();
+                return;
+            }
+            calls.offer(future);
+            future.whenComplete((result, throwable) -> {
+                calls.remove(future);
+                //call cancelled by termination neither fails nor succeeds on the entity
+                if (terminated || cancelled) {
+                    lease.release();
+                    return;
+                }
+                lease.complete(throwable == null);
+                if (throwable != null) {
+                    fail(throwable);
+                } else if (result == null) {
+                    fail(new NullPointerException("call completed with null result"));
+                } else {
+                    results.offer(result);
+                }
+                drain();
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("request must be positive"));
+            } else {
+                requested.getAndAccumulate(n, (current, added) ->
+                        current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void fail(Throwable throwable) {
+            if (error == null) {
+                error = throwable;
+            }
+        }
+
+        /**
+         * emit results, acquire entities and request items from source, until demand or entities run out
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                takeOver();
+                if (!terminated) {
+                    if (cancelled) {
+                        terminate();
+                    } else if (error != null) {
+                        terminate();
+                        downstream.onError(error);
+                    } else {
+                        emit();
+                        if (upstreamDone) {
+                            releaseLeases();
+                            if (pending.get() == 0) {
+                                terminated = true;
+                                downstream.onComplete();
+                            }
+                        } else {
+                            acquire();
+                            if (error != null) {
+                                terminate();
+                                downstream.onError(error);
+                            }
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            long emitted = 0;
+            long demand = requested.get();
+            R result;
+            while (emitted != demand && !cancelled && (result = results.poll()) != null) {
+                pending.decrementAndGet();
+                downstream.onNext(result);
+                emitted++;
+            }
+            if (emitted != 0 && demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+        }
+
+        private void acquire() {
+            while (waiting == null && !cancelled && error == null
+                    && pending.get() < maxInFlight && pending.get() < requested.get()) {
+                CompletableTask<T> lease;
+                try {
+                    lease = loadBalancer.next();
+                } catch (SaturationException e) {
+                    //entity released by a call in flight drains again, otherwise wait for entities held by others
+                    if (pending.get() == 0) {
+                        await();
+                    }
+                    return;
+                }
+                if (lease == null) {
+                    fail(new NoSuchElementException("no entity to select"));
+                    return;
+                }
+                requestItem(lease);
+            }
+        }
+
+        /**
+         * wait for an entity, the callback runs outside of drain loop, so it only hands off the request to drain loop
+         */
+        private void await() {
+            CompletableFuture<CompletableTask<T>> future = loadBalancer.acquireAsync(acquireTimeout);
+            waiting = future;
+            future.whenComplete((lease, throwable) -> {
+                if (throwable != null) {
+                    fail(throwable);
+                } else {
+                    handedOff.offer(lease);
+                }
+                waiting = null;
+                drain();
+            });
+        }
+
+        /**
+         * request item for request handed off by acquireAsync, or release it after termination
+         */
+        private void takeOver() {
+            CompletableTask<T> lease;
+            while ((lease = handedOff.poll()) != null) {
+                if (terminated || cancelled || error != null) {
+                    lease.release();
+                } else {
+                    requestItem(lease);
+                }
+            }
+        }
+
+        private void requestItem(CompletableTask<T> lease) {
+            pending.incrementAndGet();
+            leases.offer(lease);
+            upstream.request(1);
+        }
+
+        private void terminate() {
+            terminated = true;
+            upstream.cancel();
+            CompletableFuture<CompletableTask<T>> future = waiting;
+            if (future != null) {
+                future.cancel(false);
+            }
+            releaseLeases();
+            CompletableFuture<?> inFlight;
+            while ((inFlight = calls.poll()) != null) {
+                inFlight.cancel(false);
+            }
+            results.clear();
+        }
+
+        private void releaseLeases() {
+            CompletableTask<T> lease;
+            while ((lease = leases.poll()) != null) {
+                pending.decrementAndGet();
+                lease.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.uber.concurrency.loadbalancer;
+
+import org.reactivestreams.Publisher;
+import reactor.adapter.JdkFlowAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * ReactiveLoadBalancer calls entities of {@link LeastConcurrencyLoadBalancer} from Project Reactor and
+ * {@link java.util.concurrent.Flow} pipelines.
+ * <p>
+ * Request is acquired on subscribe, and completed on terminal signal, as failed on error signal.
+ * It's released without outcome on cancel signal, see {@link CompletableTask#release()},
+ * so that cancelled subscriptions neither leak concurrency of entities nor count as succeed.
+ * When every entity reached max concurrency, subscription waits with
+ * {@link LeastConcurrencyLoadBalancer#acquireAsync(Duration)} until acquire timeout.
+ * </p>
+ * Usage:
+ * <pre>
+ * {@code
+ * ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class)
+ *                 .withAcquireTimeout(Duration.ofMillis(100))
+ *                 .withMaxInFlight(64)
+ *                 .build(loadBalancer);
+ *
+ * Mono<Response> response = reactive.mono(url -> httpClient.post(url, request));
+ * Flux<Response> responses = reactive.flatMap(requests, (url, request) -> httpClient.post(url, request));
+ * }
+ * </pre>
+ *
+ * @param <T> the entity type
+ */
+public final class ReactiveLoadBalancer<T> {
+
+    public static class Builder<T> {
+        private Duration acquireTimeout = Duration.ZERO;
+        private int maxInFlight = 256;
+
+        /**
+         * Set max duration to wait for an entity when every entity reached max concurrency,
+         * the loadBalancer needs a wait queue to wait, zero by default
+         *
+         * @param acquireTimeout the acquire timeout
+         * @return the builder
+         */
+        public Builder<T> withAcquireTimeout(Duration acquireTimeout) {
+            if (acquireTimeout.isNegative()) {
+                throw new IllegalArgumentException("acquire timeout must be non-negative");
+            }
+            this.acquireTimeout = acquireTimeout;
+            return this;
+        }
+
+        /**
+         * Set max number of items in flight of each flatMap subscription, 256 by default
+         *
+         * @param maxInFlight the max in flight
+         * @return the builder
+         */
+        public Builder<T> withMaxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("max in flight must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public ReactiveLoadBalancer<T> build(LeastConcurrencyLoadBalancer<T> loadBalancer) {
+            return new ReactiveLoadBalancer<>(loadBalancer, acquireTimeout, maxInFlight);
+        }
+    }
+
+    public static <T> Builder<T> newBuilder(Class<T> cls) {
+        return new Builder<>();
+    }
+
+    private final LeastConcurrencyLoadBalancer<T> loadBalancer;
+    private final Duration acquireTimeout;
+    private final int maxInFlight;
+
+    private ReactiveLoadBalancer(LeastConcurrencyLoadBalancer<T> loadBalancer,
+                                 Duration acquireTimeout,
+                                 int maxInFlight) {
+        this.loadBalancer = loadBalancer;
+        this.acquireTimeout = acquireTimeout;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Call an entity on subscribe, the request is completed when the returned Mono terminates,
+     * or released when it's cancelled
+     *
+     * @param call the call to the selected entity
+     * @param <R>  the result type
+     * @return the mono of call result
+     */
+    public <R> Mono<R> mono(Function<? super T, ? extends Mono<? extends R>> call) {
+        return Mono.usingWhen(acquire(),
+                completableTask -> call.apply(completableTask.getTask()),
+                completableTask -> Mono.fromRunnable(() -> completableTask.complete(true)),
+                (completableTask, throwable) -> Mono.fromRunnable(() -> completableTask.complete(false)),
+                completableTask -> Mono.fromRunnable(completableTask::release));
+    }
+
+    /**
+     * Stream from an entity on subscribe, the request is held until the returned Flux terminates or is cancelled
+     *
+     * @param call the streaming call to the selected entity
+     * @param <R>  the result type
+     * @return the flux of call results
+     */
+    public <R> Flux<R> flux(Function<? super T, ? extends Publisher<? extends R>> call) {
+        return Flux.usingWhen(acquire(),
+                completableTask -> call.apply(completableTask.getTask()),
+                completableTask -> Mono.fromRunnable(() -> completableTask.complete(true)),
+                (completableTask, throwable) -> Mono.fromRunnable(() -> completableTask.complete(false)),
+                completableTask -> Mono.fromRunnable(completableTask::release));
+    }
+
+    /**
+     * Call an entity for each item of the source, results are published in completion order.
+     * Item is requested from the source only after an entity is acquired for it,
+     * so that saturated entities turn into backpressure on the source.
+     *
+     * @param source the source of items
+     * @param call   the call of an item to the selected entity
+     * @param <I>    the item type
+     * @param <R>    the result type
+     * @return the flux of call results
+     */
+    public <I, R> Flux<R> flatMap(Publisher<I> source, BiFunction<? super T, ? super I, ? extends Mono<R>> call) {
+        Flow.Publisher<R> publisher = flatMapFlow(JdkFlowAdapter.publisherToFlowPublisher(source),
+                (t, item) -> call.apply(t, item).toFuture());
+        return JdkFlowAdapter.flowPublisherToFlux(publisher);
+    }
+
+    /**
+     * Call an entity for each item of the source, the same as {@link #flatMap(Publisher, BiFunction)}
+     * for {@link java.util.concurrent.Flow} pipelines.
+     *
+     * @param source the source of items
+     * @param call   the call of an item to the selected entity
+     * @param <I>    the item type
+     * @param <R>    the result type
+     * @return the publisher of call results
+     */
+    public <I, R> Flow.Publisher<R> flatMapFlow(Flow.Publisher<I> source,
+                                               BiFunction<? super T, ? super I, ? extends CompletionStage<R>> call) {
+        return new LoadBalancingFlowPublisher<>(loadBalancer, source, call, maxInFlight, acquireTimeout);
+    }
+
+    /**
+     * Acquire request on subscribe, request acquired after the subscriber cancelled is released without outcome
+     */
+    @SuppressWarnings("rawtypes")
+    private Mono<CompletableTask<T>> acquire() {
+        return Mono.defer(() -> Mono.fromFuture(loadBalancer.acquireAsync(acquireTimeout)))
+                .doOnDiscard(CompletableTask.class, CompletableTask::release);
+    }
+}
@@ -0,0 +1,331 @@
+package com.uber.concurrency.loadbalancer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadBalancingFlowPublisherTest {
+
+    /**
+     * synchronous source of items 0 until n, counts items requested
+     */
+    static class Source implements Flow.Publisher<Integer> {
+        final int n;
+        final AtomicLong requested = new AtomicLong();
+        volatile boolean cancelled;
+        volatile Throwable error;
+        private Flow.Subscriber<? super Integer> subscriber;
+        private int next;
+
+        Source(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Integer> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long r) {
+                    requested.addAndGet(r);
+                    for (long i = 0; i < r && next < n; ++i) {
+                        subscriber.onNext(next++);
+                    }
+                    if (next == n) {
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+
+        void fail(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+    }
+
+    static class Collector implements Flow.Subscriber<String> {
+        final List<String> results = new CopyOnWriteArrayList<>();
+        final long initialRequest;
+        volatile Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        Collector(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(String item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static HeapConcurrencyLoadBalancer<String> newLoadBalancer() {
+        return newLoadBalancer(new AtomicInteger());
+    }
+
+    /**
+     * load balancer counts requests completed with outcome
+     */
+    private static HeapConcurrencyLoadBalancer<String> newLoadBalancer(AtomicInteger completions) {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        return HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        completions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * load balancer of one entity with wait queue, counts requests completed with outcome
+     */
+    private static HeapConcurrencyLoadBalancer<String> newWaitingLoadBalancer(AtomicInteger completions) {
+        return HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(Collections.singletonList("a"))
+                .withMaxConcurrency(1)
+                .withWaitQueue(1)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        completions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    private static void awaitReleased(HeapConcurrencyLoadBalancer<String> loadBalancer) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency() != 0
+                && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency());
+    }
+
+    private static void assertReleased(HeapConcurrencyLoadBalancer<String> loadBalancer) {
+        for (String entry : new String[]{"a", "b"}) {
+            Assert.assertEquals(0, loadBalancer.getTaskConcurrencyQueue().get(entry).getConcurrency());
+        }
+    }
+
+    @Test
+    public void testSaturationAsBackpressure() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        List<CompletableFuture<String>> calls = new CopyOnWriteArrayList<>();
+        Source source = new Source(5);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source, (t, item) -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        }, 10, Duration.ZERO).subscribe(collector);
+
+        //one item for each entity until an entity is released
+        Assert.assertEquals(2, source.requested.get());
+        calls.get(0).complete("r0");
+        Assert.assertEquals(3, source.requested.get());
+        Assert.assertEquals(1, collector.results.size());
+
+        for (int i = 1; i < 5; ++i) {
+            calls.get(i).complete("r" + i);
+        }
+        Assert.assertEquals(5, collector.results.size());
+        Assert.assertTrue(collector.completed);
+        assertReleased(loadBalancer);
+    }
+
+    @Test
+    public void testDownstreamDemand() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        Source source = new Source(3);
+        Collector collector = new Collector(1);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source,
+                (t, item) -> CompletableFuture.completedFuture(t + item), 10, Duration.ZERO).subscribe(collector);
+
+        Assert.assertEquals(1, source.requested.get());
+        Assert.assertEquals(1, collector.results.size());
+        collector.subscription.request(2);
+        Assert.assertEquals(3, collector.results.size());
+        Assert.assertTrue(collector.completed);
+        assertReleased(loadBalancer);
+    }
+
+    @Test
+    public void testMaxInFlight() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        List<CompletableFuture<String>> calls = new CopyOnWriteArrayList<>();
+        Source source = new Source(3);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source, (t, item) -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        }, 1, Duration.ZERO).subscribe(collector);
+
+        Assert.assertEquals(1, source.requested.get());
+        calls.get(0).complete("r0");
+        Assert.assertEquals(2, source.requested.get());
+    }
+
+    @Test
+    public void testCancelReleasesRequests() {
+        AtomicInteger completions = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer(completions);
+        List<CompletableFuture<String>> calls = new CopyOnWriteArrayList<>();
+        Source source = new Source(5);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source, (t, item) -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        }, 10, Duration.ZERO).subscribe(collector);
+
+        collector.subscription.cancel();
+        Assert.assertTrue(source.cancelled);
+        for (CompletableFuture<String> call : calls) {
+            Assert.assertTrue(call.isCancelled());
+        }
+        assertReleased(loadBalancer);
+        //cancelled calls are released without outcome
+        Assert.assertEquals(0, completions.get());
+        Assert.assertFalse(collector.completed);
+        Assert.assertNull(collector.error);
+    }
+
+    @Test
+    public void testFailedCall() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        Source source = new Source(5);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source, (t, item) -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            call.completeExceptionally(new IllegalStateException("failed"));
+            return call;
+        }, 10, Duration.ZERO).subscribe(collector);
+
+        Assert.assertTrue(collector.error instanceof IllegalStateException);
+        Assert.assertTrue(source.cancelled);
+        Assert.assertEquals(1, source.requested.get());
+    }
+
+    @Test
+    public void testSourceError() {
+        AtomicInteger completions = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer(completions);
+        Source source = new Source(5);
+        Collector collector = new Collector(1);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source,
+                (t, item) -> new CompletableFuture<>(), 10, Duration.ZERO).subscribe(collector);
+
+        source.fail(new IllegalStateException("failed"));
+        Assert.assertTrue(collector.error instanceof IllegalStateException);
+        assertReleased(loadBalancer);
+        //requests acquired but not used are released without outcome
+        Assert.assertEquals(0, completions.get());
+    }
+
+    @Test
+    public void testSaturatedByOthers() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        CompletableTask<String> a = loadBalancer.next();
+        CompletableTask<String> b = loadBalancer.next();
+        Source source = new Source(1);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source,
+                (t, item) -> CompletableFuture.completedFuture(t), 10, Duration.ZERO).subscribe(collector);
+
+        //no wait queue to wait for entities held by others
+        Assert.assertTrue(collector.error instanceof SaturationException);
+        Assert.assertEquals(0, source.requested.get());
+        a.complete();
+        b.complete();
+    }
+
+    @Test
+    public void testCancelWhileAwaiting() throws InterruptedException {
+        AtomicInteger completions = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newWaitingLoadBalancer(completions);
+        CompletableTask<String> held = loadBalancer.next();
+        Source source = new Source(1);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source,
+                (t, item) -> new CompletableFuture<>(), 10, Duration.ofSeconds(10)).subscribe(collector);
+        Assert.assertEquals(0, source.requested.get());
+
+        //entity released after the waiting subscription is cancelled isn't held by the subscription
+        collector.subscription.cancel();
+        held.complete();
+        awaitReleased(loadBalancer);
+        Assert.assertEquals(0, source.requested.get());
+        Assert.assertEquals(1, completions.get());
+    }
+
+    @Test
+    public void testCancelOnHandOff() throws InterruptedException {
+        AtomicInteger completions = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newWaitingLoadBalancer(completions);
+        CompletableTask<String> held = loadBalancer.next();
+        Source source = new Source(1);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        new LoadBalancingFlowPublisher<String, Integer, String>(loadBalancer, source, (t, item) -> {
+            //subscription is cancelled while the entity handed off by acquireAsync is being used
+            collector.subscription.cancel();
+            return new CompletableFuture<>();
+        }, 10, Duration.ofSeconds(10)).subscribe(collector);
+
+        //cancellation is serialized after the hand-off, so the call is cancelled and its request released
+        held.complete();
+        awaitReleased(loadBalancer);
+        Assert.assertTrue(source.cancelled);
+        Assert.assertEquals(1, completions.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxInFlight() {
+        new LoadBalancingFlowPublisher<String, Integer, String>(newLoadBalancer(), new Source(1),
+                (t, item) -> CompletableFuture.completedFuture(t), 0, Duration.ZERO);
+    }
+}
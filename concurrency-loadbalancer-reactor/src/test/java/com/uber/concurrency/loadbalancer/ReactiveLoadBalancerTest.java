@@ -0,0 +1,145 @@
+package com.uber.concurrency.loadbalancer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReactiveLoadBalancerTest {
+
+    private static HeapConcurrencyLoadBalancer<String> newLoadBalancer() {
+        return newLoadBalancer(new AtomicInteger());
+    }
+
+    /**
+     * load balancer counts requests completed with outcome
+     */
+    private static HeapConcurrencyLoadBalancer<String> newLoadBalancer(AtomicInteger completions) {
+        ArrayList<String> entries = new ArrayList<String>() {{add("a"); add("b");}};
+        return HeapConcurrencyLoadBalancer.newBuilder(String.class)
+                .withTasks(entries)
+                .withMaxConcurrency(1)
+                .withTaskListener(new CompletableTask.Listener<String>() {
+                    @Override
+                    public void onCreate(String s) {
+                    }
+
+                    @Override
+                    public void onComplete(String s, boolean succeed) {
+                        completions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    private static int concurrency(HeapConcurrencyLoadBalancer<String> loadBalancer) {
+        return loadBalancer.getTaskConcurrencyQueue().get("a").getConcurrency()
+                + loadBalancer.getTaskConcurrencyQueue().get("b").getConcurrency();
+    }
+
+    @Test
+    public void testMono() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class).build(loadBalancer);
+
+        Mono<String> mono = reactive.mono(t -> Mono.just(t + "-response"));
+        //request is acquired on subscribe
+        Assert.assertEquals(0, concurrency(loadBalancer));
+        Assert.assertTrue(mono.block(Duration.ofSeconds(10)).endsWith("-response"));
+        Assert.assertEquals(0, concurrency(loadBalancer));
+    }
+
+    @Test
+    public void testMonoError() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class).build(loadBalancer);
+        try {
+            reactive.mono(t -> Mono.error(new IllegalStateException("failed"))).block(Duration.ofSeconds(10));
+            Assert.fail("expect IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        Assert.assertEquals(0, concurrency(loadBalancer));
+    }
+
+    @Test
+    public void testMonoCancel() {
+        AtomicInteger completions = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer(completions);
+        ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class).build(loadBalancer);
+
+        Disposable disposable = reactive.mono(t -> Mono.<String>never()).subscribe();
+        Assert.assertEquals(1, concurrency(loadBalancer));
+        //cancelled subscription doesn't leak the request, nor counts it as succeed
+        disposable.dispose();
+        Assert.assertEquals(0, concurrency(loadBalancer));
+        Assert.assertEquals(0, completions.get());
+    }
+
+    @Test
+    public void testMonoSaturated() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class).build(loadBalancer);
+        reactive.mono(t -> Mono.<String>never()).subscribe();
+        reactive.mono(t -> Mono.<String>never()).subscribe();
+        try {
+            reactive.mono(t -> Mono.just(t)).block(Duration.ofSeconds(10));
+            Assert.fail("expect SaturationException");
+        } catch (SaturationException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testFlux() {
+        AtomicInteger completions = new AtomicInteger();
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer(completions);
+        ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class).build(loadBalancer);
+
+        Flux<String> flux = reactive.flux(t -> Flux.just(t, t, t));
+        Assert.assertEquals(3, flux.collectList().block(Duration.ofSeconds(10)).size());
+        Assert.assertEquals(0, concurrency(loadBalancer));
+        Assert.assertEquals(1, completions.get());
+
+        Disposable disposable = reactive.flux(t -> Flux.<String>never()).subscribe();
+        Assert.assertEquals(1, concurrency(loadBalancer));
+        disposable.dispose();
+        Assert.assertEquals(0, concurrency(loadBalancer));
+        Assert.assertEquals(1, completions.get());
+    }
+
+    @Test
+    public void testFlatMap() {
+        HeapConcurrencyLoadBalancer<String> loadBalancer = newLoadBalancer();
+        ReactiveLoadBalancer<String> reactive = ReactiveLoadBalancer.newBuilder(String.class)
+                .withMaxInFlight(2)
+                .build(loadBalancer);
+
+        List<String> results = reactive.flatMap(Flux.range(0, 100), (t, item) -> Mono.just(t + item))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+        Assert.assertEquals(100, results.size());
+        Assert.assertEquals(0, concurrency(loadBalancer));
+
+        Disposable disposable = reactive.flatMap(Flux.range(0, 100), (t, item) -> Mono.<String>never()).subscribe();
+        Assert.assertEquals(2, concurrency(loadBalancer));
+        disposable.dispose();
+        Assert.assertEquals(0, concurrency(loadBalancer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveMaxInFlight() {
+        ReactiveLoadBalancer.newBuilder(String.class).withMaxInFlight(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeAcquireTimeout() {
+        ReactiveLoadBalancer.newBuilder(String.class).withAcquireTimeout(Duration.ofSeconds(-1));
+    }
+}